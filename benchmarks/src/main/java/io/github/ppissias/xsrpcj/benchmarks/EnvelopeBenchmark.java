@@ -0,0 +1,94 @@
+package io.github.ppissias.xsrpcj.benchmarks;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+
+import io.github.ppissias.xsrpcj.benchmarks.generated.comms.EnvelopeCodec;
+import io.github.ppissias.xsrpcj.benchmarks.generated.types.Bench.MessageContainer;
+import io.github.ppissias.xsrpcj.benchmarks.generated.types.Bench.MessageContainer.MessageType;
+import io.github.ppissias.xsrpcj.benchmarks.messages.BenchMessages.Payload;
+
+/**
+ * Encoding and decoding of the MessageContainer envelope, without a connection.
+ *
+ * The encode and decode benchmarks use the EnvelopeCodec of the generated code, as the
+ * generated client and server do. The builder and copy benchmarks do the same with the
+ * plain protocol buffers API (building a MessageContainer and parsing it from an array),
+ * as a baseline.
+ *
+ * @author Petros Pissias
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EnvelopeBenchmark {
+
+	//the correlation id of the encoded envelopes
+	private static final long correlationId = 12345;
+
+	//the size of the data of the message, in bytes
+	@Param({"16", "1024", "65536"})
+	public int payloadSize;
+
+	//the message carried in the envelope
+	private Payload payload;
+
+	//the encoded envelope, without the packet header, as it is passed to the DataHandler
+	private byte[] envelope;
+
+	@Setup
+	public void setup() {
+		byte[] data = new byte[payloadSize];
+		new Random(payloadSize).nextBytes(data);
+		payload = Payload.newBuilder().setId(1).setData(ByteString.copyFrom(data)).build();
+
+		byte[] packet = EnvelopeCodec.encodePacket(MessageType.echoRequest_VALUE, correlationId, payload);
+		envelope = Arrays.copyOfRange(packet, EnvelopeCodec.headerSize, packet.length);
+	}
+
+	@Benchmark
+	public byte[][] encode() {
+		return EnvelopeCodec.encodePackets(MessageType.echoRequest_VALUE, correlationId, payload);
+	}
+
+	@Benchmark
+	public byte[] encodeWithBuilder() {
+		return MessageContainer.newBuilder()
+				.setMessageType(MessageType.echoRequest)
+				.setCorrelationId(correlationId)
+				.setMessageData(payload.toByteString())
+				.build().toByteArray();
+	}
+
+	@Benchmark
+	public Payload decode() throws InvalidProtocolBufferException {
+		MessageContainer container = MessageContainer.parser().parseFrom(EnvelopeCodec.newDecoder(envelope));
+		return Payload.parseFrom(container.getMessageData());
+	}
+
+	@Benchmark
+	public Payload decodeWithCopy() throws InvalidProtocolBufferException {
+		MessageContainer container = MessageContainer.parseFrom(envelope);
+		return Payload.parseFrom(container.getMessageData());
+	}
+}
@@ -0,0 +1,155 @@
+package io.github.ppissias.xsrpcj.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.protobuf.ByteString;
+
+import io.github.ppissias.xsrpcj.benchmarks.generated.client.BenchClientServiceImpl;
+import io.github.ppissias.xsrpcj.benchmarks.generated.client.BenchSubscribeClientCallback;
+import io.github.ppissias.xsrpcj.benchmarks.generated.comms.RemoteCommunicationsException;
+import io.github.ppissias.xsrpcj.benchmarks.messages.BenchMessages.Payload;
+
+/**
+ * Throughput and latency of the generated client and server over a loopback connection.
+ *
+ * All the benchmark threads share one client, as an application would. The number of threads
+ * is set with the -t option of JMH (or with ThreadSweep), the number of connections of the
+ * client with -p connections=...
+ *
+ * The oneway benchmark measures the time to send a request, which the server discards. The
+ * echo benchmark measures a request and its reply. The subscribe benchmark measures a request
+ * and its reply together with the callbacks the server sends before the reply.
+ *
+ * @author Petros Pissias
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoopbackBenchmark {
+
+	//the number of callbacks the server sends for each subscribe request
+	private static final int callbacksPerCall = 10;
+
+	//how long the setup waits for the server to accept connections
+	private static final long serverStartMillis = 5000;
+
+	//the size of the data of the requests, in bytes
+	@Param({"16", "1024", "65536"})
+	public int payloadSize;
+
+	//the number of connections of the client
+	@Param({"1"})
+	public int connections;
+
+	//the client shared by the benchmark threads
+	private BenchClientServiceImpl client;
+
+	//the request of the oneway and echo benchmarks
+	private Payload payload;
+
+	//the callbacks received by each subscriber, by subscriber id
+	private final ConcurrentMap<Long, Semaphore> receivedCallbacks = new ConcurrentHashMap<Long, Semaphore>();
+
+	//the ids of the subscribers
+	private final AtomicLong subscriberIds = new AtomicLong(0);
+
+	/**
+	 * The state of a benchmark thread calling the subscribe service
+	 */
+	@State(Scope.Thread)
+	public static class Subscriber {
+
+		//the subscribe request, with the id of this subscriber
+		private Payload request;
+
+		//released once for each callback received by this subscriber
+		private Semaphore callbacks;
+
+		@Setup(Level.Trial)
+		public void setup(LoopbackBenchmark benchmark) {
+			long id = benchmark.subscriberIds.incrementAndGet();
+			request = benchmark.payload.toBuilder().setId(id).setCount(callbacksPerCall).build();
+			callbacks = new Semaphore(0);
+			benchmark.receivedCallbacks.put(id, callbacks);
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		LoopbackServer.ensureStarted();
+
+		byte[] data = new byte[payloadSize];
+		new Random(payloadSize).nextBytes(data);
+		payload = Payload.newBuilder().setData(ByteString.copyFrom(data)).build();
+
+		client = new BenchClientServiceImpl("localhost", LoopbackServer.port, connections, new BenchSubscribeClientCallback() {
+			@Override
+			public void subscribeCallback(Payload cb) {
+				Semaphore callbacks = receivedCallbacks.get(cb.getId());
+				if (callbacks != null) {
+					callbacks.release();
+				}
+			}
+		});
+
+		//the server is started by another thread, wait until it accepts connections
+		long deadline = System.currentTimeMillis() + serverStartMillis;
+		while (true) {
+			try {
+				client.echo(payload);
+				break;
+			} catch (RemoteCommunicationsException e) {
+				if (System.currentTimeMillis() > deadline) {
+					throw e;
+				}
+				Thread.sleep(50);
+			}
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		client.finished();
+		receivedCallbacks.clear();
+	}
+
+	@Benchmark
+	public void oneway() throws RemoteCommunicationsException {
+		client.oneway(payload);
+	}
+
+	@Benchmark
+	public Payload echo() throws RemoteCommunicationsException {
+		return client.echo(payload);
+	}
+
+	@Benchmark
+	public Payload subscribe(Subscriber subscriber) throws RemoteCommunicationsException, InterruptedException {
+		Payload reply = client.subscribe(subscriber.request);
+		subscriber.callbacks.acquire(callbacksPerCall);
+		return reply;
+	}
+}
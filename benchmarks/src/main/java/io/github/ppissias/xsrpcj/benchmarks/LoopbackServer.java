@@ -0,0 +1,63 @@
+package io.github.ppissias.xsrpcj.benchmarks;
+
+import io.github.ppissias.xsrpcj.benchmarks.generated.comms.RemoteCommunicationsException;
+import io.github.ppissias.xsrpcj.benchmarks.generated.server.BenchServer;
+import io.github.ppissias.xsrpcj.benchmarks.generated.server.BenchServerService;
+import io.github.ppissias.xsrpcj.benchmarks.generated.server.BenchSubscribeServerCallback;
+import io.github.ppissias.xsrpcj.benchmarks.messages.BenchMessages.Payload;
+
+/**
+ * The server of the loopback benchmarks. It is started once per benchmark JVM
+ * (the generated server cannot be stopped) and handles the requests with as
+ * little work as possible, so that the benchmarks measure the generated code.
+ *
+ * @author Petros Pissias
+ *
+ */
+final class LoopbackServer implements BenchServerService {
+
+	//the port of the server, can be changed with -Dbench.port=...
+	static final int port = Integer.getInteger("bench.port", 22500);
+
+	//true once the server is started in this JVM
+	private static boolean started = false;
+
+	private LoopbackServer() {
+	}
+
+	/**
+	 * Starts the server, if it is not already running in this JVM
+	 */
+	static synchronized void ensureStarted() {
+		if (!started) {
+			BenchServer server = new BenchServer(new LoopbackServer(), port);
+			//does not keep the benchmark JVM running
+			server.setDaemon(true);
+			server.start();
+			started = true;
+		}
+	}
+
+	@Override
+	public void oneway(Payload request) {
+		//nothing to do, the benchmark measures the transfer of the request
+	}
+
+	@Override
+	public Payload echo(Payload request) {
+		return request;
+	}
+
+	@Override
+	public Payload subscribe(Payload request, BenchSubscribeServerCallback callback) {
+		//send the requested number of callbacks before the reply, each carrying the payload of the request
+		try {
+			for (int i = 0; i < request.getCount(); i++) {
+				callback.subscribeCallback(request);
+			}
+		} catch (RemoteCommunicationsException e) {
+			//the client is gone, the benchmark has ended
+		}
+		return Payload.newBuilder().setId(request.getId()).build();
+	}
+}
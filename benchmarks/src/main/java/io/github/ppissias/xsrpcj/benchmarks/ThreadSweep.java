@@ -0,0 +1,41 @@
+package io.github.ppissias.xsrpcj.benchmarks;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs benchmarks once for each of a number of client thread counts, and writes the results
+ * of each run to a JSON file (i.e. results-t4.json), so that they can be compared between
+ * configurations and generator versions.
+ *
+ * usage: java -cp target/benchmarks.jar io.github.ppissias.xsrpcj.benchmarks.ThreadSweep [benchmark regexp]
+ *
+ * The regexp defaults to the loopback benchmarks. The thread counts are set with
+ * -Dbench.threads=1,4,16 (the default).
+ *
+ * @author Petros Pissias
+ *
+ */
+public final class ThreadSweep {
+
+	private ThreadSweep() {
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		String include = (args.length > 0) ? args[0] : LoopbackBenchmark.class.getSimpleName();
+
+		for (String threadCount : System.getProperty("bench.threads", "1,4,16").split(",")) {
+			int threads = Integer.parseInt(threadCount.trim());
+			Options options = new OptionsBuilder()
+					.include(include)
+					.threads(threads)
+					.resultFormat(ResultFormatType.JSON)
+					.result("results-t"+threads+".json")
+					.build();
+			new Runner(options).run();
+		}
+	}
+}
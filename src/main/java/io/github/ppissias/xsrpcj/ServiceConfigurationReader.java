@@ -28,6 +28,27 @@ public class ServiceConfigurationReader {
 		
 		private List<Service> services;
 		
+		//optional, the pool running the requests of all services
+		private Dispatch dispatch;
+		
+		//optional, the server transport. By default one thread per connection is used
+		private Transport transport;
+		
+		//optional, the compression of the messages of all services
+		private Compression compression;
+		
+		//optional, callbacks are queued per connection and sent by a writer thread
+		private OutboundQueue callbackQueue;
+		
+		//optional, limits the requests run by the dispatch pool of the server
+		private Admission admission;
+		
+		//optional, the client connects at construction and reconnects in the background
+		private Reconnect reconnect;
+		
+		//optional, heartbeats and idle timeout of the connections between the clients and the server
+		private Heartbeat heartbeat;
+		
 		public String getName() {
 			return name;
 		}
@@ -42,20 +63,197 @@ public class ServiceConfigurationReader {
 			return javaPackage;
 		}
 		
+		public Dispatch getDispatch() {
+			return dispatch;
+		}
+		
+		public boolean hasDispatch() {
+			return dispatch != null;
+		}
+		
+		public Transport getTransport() {
+			return transport;
+		}
+		
+		public boolean hasNioTransport() {
+			return transport != null && Transport.nioType.equals(transport.getType());
+		}
+		
+		public Compression getCompression() {
+			return compression;
+		}
+		
+		//returns the compression of the messages of a service. The compression of the service, if any, overrides the one of the server
+		public Compression getCompression(Service service) {
+			return (service.getCompression() != null) ? service.getCompression() : compression;
+		}
+		
+		public OutboundQueue getCallbackQueue() {
+			return callbackQueue;
+		}
+		
+		public boolean hasCallbackQueue() {
+			return callbackQueue != null;
+		}
+		
+		public Admission getAdmission() {
+			return admission;
+		}
+		
+		public boolean hasAdmission() {
+			return admission != null;
+		}
+		
+		public Reconnect getReconnect() {
+			return reconnect;
+		}
+		
+		public boolean hasReconnect() {
+			return reconnect != null;
+		}
+		
+		public Heartbeat getHeartbeat() {
+			return heartbeat;
+		}
+		
+		public boolean hasHeartbeat() {
+			return heartbeat != null;
+		}
+		
+		//returns the admission limits of the requests of a service. The limits of the service, if any, or for
+		//the services running on the dispatch pool of the server the limits of the server. null if they are not limited
+		public Admission getAdmission(Service service) {
+			if (service.hasAdmission()) {
+				return service.getAdmission();
+			} else if (!service.hasDispatch() && !service.hasStream() && !service.hasRequestStream()) {
+				return admission;
+			} else {
+				return null;
+			}
+		}
+		
+		public boolean hasAdmission(Service service) {
+			return getAdmission(service) != null;
+		}
+		
+		//returns the maximum number of running requests of the admission limits of the server, by default the threads of its dispatch pool
+		public int getMaxConcurrent() {
+			return (admission.getMaxConcurrent() > 0) ? admission.getMaxConcurrent() : dispatch.getThreads();
+		}
+		
+		//returns the maximum number of running requests of the admission limits of a service, by default the threads of the pool running them
+		public int getMaxConcurrent(Service service) {
+			if (service.getAdmission().getMaxConcurrent() > 0) {
+				return service.getAdmission().getMaxConcurrent();
+			}
+			return service.hasDispatch() ? service.getDispatch().getThreads() : dispatch.getThreads();
+		}
+		
+		public boolean hasCallbacks() {
+			for (Service service : services) {
+				if (service.hasCallback()) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		public boolean hasStreams() {
+			for (Service service : services) {
+				if (service.hasStream() || service.hasRequestStream()) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		public boolean hasBatches() {
+			for (Service service : services) {
+				if (service.hasBatch()) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		public boolean hasCaches() {
+			for (Service service : services) {
+				if (service.hasCache()) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		public boolean hasAdmissions() {
+			for (Service service : services) {
+				if (hasAdmission(service)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		//true if the server or one of its services has a dispatch pool
+		public boolean hasDispatches() {
+			if (hasDispatch()) {
+				return true;
+			}
+			for (Service service : services) {
+				if (service.hasDispatch()) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		public boolean hasCompression(Service service) {
+			Compression serviceCompression = getCompression(service);
+			return serviceCompression != null && !Compression.noCodec.equals(serviceCompression.getCodec());
+		}
+		
 		@Override
 		public String toString() {
 			return String.format(
-					"Server [name=%s, port=%s, javaPackage=%s, services=%s]",
-					name, port, javaPackage, services);
+					"Server [name=%s, port=%s, javaPackage=%s, services=%s, dispatch=%s, transport=%s, compression=%s, callbackQueue=%s, admission=%s, reconnect=%s, heartbeat=%s]",
+					name, port, javaPackage, services, dispatch, transport, compression, callbackQueue, admission, reconnect, heartbeat);
 		}	
 	}
 	
 	//service information
 	public class Service {
+		public static final int defaultStreamCredits = 32;
+		public static final int defaultDeadline = 60 * 1000;
+		
 		private String serviceName;
 		private String requestType;
 		private String responseType;
 		private String callbackType;
+		//optional, the type of the messages streamed back by the server
+		private String streamType;
+		//optional, the number of stream messages the receiving side can buffer (credits granted to the sending side)
+		private int streamCredits;
+		//optional, the client sends a stream of requests
+		private boolean requestStream;
+		//optional, the client can send many requests in one batch
+		private boolean batch;
+		//optional, the time in milliseconds the client waits for a reply. Sent to the server with the request
+		private int deadline;
+		
+		//optional, a dedicated pool running the requests of this service
+		private Dispatch dispatch;
+		
+		//optional, limits the requests of this service run by its dispatch pool (or the dispatch pool of the server)
+		private Admission admission;
+		
+		//optional, oneway requests are queued and sent by a writer thread
+		private OutboundQueue outboundQueue;
+		
+		//optional, the compression of the messages of this service
+		private Compression compression;
+		
+		//optional, the client keeps the replies of this service and answers repeated requests from them
+		private Cache cache;
 
 		public String getServiceName() {
 			return serviceName;
@@ -75,6 +273,12 @@ public class ServiceConfigurationReader {
 		public String getCallbackType() {
 			return callbackType;
 		}
+		public String getStreamType() {
+			return streamType;
+		}
+		public int getStreamCredits() {
+			return (streamCredits == 0) ? defaultStreamCredits : streamCredits;
+		}
 		
 		public String getRequestClassName() {
 			if (requestType == null) {
@@ -119,23 +323,304 @@ public class ServiceConfigurationReader {
 			}			
 		}
 		
+		public String getStreamClassName() {
+			if (streamType == null) {
+				return null;
+			} else {
+				String[] splitString = streamType.split("\\.");
+				return splitString[splitString.length -1];
+			}		
+		}
+		
+		public boolean hasStream() {
+			return streamType != null;
+		}
+		
+		public boolean hasRequestStream() {
+			return requestStream;
+		}
+		
+		public boolean hasBatch() {
+			return batch;
+		}
+		
+		public int getDeadline() {
+			return (deadline == 0) ? defaultDeadline : deadline;
+		}
+		
+		public boolean isDeadlineSet() {
+			return deadline != 0;
+		}
+		
+		//true if the client waits for the reply of each call, until the deadline of the call
+		public boolean hasDeadline() {
+			return hasResponse() && !hasStream() && !hasRequestStream();
+		}
+		
+		public Dispatch getDispatch() {
+			return dispatch;
+		}
+		
+		public boolean hasDispatch() {
+			return dispatch != null;
+		}
+		
+		public Admission getAdmission() {
+			return admission;
+		}
+		
+		public boolean hasAdmission() {
+			return admission != null;
+		}
+		
+		public OutboundQueue getOutboundQueue() {
+			return outboundQueue;
+		}
+		
+		public boolean hasOutboundQueue() {
+			return outboundQueue != null;
+		}
+		
+		public Compression getCompression() {
+			return compression;
+		}
+		
+		public Cache getCache() {
+			return cache;
+		}
+		
+		public boolean hasCache() {
+			return cache != null;
+		}
+		
 		@Override
 		public String toString() {
 			return String
-					.format("Service [serviceMame=%s, requestType=%s, responseType=%s, callbackType=%s]",
+					.format("Service [serviceMame=%s, requestType=%s, responseType=%s, callbackType=%s, streamType=%s, streamCredits=%s, requestStream=%s, batch=%s, deadline=%s, dispatch=%s, admission=%s, outboundQueue=%s, compression=%s, cache=%s]",
 							serviceName, requestType, responseType,
-							callbackType);
+							callbackType, streamType, streamCredits, requestStream, batch, deadline, dispatch, admission, outboundQueue, compression, cache);
 		}				
 	}
 	
+	//outbound queue information (client side oneway requests, or server side callbacks)
+	public class OutboundQueue {
+		public static final String blockPolicy = "block";
+		public static final String dropPolicy = "drop";
+		public static final String dropOldestPolicy = "dropOldest";
+		public static final String failPolicy = "fail";
+		public static final String disconnectPolicy = "disconnect";
+		
+		//the maximum number of queued messages
+		private int size;
+		//what happens when the queue is full. block (default), drop, dropOldest, fail or disconnect
+		private String policy;
+		
+		public int getSize() {
+			return size;
+		}
+		public String getPolicy() {
+			return (policy == null) ? blockPolicy : policy;
+		}
+		//returns the name of the OverflowPolicy constant of the generated code (i.e. dropOldest -> DROP_OLDEST)
+		public String getPolicyConstant() {
+			return getPolicy().replaceAll("([a-z])([A-Z])", "$1_$2").toUpperCase();
+		}
+		//checks if the policy is one of the known policies
+		public boolean hasKnownPolicy() {
+			String currentPolicy = getPolicy();
+			return blockPolicy.equals(currentPolicy) || dropPolicy.equals(currentPolicy) || dropOldestPolicy.equals(currentPolicy) 
+					|| failPolicy.equals(currentPolicy) || disconnectPolicy.equals(currentPolicy);
+		}
+		
+		@Override
+		public String toString() {
+			return String.format("OutboundQueue [size=%s, policy=%s]", size, policy);
+		}
+	}
+	
+	//message compression information
+	public class Compression {
+		public static final String deflateCodec = "deflate";
+		public static final String noCodec = "none";
+		public static final int defaultThreshold = 1024;
+		
+		//the name of the codec. deflate (default), none, or a codec registered with FrameCodecs
+		private String codec;
+		//messages smaller than this (in bytes) are not compressed
+		private Integer threshold;
+		
+		public String getCodec() {
+			return (codec == null) ? deflateCodec : codec;
+		}
+		public int getThreshold() {
+			return (threshold == null) ? defaultThreshold : threshold;
+		}
+		
+		@Override
+		public String toString() {
+			return String.format("Compression [codec=%s, threshold=%s]", codec, threshold);
+		}
+	}
+	
+	//server transport information
+	public class Transport {
+		public static final String blockingType = "blocking";
+		public static final String nioType = "nio";
+		
+		private String type;
+		//number of selector threads of the nio transport. If not set the number of available processors is used
+		private int eventLoops;
+		
+		public String getType() {
+			return type;
+		}
+		public int getEventLoops() {
+			return eventLoops;
+		}
+		
+		@Override
+		public String toString() {
+			return String.format("Transport [type=%s, eventLoops=%s]", type, eventLoops);
+		}
+	}
+	
+	//request dispatch information (server side thread pool)
+	public class Dispatch {
+		private int threads;
+		//if true, the requests of each connection are executed in the order they arrived
+		private boolean ordered;
+		
+		public int getThreads() {
+			return threads;
+		}
+		public boolean isOrdered() {
+			return ordered;
+		}
+		
+		@Override
+		public String toString() {
+			return String.format("Dispatch [threads=%s, ordered=%s]", threads, ordered);
+		}
+	}
+	
+	//admission control information (server side limits of the dispatched requests)
+	public class Admission {
+		//the maximum number of requests running at the same time. If not set the threads of the dispatch pool
+		private int maxConcurrent;
+		//the maximum number of admitted requests waiting to run, in addition to the running ones
+		private int maxQueued;
+		
+		public int getMaxConcurrent() {
+			return maxConcurrent;
+		}
+		public int getMaxQueued() {
+			return maxQueued;
+		}
+		
+		@Override
+		public String toString() {
+			return String.format("Admission [maxConcurrent=%s, maxQueued=%s]", maxConcurrent, maxQueued);
+		}
+	}
+	
+	//reconnection information (client side connections)
+	public class Reconnect {
+		public static final int defaultInitialBackoff = 100;
+		public static final int defaultMaxBackoff = 30000;
+		
+		//if true, the client connects when it is constructed instead of on its first call
+		private boolean eager;
+		//the delay (in milliseconds) before the first reconnection attempt, doubled after each failed attempt
+		private Integer initialBackoff;
+		//the maximum delay (in milliseconds) between reconnection attempts
+		private Integer maxBackoff;
+		
+		public boolean isEager() {
+			return eager;
+		}
+		public int getInitialBackoff() {
+			return (initialBackoff == null) ? defaultInitialBackoff : initialBackoff;
+		}
+		public int getMaxBackoff() {
+			return (maxBackoff == null) ? Math.max(defaultMaxBackoff, getInitialBackoff()) : maxBackoff;
+		}
+		
+		@Override
+		public String toString() {
+			return String.format("Reconnect [eager=%s, initialBackoff=%s, maxBackoff=%s]", eager, initialBackoff, maxBackoff);
+		}
+	}
+	
+	//heartbeat information (both sides of the connections)
+	public class Heartbeat {
+		public static final int defaultInterval = 5000;
+		
+		//the time (in milliseconds) without sending after which a heartbeat is sent
+		private Integer interval;
+		//the time (in milliseconds) without receiving after which the connection is closed. If not set 3 intervals
+		private Integer timeout;
+		
+		public int getInterval() {
+			return (interval == null) ? defaultInterval : interval;
+		}
+		public int getTimeout() {
+			return (timeout == null) ? 3 * getInterval() : timeout;
+		}
+		
+		@Override
+		public String toString() {
+			return String.format("Heartbeat [interval=%s, timeout=%s]", interval, timeout);
+		}
+	}
+	
+	//reply cache information (client side)
+	public class Cache {
+		public static final int defaultTtl = 60 * 1000;
+		public static final int defaultMaxSize = 1000;
+		
+		//the time (in milliseconds) a reply is kept after it is received
+		private Integer ttl;
+		//the maximum number of replies kept, the least recently used reply is evicted first
+		private Integer maxSize;
+		
+		public int getTtl() {
+			return (ttl == null) ? defaultTtl : ttl;
+		}
+		public int getMaxSize() {
+			return (maxSize == null) ? defaultMaxSize : maxSize;
+		}
+		
+		@Override
+		public String toString() {
+			return String.format("Cache [ttl=%s, maxSize=%s]", ttl, maxSize);
+		}
+	}
+	
 	//infrastructure section
 	public class Infrastructure {
+		public static final String platformThreading = "platform";
+		public static final String virtualThreading = "virtual";
+		public static final int defaultMaxPacketSize = 64 * 1024 * 1024;
+		public static final int defaultMaxMessageSize = 256 * 1024 * 1024;
+		
 		private String javaPackage;
 		private String logging;
+		//optional, the kind of threads used by the generated code. platform (default) or virtual
+		private String threading;
+		//optional, if true the received packets are read into pooled buffers
+		private boolean pooledBuffers;
+		//optional, the largest packet (in bytes) accepted from a connection
+		private int maxPacketSize;
+		//optional, the largest message (in bytes) reassembled from fragments
+		private int maxMessageSize;
+		//optional, if set messages larger than this are sent in fragments of this size
+		private int chunkSize;
+		//optional, if true the generated code reports its calls and traffic to a MetricsListener
+		private boolean metrics;
 		@Override
 		public String toString() {
-			return String.format("Infrastructure [javaPackage=%s, logging=%s]",
-					javaPackage, logging);
+			return String.format("Infrastructure [javaPackage=%s, logging=%s, threading=%s, pooledBuffers=%s, maxPacketSize=%s, maxMessageSize=%s, chunkSize=%s, metrics=%s]",
+					javaPackage, logging, threading, pooledBuffers, maxPacketSize, maxMessageSize, chunkSize, metrics);
 		}
 		public String getJavaPackage() {
 			return javaPackage;
@@ -143,6 +628,30 @@ public class ServiceConfigurationReader {
 		public String getLogging() {
 			return logging;
 		}					
+		public String getThreading() {
+			return threading;
+		}
+		public boolean isVirtualThreads() {
+			return virtualThreading.equals(threading);
+		}
+		public boolean isPooledBuffers() {
+			return pooledBuffers;
+		}
+		public int getMaxPacketSize() {
+			return (maxPacketSize == 0) ? defaultMaxPacketSize : maxPacketSize;
+		}
+		public int getMaxMessageSize() {
+			return (maxMessageSize == 0) ? defaultMaxMessageSize : maxMessageSize;
+		}
+		public int getChunkSize() {
+			return chunkSize;
+		}
+		public boolean hasChunkedTransfer() {
+			return chunkSize > 0;
+		}
+		public boolean isMetrics() {
+			return metrics;
+		}
 	}
 	
 	//overall service description class
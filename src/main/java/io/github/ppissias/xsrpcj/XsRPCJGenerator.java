@@ -1,9 +1,16 @@
 package io.github.ppissias.xsrpcj;
 
+import io.github.ppissias.xsrpcj.ServiceConfigurationReader.Admission;
+import io.github.ppissias.xsrpcj.ServiceConfigurationReader.Cache;
+import io.github.ppissias.xsrpcj.ServiceConfigurationReader.Compression;
+import io.github.ppissias.xsrpcj.ServiceConfigurationReader.Heartbeat;
 import io.github.ppissias.xsrpcj.ServiceConfigurationReader.Infrastructure;
+import io.github.ppissias.xsrpcj.ServiceConfigurationReader.OutboundQueue;
+import io.github.ppissias.xsrpcj.ServiceConfigurationReader.Reconnect;
 import io.github.ppissias.xsrpcj.ServiceConfigurationReader.Server;
 import io.github.ppissias.xsrpcj.ServiceConfigurationReader.Service;
 import io.github.ppissias.xsrpcj.ServiceConfigurationReader.ServiceDescription;
+import io.github.ppissias.xsrpcj.ServiceConfigurationReader.Transport;
 
 import java.io.File;
 import java.io.FileWriter;
@@ -66,6 +73,12 @@ public class XsRPCJGenerator {
 	//proto template
 	public static final String protoTemplateFilename = "MessageContainer.proto";
 	
+	//the largest maxPacketSize, the two upper bits of the packet header are flags
+	public static final int maxPacketSizeLimit = 0x3FFFFFFF;
+	
+	//the largest maxMessageSize, so that the size computations of the envelopes cannot overflow
+	public static final int maxMessageSizeLimit = 0x3FFFFFFF;
+	
 	//simple counter
 	public class generatorCounter {
 		private int count = -1;
@@ -230,6 +243,96 @@ public class XsRPCJGenerator {
 
 
 
+	/**
+	 * Checks an outbound queue or callback queue section
+	 * @param queue the queue section
+	 * @param description the description of the section, used in the error message
+	 * @param property the name of the section, used in the error message
+	 * @param owner the server or service of the section, used in the error message
+	 */
+	private void checkOutboundQueue(OutboundQueue queue, String description, String property, String owner) throws ServiceDescriptionException {
+		if (queue.getSize() <= 0) {
+			throw new ServiceDescriptionException("Detected "+description+" without a size on "+owner+". The "+property+" section must always have a size property with a value of a positive integer");
+		}
+		if (!queue.hasKnownPolicy()) {
+			throw new ServiceDescriptionException("Detected unknown "+description+" policy "+queue.getPolicy()+" on "+owner+". The policy must be one of: "+OutboundQueue.blockPolicy+", "+OutboundQueue.dropPolicy+", "
+					+OutboundQueue.dropOldestPolicy+", "+OutboundQueue.failPolicy+", "+OutboundQueue.disconnectPolicy);
+		}
+	}
+
+	/**
+	 * Checks an admission section
+	 * @param admission the admission section
+	 * @param owner the server or service of the section, used in the error message
+	 */
+	private void checkAdmission(Admission admission, String owner) throws ServiceDescriptionException {
+		if (admission.getMaxConcurrent() < 0) {
+			throw new ServiceDescriptionException("Detected invalid admission maxConcurrent "+admission.getMaxConcurrent()+" on "+owner+". The maxConcurrent property must be a positive integer");
+		}
+		if (admission.getMaxQueued() < 0) {
+			throw new ServiceDescriptionException("Detected invalid admission maxQueued "+admission.getMaxQueued()+" on "+owner+". The maxQueued property must be a non negative integer");
+		}
+	}
+
+	/**
+	 * Checks a reconnect section
+	 * @param reconnect the reconnect section
+	 * @param owner the server of the section, used in the error message
+	 */
+	private void checkReconnect(Reconnect reconnect, String owner) throws ServiceDescriptionException {
+		if (reconnect.getInitialBackoff() <= 0) {
+			throw new ServiceDescriptionException("Detected invalid reconnect initialBackoff "+reconnect.getInitialBackoff()+" on "+owner+". The initialBackoff property must be a positive integer");
+		}
+		if (reconnect.getMaxBackoff() < reconnect.getInitialBackoff()) {
+			throw new ServiceDescriptionException("Detected invalid reconnect maxBackoff "+reconnect.getMaxBackoff()+" on "+owner+". The maxBackoff property must not be smaller than the initialBackoff");
+		}
+	}
+
+	/**
+	 * Checks a heartbeat section
+	 * @param heartbeat the heartbeat section
+	 * @param owner the server of the section, used in the error message
+	 */
+	private void checkHeartbeat(Heartbeat heartbeat, String owner) throws ServiceDescriptionException {
+		if (heartbeat.getInterval() <= 0) {
+			throw new ServiceDescriptionException("Detected invalid heartbeat interval "+heartbeat.getInterval()+" on "+owner+". The interval property must be a positive integer");
+		}
+		if (heartbeat.getTimeout() <= heartbeat.getInterval()) {
+			throw new ServiceDescriptionException("Detected invalid heartbeat timeout "+heartbeat.getTimeout()+" on "+owner+". The timeout property must be larger than the interval");
+		}
+	}
+
+	/**
+	 * Checks a cache section
+	 * @param cache the cache section
+	 * @param owner the service of the section, used in the error message
+	 */
+	private void checkCache(Cache cache, String owner) throws ServiceDescriptionException {
+		if (cache.getTtl() <= 0) {
+			throw new ServiceDescriptionException("Detected invalid cache ttl "+cache.getTtl()+" on "+owner+". The ttl property must be a positive number of milliseconds");
+		}
+		if (cache.getMaxSize() <= 0) {
+			throw new ServiceDescriptionException("Detected invalid cache maxSize "+cache.getMaxSize()+" on "+owner+". The maxSize property must be a positive integer");
+		}
+	}
+
+	/**
+	 * Checks an optional compression section
+	 * @param compression the compression section, or null
+	 * @param owner the server or service of the section, used in the error message
+	 */
+	private void checkCompression(Compression compression, String owner) throws ServiceDescriptionException {
+		if (compression == null) {
+			return;
+		}
+		if (compression.getCodec().equals("")) {
+			throw new ServiceDescriptionException("Detected compression with an empty codec on "+owner+". The codec property must be "+Compression.deflateCodec+", "+Compression.noCodec+" or the name of a registered codec");
+		}
+		if (compression.getThreshold() < 0) {
+			throw new ServiceDescriptionException("Detected invalid compression threshold "+compression.getThreshold()+" on "+owner+". The threshold property must be a non negative integer");
+		}
+	}
+
 	/**
 	 * Does a basic sanity check on the provided information
 	 * @param servicesDesc the service description information
@@ -273,6 +376,41 @@ public class XsRPCJGenerator {
 				throw new ServiceDescriptionException("Detected server with an empty java package. Servers must always have a non empty javaPackage property");
 			}	
 			
+			if (server.getTransport() != null) {
+				String transportType = server.getTransport().getType();
+				if (!Transport.blockingType.equals(transportType) && !Transport.nioType.equals(transportType)) {
+					throw new ServiceDescriptionException("Detected unknown transport type "+transportType+" on server "+server.getName()+". The transport type must be one of: "+Transport.blockingType+", "+Transport.nioType);
+				}
+			}
+			
+			checkCompression(server.getCompression(), "server "+server.getName());
+			
+			if (server.hasDispatch() && server.getDispatch().getThreads() <= 0) {
+				throw new ServiceDescriptionException("Detected dispatch without threads on server "+server.getName()+". A dispatch section must always have a threads property with a value of a positive integer");
+			}
+			
+			if (server.hasAdmission()) {
+				if (!server.hasDispatch()) {
+					throw new ServiceDescriptionException("Detected admission on server "+server.getName()+" without dispatch. An admission section can only be used by servers with a dispatch section");
+				}
+				checkAdmission(server.getAdmission(), "server "+server.getName());
+			}
+			
+			if (server.hasReconnect()) {
+				checkReconnect(server.getReconnect(), "server "+server.getName());
+			}
+			
+			if (server.hasHeartbeat()) {
+				checkHeartbeat(server.getHeartbeat(), "server "+server.getName());
+			}
+			
+			if (server.hasCallbackQueue()) {
+				if (server.getServices() != null && !server.hasCallbacks()) {
+					throw new ServiceDescriptionException("Detected callback queue on server "+server.getName()+" without callback services. A callbackQueue section can only be used by servers with services that have a callbackType");
+				}
+				checkOutboundQueue(server.getCallbackQueue(), "callback queue", "callbackQueue", "server "+server.getName());
+			}
+			
 			//for each service
 			List<String> serviceNames = new ArrayList<String>();
 
@@ -306,7 +444,74 @@ public class XsRPCJGenerator {
 					throw new ServiceDescriptionException("Detected service without a request type on server "+server.getName()+". Services must always have a requestType property");
 				}
 				
+				if (service.hasDispatch() && service.getDispatch().getThreads() <= 0) {
+					throw new ServiceDescriptionException("Detected dispatch without threads on service "+service.getServiceName()+" of server "+server.getName()+". A dispatch section must always have a threads property with a value of a positive integer");
+				}
+				
+				if (service.hasStream()) {
+					if (service.hasResponse() || service.hasCallback()) {
+						throw new ServiceDescriptionException("Detected stream service "+service.getServiceName()+" of server "+server.getName()+" with a response or callback type. A service with a streamType cannot have a responseType or a callbackType");
+					} else if (service.getStreamType().equals("")) {
+						throw new ServiceDescriptionException("Detected service "+service.getServiceName()+" of server "+server.getName()+" with an empty stream type. The streamType property must be a non empty message type");
+					}
+					if (service.getStreamCredits() < 0) {
+						throw new ServiceDescriptionException("Detected invalid stream credits "+service.getStreamCredits()+" on service "+service.getServiceName()+" of server "+server.getName()+". The streamCredits property must be a positive integer");
+					}
+				}
+				
+				if (service.hasRequestStream()) {
+					if (service.hasCallback()) {
+						throw new ServiceDescriptionException("Detected request stream service "+service.getServiceName()+" of server "+server.getName()+" with a callback type. A service with a requestStream cannot have a callbackType");
+					} else if (!service.hasResponse() && !service.hasStream()) {
+						throw new ServiceDescriptionException("Detected request stream service "+service.getServiceName()+" of server "+server.getName()+" without a response or stream type. A service with a requestStream must have a responseType or a streamType");
+					}
+				}
 				
+				if (service.hasBatch()) {
+					if (!service.hasResponse() || service.hasCallback() || service.hasStream() || service.hasRequestStream()) {
+						throw new ServiceDescriptionException("Detected batch on service "+service.getServiceName()+" of server "+server.getName()+". Batches can only be used by services with a responseType (without a callbackType, streamType or requestStream)");
+					}
+					for (Service otherService : server.getServices()) {
+						if ((service.getServiceName()+"Batch").equals(otherService.getServiceName())) {
+							throw new ServiceDescriptionException("Detected service "+otherService.getServiceName()+" of server "+server.getName()+" with the name of the batch method of service "+service.getServiceName()+". Service names must be unique");
+						}
+					}
+				}
+				
+				if (service.getDeadline() <= 0) {
+					throw new ServiceDescriptionException("Detected invalid deadline "+service.getDeadline()+" on service "+service.getServiceName()+" of server "+server.getName()+". The deadline property must be a positive number of milliseconds");
+				} else if (service.isDeadlineSet() && !service.hasDeadline()) {
+					throw new ServiceDescriptionException("Detected deadline on service "+service.getServiceName()+" of server "+server.getName()+". Deadlines can only be used by services with a responseType (without a streamType or requestStream)");
+				}
+				
+				if (service.hasAdmission()) {
+					if (service.hasStream() || service.hasRequestStream()) {
+						throw new ServiceDescriptionException("Detected admission on service "+service.getServiceName()+" of server "+server.getName()+". Admission limits can only be used by services without a streamType or requestStream");
+					} else if (!service.hasDispatch() && !server.hasDispatch()) {
+						throw new ServiceDescriptionException("Detected admission on service "+service.getServiceName()+" of server "+server.getName()+" without dispatch. An admission section can only be used by services that have (or whose server has) a dispatch section");
+					}
+					checkAdmission(service.getAdmission(), "service "+service.getServiceName()+" of server "+server.getName());
+				}
+				
+				checkCompression(service.getCompression(), "service "+service.getServiceName()+" of server "+server.getName());
+				
+				if (service.hasOutboundQueue()) {
+					if (service.hasResponse() || service.hasStream() || service.hasRequestStream()) {
+						throw new ServiceDescriptionException("Detected outbound queue on service "+service.getServiceName()+" of server "+server.getName()+". An outboundQueue section can only be used by oneway services (without a responseType, streamType or requestStream)");
+					}
+					checkOutboundQueue(service.getOutboundQueue(), "outbound queue", "outboundQueue", "service "+service.getServiceName()+" of server "+server.getName());
+					if (OutboundQueue.disconnectPolicy.equals(service.getOutboundQueue().getPolicy())) {
+						//the connections of a client are shared by all its services
+						throw new ServiceDescriptionException("Detected outbound queue policy "+OutboundQueue.disconnectPolicy+" on service "+service.getServiceName()+" of server "+server.getName()+". The "+OutboundQueue.disconnectPolicy+" policy can only be used by a callbackQueue");
+					}
+				}
+				
+				if (service.hasCache()) {
+					if (!service.hasResponse() || service.hasCallback() || service.hasStream() || service.hasRequestStream()) {
+						throw new ServiceDescriptionException("Detected cache on service "+service.getServiceName()+" of server "+server.getName()+". Replies can only be cached by services with a responseType (without a callbackType, streamType or requestStream)");
+					}
+					checkCache(service.getCache(), "service "+service.getServiceName()+" of server "+server.getName());
+				}
 			}
 		}
 		
@@ -327,6 +532,23 @@ public class XsRPCJGenerator {
 		} else if (infrastructurePart.getLogging().equals("")){
 			throw new ServiceDescriptionException("Infrastructure logging not found. The infrastructure part must have a non empty logging property");
 		}		
+		
+		String threading = infrastructurePart.getThreading();
+		if (threading != null && !Infrastructure.platformThreading.equals(threading) && !Infrastructure.virtualThreading.equals(threading)) {
+			throw new ServiceDescriptionException("Detected unknown infrastructure threading "+threading+". The threading property must be one of: "+Infrastructure.platformThreading+", "+Infrastructure.virtualThreading);
+		}
+		
+		if (infrastructurePart.getMaxPacketSize() <= 0 || infrastructurePart.getMaxPacketSize() > maxPacketSizeLimit) {
+			throw new ServiceDescriptionException("Detected invalid infrastructure maxPacketSize "+infrastructurePart.getMaxPacketSize()+". The maxPacketSize property must be a positive integer, not larger than "+maxPacketSizeLimit);
+		}
+		
+		if (infrastructurePart.getMaxMessageSize() < infrastructurePart.getMaxPacketSize() || infrastructurePart.getMaxMessageSize() > maxMessageSizeLimit) {
+			throw new ServiceDescriptionException("Detected invalid infrastructure maxMessageSize "+infrastructurePart.getMaxMessageSize()+". The maxMessageSize property must be a positive integer, not smaller than the maxPacketSize ("+infrastructurePart.getMaxPacketSize()+") and not larger than "+maxMessageSizeLimit);
+		}
+		
+		if (infrastructurePart.getChunkSize() < 0 || infrastructurePart.getChunkSize() > infrastructurePart.getMaxPacketSize()) {
+			throw new ServiceDescriptionException("Detected invalid infrastructure chunkSize "+infrastructurePart.getChunkSize()+". The chunkSize property must be a positive integer, not larger than the maxPacketSize ("+infrastructurePart.getMaxPacketSize()+")");
+		}
 	}
 
 	/**
@@ -342,7 +564,15 @@ public class XsRPCJGenerator {
 		//replace package only & logging....
 		String[] infrastructureFileNames = new String[] {"ClientReplyHandler.java", 
 				"DataHandler.java", "ErrorHandler.java", "RemoteCommunicationsException.java","RemoteCommunicationsErrorType.java", 
-				"ServiceProxy.java", "SocketDataTransceiver.java", "SocketDataTransceiverReaderThread.java"};
+				"ServiceProxy.java", "SocketDataTransceiver.java", "SocketDataTransceiverReaderThread.java",
+				"NamedThreadFactory.java", "OrderedExecutor.java", "DataTransceiver.java", 
+				"ConnectionListener.java", "NioDataTransceiver.java", "NioEventLoop.java", "NioServerTransport.java",
+				"EnvelopeCodec.java", "ByteBufferPool.java", "ByteBufferDataHandler.java", "PacketAssembler.java", "ClientConnection.java",
+				"OutboundQueue.java", "OverflowPolicy.java", "PacketSender.java",
+				"FrameCodec.java", "FrameCodecs.java", "FrameCompression.java", "DeflateFrameCodec.java",
+				"ServerStream.java", "ClientStream.java",
+				"StreamObserver.java", "StreamSender.java", "StreamReceiver.java", "ClientRequestStream.java", "ReplyObserver.java",
+				"BatchResult.java", "MetricsListener.java", "MetricsRecorder.java", "AdmissionController.java", "ReconnectBackoff.java", "Heartbeat.java", "ResponseCache.java", "MessageTooLargeException.java"};
 		
 		
 		for (String infrastructureFile : infrastructureFileNames) {
@@ -441,6 +671,10 @@ public class XsRPCJGenerator {
 			
 			if (service.getCallbackType() != null && !classImports.contains(service.getCallbackType())) {
 				classImports.add(service.getCallbackType());
+			}
+			
+			if (service.getStreamType() != null && !classImports.contains(service.getStreamType())) {
+				classImports.add(service.getStreamType());
 			}	
 		}
 				
@@ -483,6 +717,10 @@ public class XsRPCJGenerator {
 			
 			if (service.getCallbackType() != null && !classImports.contains(service.getCallbackType())) {
 				classImports.add(service.getCallbackType());
+			}
+			
+			if (service.getStreamType() != null && !classImports.contains(service.getStreamType())) {
+				classImports.add(service.getStreamType());
 			}	
 		}
 				
@@ -590,6 +828,10 @@ public class XsRPCJGenerator {
 			
 			if (service.getCallbackType() != null && !classImports.contains(service.getCallbackType())) {
 				classImports.add(service.getCallbackType());
+			}
+			
+			if (service.getStreamType() != null && !classImports.contains(service.getStreamType())) {
+				classImports.add(service.getStreamType());
 			}	
 		}
 				
@@ -631,6 +873,10 @@ public class XsRPCJGenerator {
 			
 			if (service.getCallbackType() != null && !classImports.contains(service.getCallbackType())) {
 				classImports.add(service.getCallbackType());
+			}
+			
+			if (service.getStreamType() != null && !classImports.contains(service.getStreamType())) {
+				classImports.add(service.getStreamType());
 			}	
 		}
 				
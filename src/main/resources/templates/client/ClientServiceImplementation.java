@@ -1,20 +1,43 @@
 package ${server.javaPackage}.$clientSubPackage;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 #if ($infrastructure.logging == "log4j")
 import org.apache.log4j.Logger;
+#elseif ($infrastructure.logging == "slf4j")
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 #end
 
 import com.google.protobuf.ByteString;
 import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.MessageLite;
 
+import ${infrastructure.javaPackage}.BatchResult;
+import ${infrastructure.javaPackage}.ByteBufferDataHandler;
+import ${infrastructure.javaPackage}.ClientConnection;
 import ${infrastructure.javaPackage}.ClientReplyHandler;
+import ${infrastructure.javaPackage}.ClientRequestStream;
+import ${infrastructure.javaPackage}.ClientStream;
 import ${infrastructure.javaPackage}.DataHandler;
+import ${infrastructure.javaPackage}.EnvelopeCodec;
+import ${infrastructure.javaPackage}.ErrorHandler;
+import ${infrastructure.javaPackage}.FrameCompression;
+import ${infrastructure.javaPackage}.Heartbeat;
+import ${infrastructure.javaPackage}.MessageTooLargeException;
+import ${infrastructure.javaPackage}.OutboundQueue;
+import ${infrastructure.javaPackage}.OverflowPolicy;
+import ${infrastructure.javaPackage}.ReconnectBackoff;
 import ${infrastructure.javaPackage}.RemoteCommunicationsErrorType;
 import ${infrastructure.javaPackage}.RemoteCommunicationsException;
+import ${infrastructure.javaPackage}.ResponseCache;
 import ${infrastructure.javaPackage}.ServiceProxy;
 import ${infrastructure.javaPackage}.SocketDataTransceiver;
+import ${infrastructure.javaPackage}.StreamObserver;
 
 //message type imports
 #foreach( $importClass in $classImports )
@@ -26,18 +49,13 @@ import ${server.javaPackage}.types.${server.name}.MessageContainer;
 import ${server.javaPackage}.types.${server.name}.MessageContainer.MessageType;
 
 
-public class $className extends ServiceProxy implements DataHandler, ${serviceInterfaceClassName}{
+public class $className extends ServiceProxy implements DataHandler#if ($infrastructure.pooledBuffers), ByteBufferDataHandler#end, ${serviceInterfaceClassName}{
 	#if ($infrastructure.logging == "log4j")
 	private final Logger logger = Logger.getLogger(getClass());
+	#elseif ($infrastructure.logging == "slf4j")
+	private final Logger logger = LoggerFactory.getLogger(getClass());
 	#end
 	
-	//the reply handlers for each interaction pattern
-	#foreach ($service in $server.services)
-		#if ($service.hasResponse()) ##must create reply handler
-	private final ClientReplyHandler<${service.responseClassName}> client${service.serviceName}ReplyHandler; 
-		#end
-	#end	
-	
 	//keep references to all service callbacks
 	#foreach ($service in $server.services)
 		#if ($service.hasCallback()) ##must store callback 
@@ -45,18 +63,54 @@ public class $className extends ServiceProxy implements DataHandler, ${serviceIn
 		#end
 	#end	
 	
-	//timeout waiting for a reply from the server
+	//timeout waiting for a stream message from the server
 	private static final int timeoutSeconds = 60;
 	
+	//the deadlines of the calls of the services, the time in milliseconds a call waits for the reply
+	#foreach ($service in $server.services)
+		#if ($service.hasDeadline())
+	private static final long ${service.serviceName}Deadline = ${service.deadline};
+		#end
+	#end
+	
+	#if ($server.hasHeartbeat())
+	//the heartbeats and idle timeout of the connections
+	private static final Heartbeat heartbeat = new Heartbeat(${server.heartbeat.interval}, ${server.heartbeat.timeout});
+	
+	#end
+	#if ($server.hasReconnect())
+	//the delays between the attempts to reconnect a lost connection
+	private static final ReconnectBackoff reconnectBackoff = new ReconnectBackoff(${server.reconnect.initialBackoff}, ${server.reconnect.maxBackoff});
+	
+	#end
+	//compression of the messages of the services
+	#foreach ($service in $server.services)
+		#if ($server.hasCompression($service))
+	private static final FrameCompression ${service.serviceName}Compression = new FrameCompression("${server.getCompression($service).codec}", ${server.getCompression($service).threshold});
+		#end
+	#end
+	
+	//outbound queues of the oneway services that are sent by a writer thread
+	#foreach ($service in $server.services)
+		#if ($service.hasOutboundQueue())
+	private final OutboundQueue ${service.serviceName}OutboundQueue = createOutboundQueue("${className}-${service.serviceName}", ${service.outboundQueue.size}, OverflowPolicy.${service.outboundQueue.policyConstant});
+		#end
+	#end
+	
+	//caches of the replies of the cacheable services, keyed by the serialized request
+	#foreach ($service in $server.services)
+		#if ($service.hasCache())
+	private final ResponseCache<${service.responseClassName}> ${service.serviceName}Cache = new ResponseCache<${service.responseClassName}>(${service.cache.ttl}, ${service.cache.maxSize});
+		#end
+	#end
+	
 	public ${className}(String host, int port#foreach ($service in $server.services)#if ($service.hasCallback()), ${server.name}${service.serviceNameUpper}ClientCallback client${service.serviceName}Callback#end#end) {
-		super(host, port);
-		
-		//create all request / reply Handlers
-		#foreach ($service in $server.services)
-			#if ($service.hasResponse()) ##must create reply handler
-		client${service.serviceName}ReplyHandler = new ClientReplyHandler<${service.responseClassName}>(timeoutSeconds); 
-			#end
-		#end		
+		this(host, port, 1#foreach ($service in $server.services)#if ($service.hasCallback()), client${service.serviceName}Callback#end#end);
+	}
+	
+	//constructor with a number of connections to the server. Each call is sent over the connection with the fewest pending calls
+	public ${className}(String host, int port, int connections#foreach ($service in $server.services)#if ($service.hasCallback()), ${server.name}${service.serviceNameUpper}ClientCallback client${service.serviceName}Callback#end#end) {
+		super(host, port, timeoutSeconds, connections#if ($server.hasReconnect()), reconnectBackoff#end);
 		
 		//keep references to all service callbacks
 		#foreach ($service in $server.services)
@@ -64,18 +118,20 @@ public class $className extends ServiceProxy implements DataHandler, ${serviceIn
 		this.client${service.serviceName}Callback = client${service.serviceName}Callback;
 			#end
 		#end		
+		#if ($server.hasReconnect() && $server.reconnect.eager)
+		
+		//connect now, so that the first calls do not pay for connecting
+		connectEagerly();
+		#end
 	}
 
 	//constructor with default port
 	public ${className}(String host#foreach ($service in $server.services)#if ($service.hasCallback()), ${server.name}${service.serviceNameUpper}ClientCallback client${service.serviceName}Callback#end#end) {
-		super(host, ${server.port});
-		
-		//create all request / reply Handlers
-		#foreach ($service in $server.services)
-			#if ($service.hasResponse()) ##must create reply handler
-		client${service.serviceName}ReplyHandler = new ClientReplyHandler<${service.responseClassName}>(timeoutSeconds); 
-			#end
-		#end		
+		#if ($server.hasReconnect())
+		super(host, ${server.port}, timeoutSeconds, 1, reconnectBackoff);
+		#else
+		super(host, ${server.port}, timeoutSeconds);
+		#end
 		
 		//keep references to all service callbacks
 		#foreach ($service in $server.services)
@@ -83,131 +139,760 @@ public class $className extends ServiceProxy implements DataHandler, ${serviceIn
 		this.client${service.serviceName}Callback = client${service.serviceName}Callback;
 			#end
 		#end		
+		#if ($server.hasReconnect() && $server.reconnect.eager)
+		
+		//connect now, so that the first calls do not pay for connecting
+		connectEagerly();
+		#end
 	}	
 	
-	//high level access methods. All Req-Reply operations are atomic 
-	//and should not overlap, thus all methods are synchronized
+	//high level access methods. Calls from different threads can be in flight 
+	//at the same time, each reply is matched to its request by a correlation id
+	#if ($infrastructure.metrics)
+	//(called by the instrumented service methods below)
+	#set ($methodModifier = "private")
+	#else
+	#set ($methodModifier = "public")
+	#end
 	#foreach( $service in $server.services )
+		#if ($infrastructure.metrics)
+			#set ($methodName = "call${service.serviceNameUpper}")
+		#else
+			#set ($methodName = $service.serviceName)
+		#end
+		#if ($service.hasRequestStream())
+	#if (!$infrastructure.metrics)
+	@Override
+	#end
+	${methodModifier} ClientRequestStream<${service.requestClassName}> ${methodName}(StreamObserver<#if ($service.hasStream())${service.streamClassName}#{else}${service.responseClassName}#end> observer) throws RemoteCommunicationsException {
+		//select a connection, connecting to the server if necessary
+		ClientConnection connection = checkConnection();
+		
+		//register the call before opening it, the replies may arrive before we return it
+		ClientRequestStream<${service.requestClassName}> requestStream = clientReplyHandler.registerRequestStream(connection, MessageType.${service.serviceName}Request_VALUE, MessageType.${service.serviceName}RequestEnd_VALUE, MessageType.${service.serviceName}Cancel_VALUE, #if ($service.hasStream())MessageType.${service.serviceName}StreamCredit_VALUE#{else}0#end, #if ($server.hasCompression($service))${service.serviceName}Compression#{else}null#end, ${service.streamCredits}, ${service.hasStream()}, observer);
+		
+		try {
+			#if ($service.hasStream())
+			//open the call, granting the initial credits of the stream of replies
+			#else
+			//open the call
+			#end
+			connection.send(new byte[][] {EnvelopeCodec.encodeStreamControl(MessageType.${service.serviceName}Open_VALUE, requestStream.getStreamId(), #if ($service.hasStream())${service.streamCredits}#{else}0#end, null)});
+		}catch (IOException e) {
+			clientReplyHandler.removeRequestStream(requestStream.getStreamId());
+			handleSendException(e);
+		}
+		
+		return requestStream;
+	}
+	
+		#elseif ($service.hasStream())
+	#if (!$infrastructure.metrics)
+	@Override
+	#end
+	${methodModifier} ClientStream<${service.streamClassName}> ${methodName}(${service.requestClassName} request) throws RemoteCommunicationsException {
+		//select a connection, connecting to the server if necessary
+		ClientConnection connection = checkConnection();
+		
+		//register the stream before sending, the messages may arrive before we return it
+		ClientStream<${service.streamClassName}> stream = clientReplyHandler.registerStream(connection, MessageType.${service.serviceName}StreamCredit_VALUE, MessageType.${service.serviceName}StreamCancel_VALUE, ${service.streamCredits});
+		
+		try {
+			//encode the request in a MessageContainer envelope, followed by the initial credits of the stream
+			byte[][] requestPackets = EnvelopeCodec.encodePackets(MessageType.${service.serviceName}Request_VALUE, stream.getStreamId(), request#if ($server.hasCompression($service)), ${service.serviceName}Compression#end);
+			byte[][] packets = Arrays.copyOf(requestPackets, requestPackets.length + 1);
+			packets[requestPackets.length] = EnvelopeCodec.encodeStreamControl(MessageType.${service.serviceName}StreamCredit_VALUE, stream.getStreamId(), ${service.streamCredits}, null);
+			
+			//send
+			connection.send(packets);
+		}catch (IOException e) {
+			clientReplyHandler.removeStream(stream.getStreamId());
+			handleSendException(e);
+		} catch (MessageTooLargeException e) {
+			clientReplyHandler.removeStream(stream.getStreamId());
+			throw new RemoteCommunicationsException(RemoteCommunicationsErrorType.MESSAGE_TOO_LARGE, e.getMessage());
+		} catch (RuntimeException e) {
+			//the request could not be encoded, do not leave the stream open
+			clientReplyHandler.removeStream(stream.getStreamId());
+			throw e;
+		}
+		
+		return stream;
+	}
+	
+		#elseif ($service.hasOutboundQueue())
+	#if (!$infrastructure.metrics)
+	@Override
+	#end
+	${methodModifier} void ${methodName}(${service.requestClassName} request) throws RemoteCommunicationsException {		
+		//encode the request in the calling thread, the writer thread of the outbound queue sends it
+		byte[][] packets;
+		try {
+			packets = EnvelopeCodec.encodePackets(MessageType.${service.serviceName}Request_VALUE, 0, request#if ($server.hasCompression($service)), ${service.serviceName}Compression#end);
+		} catch (MessageTooLargeException e) {
+			throw new RemoteCommunicationsException(RemoteCommunicationsErrorType.MESSAGE_TOO_LARGE, e.getMessage());
+		}
+		
+		//queue, according to the overflow policy of the queue
+		${service.serviceName}OutboundQueue.add(packets);
+	}
+	
+		#else
+		#if ($service.hasResponse()) 
+	@Override
+	public ${service.responseClassName} ${service.serviceName}(${service.requestClassName} request) throws RemoteCommunicationsException {
+		return ${service.serviceName}(request, ${service.serviceName}Deadline);
+	}
+	
+		#end
+	#if (!$infrastructure.metrics)
 	@Override
+	#end
 		#if ($service.hasResponse()) 
-	public synchronized ${service.responseClassName} ${service.serviceName}(${service.requestClassName} request) throws RemoteCommunicationsException {		
+	${methodModifier} ${service.responseClassName} ${methodName}(${service.requestClassName} request, long deadlineMillis) throws RemoteCommunicationsException {		
 	
+			#if ($service.hasCache())
+		//answer from the cache if the same request was replied recently. The request is serialized
+		//once, its bytes are both the key of the cache and the message data of the envelope
+		ByteString cacheKey = request.toByteString();
+		${service.responseClassName} cachedReply = ${service.serviceName}Cache.get(cacheKey);
+		if (cachedReply != null) {
+			return cachedReply;
+		}
+		
+			#end
 		#else
-	public synchronized void ${service.serviceName}(${service.requestClassName} request) throws RemoteCommunicationsException {		
+	${methodModifier} void ${methodName}(${service.requestClassName} request) throws RemoteCommunicationsException {		
 		#end
-		//create new connection of necessary
-		checkDataTransceiver();
+		//select a connection, connecting to the server if necessary
+		ClientConnection connection = checkConnection();
 
-		MessageContainer outgoingMessage = 
-				MessageContainer.newBuilder().setMessageType(MessageType.${service.serviceName}Request).setMessageData(ByteString.copyFrom(request.toByteArray())).build();
-				
+		#if ($service.hasResponse()) 
+		//register the call before sending, the reply may arrive before we start waiting for it
+		long correlationId = clientReplyHandler.registerCall(connection, deadlineMillis);
+		#else
+		long correlationId = 0;
+		#end
+		
 		try {
+			//encode the request in a MessageContainer envelope, directly into the packet(s)
+			byte[][] packets = EnvelopeCodec.encodePackets(MessageType.${service.serviceName}Request_VALUE, correlationId, #if ($service.hasResponse())deadlineMillis, #{end}#if ($service.hasCache())cacheKey#{else}request#end#if ($server.hasCompression($service)), ${service.serviceName}Compression#end);
+			
 			//send
-			clientDataTransceiver.send(outgoingMessage.toByteArray());
+			connection.send(packets);
 		}catch (IOException e) {
+			#if ($service.hasResponse()) 
+			clientReplyHandler.cancelCall(correlationId);
+			#end
 			handleSendException(e);
+		} catch (MessageTooLargeException e) {
+			#if ($service.hasResponse()) 
+			clientReplyHandler.cancelCall(correlationId);
+			#end
+			throw new RemoteCommunicationsException(RemoteCommunicationsErrorType.MESSAGE_TOO_LARGE, e.getMessage());
+		#if ($service.hasResponse()) 
+		} catch (RuntimeException e) {
+			//the request could not be encoded, do not leave the call waiting until its deadline
+			clientReplyHandler.cancelCall(correlationId);
+			throw e;
+		#end
 		}			
 		
 		#if ($service.hasResponse()) 
 		//get reply
-		${service.responseClassName} reply = client${service.serviceName}ReplyHandler.getReply();
+		${service.responseClassName} reply = clientReplyHandler.getReply(correlationId);
+		#if ($service.hasCache())
+		${service.serviceName}Cache.put(cacheKey, reply);
+		#end
 			
 		return reply;
 		#end
 	}
 	
+		#if ($service.hasResponse()) 
+	@Override
+	public CompletableFuture<${service.responseClassName}> ${service.serviceName}Async(${service.requestClassName} request) {
+		return ${service.serviceName}Async(request, ${service.serviceName}Deadline);
+	}
+	
+	#if (!$infrastructure.metrics)
+	@Override
+	#end
+	${methodModifier} CompletableFuture<${service.responseClassName}> ${methodName}Async(${service.requestClassName} request, long deadlineMillis) {
+		#if ($service.hasCache())
+		//answer from the cache if the same request was replied recently. The request is serialized
+		//once, its bytes are both the key of the cache and the message data of the envelope
+		ByteString cacheKey = request.toByteString();
+		${service.responseClassName} cachedReply = ${service.serviceName}Cache.get(cacheKey);
+		if (cachedReply != null) {
+			return CompletableFuture.completedFuture(cachedReply);
+		}
+		
+		#end
+		//select a connection, connecting to the server if necessary
+		ClientConnection connection;
+		try {
+			connection = checkConnection();
+		} catch (RemoteCommunicationsException e) {
+			return ClientReplyHandler.failedReply(e);
+		}
+		
+		//register the call before sending, the reply may arrive before we return the future
+		long correlationId = clientReplyHandler.registerCall(connection, deadlineMillis);
+		CompletableFuture<${service.responseClassName}> reply = clientReplyHandler.getReplyAsync(correlationId);
+		
+		try {
+			//encode the request in a MessageContainer envelope, directly into the packet(s)
+			byte[][] packets = EnvelopeCodec.encodePackets(MessageType.${service.serviceName}Request_VALUE, correlationId, deadlineMillis, #if ($service.hasCache())cacheKey#{else}request#end#if ($server.hasCompression($service)), ${service.serviceName}Compression#end);
+			
+			//send
+			connection.send(packets);
+		} catch (IOException e) {
+			try {
+				handleSendException(e);
+			} catch (RemoteCommunicationsException sendException) {
+				clientReplyHandler.failCall(correlationId, sendException);
+			}
+		} catch (MessageTooLargeException e) {
+			clientReplyHandler.failCall(correlationId, new RemoteCommunicationsException(RemoteCommunicationsErrorType.MESSAGE_TOO_LARGE, e.getMessage()));
+		} catch (RuntimeException e) {
+			//the request could not be encoded, do not leave the call waiting until its deadline
+			clientReplyHandler.cancelCall(correlationId);
+			throw e;
+		}
+		
+		#if ($service.hasCache())
+		//cache the reply when it is received
+		return ${service.serviceName}Cache.putWhenReceived(cacheKey, reply);
+		#else
+		return reply;
+		#end
+	}
+	
+			#if ($service.hasBatch())
+	@Override
+	public List<BatchResult<${service.responseClassName}>> ${service.serviceName}Batch(List<${service.requestClassName}> requests) throws RemoteCommunicationsException {
+		return ${service.serviceName}Batch(requests, ${service.serviceName}Deadline);
+	}
+	
+	#if (!$infrastructure.metrics)
+	@Override
+	#end
+	${methodModifier} List<BatchResult<${service.responseClassName}>> ${methodName}Batch(List<${service.requestClassName}> requests, long deadlineMillis) throws RemoteCommunicationsException {
+		//select a connection, connecting to the server if necessary
+		ClientConnection connection = checkConnection();
+		
+		//register the call before sending, the reply may arrive before we start waiting for it
+		long correlationId = clientReplyHandler.registerCall(connection, deadlineMillis);
+		
+		try {
+			//encode all the requests in one MessageContainer envelope
+			byte[][] packets = EnvelopeCodec.encodePackets(MessageType.${service.serviceName}BatchRequest_VALUE, correlationId, deadlineMillis, encodeBatch(requests)#if ($server.hasCompression($service)), ${service.serviceName}Compression#end);
+			
+			//send
+			connection.send(packets);
+		}catch (IOException e) {
+			clientReplyHandler.cancelCall(correlationId);
+			handleSendException(e);
+		} catch (MessageTooLargeException e) {
+			clientReplyHandler.cancelCall(correlationId);
+			throw new RemoteCommunicationsException(RemoteCommunicationsErrorType.MESSAGE_TOO_LARGE, e.getMessage());
+		} catch (RuntimeException e) {
+			//the requests could not be encoded, do not leave the call waiting until its deadline
+			clientReplyHandler.cancelCall(correlationId);
+			throw e;
+		}
+		
+		//get the results, decoded by the thread that reads from the connection
+		List<BatchResult<${service.responseClassName}>> results = clientReplyHandler.getReply(correlationId);
+		
+		return results;
+	}
+	
+	@Override
+	public CompletableFuture<List<BatchResult<${service.responseClassName}>>> ${service.serviceName}BatchAsync(List<${service.requestClassName}> requests) {
+		return ${service.serviceName}BatchAsync(requests, ${service.serviceName}Deadline);
+	}
+	
+	#if (!$infrastructure.metrics)
+	@Override
+	#end
+	${methodModifier} CompletableFuture<List<BatchResult<${service.responseClassName}>>> ${methodName}BatchAsync(List<${service.requestClassName}> requests, long deadlineMillis) {
+		//select a connection, connecting to the server if necessary
+		ClientConnection connection;
+		try {
+			connection = checkConnection();
+		} catch (RemoteCommunicationsException e) {
+			return ClientReplyHandler.failedReply(e);
+		}
+		
+		//register the call before sending, the reply may arrive before we return the future
+		long correlationId = clientReplyHandler.registerCall(connection, deadlineMillis);
+		CompletableFuture<List<BatchResult<${service.responseClassName}>>> results = clientReplyHandler.getReplyAsync(correlationId);
+		
+		try {
+			//encode all the requests in one MessageContainer envelope
+			byte[][] packets = EnvelopeCodec.encodePackets(MessageType.${service.serviceName}BatchRequest_VALUE, correlationId, deadlineMillis, encodeBatch(requests)#if ($server.hasCompression($service)), ${service.serviceName}Compression#end);
+			
+			//send
+			connection.send(packets);
+		} catch (IOException e) {
+			try {
+				handleSendException(e);
+			} catch (RemoteCommunicationsException sendException) {
+				clientReplyHandler.failCall(correlationId, sendException);
+			}
+		} catch (MessageTooLargeException e) {
+			clientReplyHandler.failCall(correlationId, new RemoteCommunicationsException(RemoteCommunicationsErrorType.MESSAGE_TOO_LARGE, e.getMessage()));
+		} catch (RuntimeException e) {
+			//the requests could not be encoded, do not leave the call waiting until its deadline
+			clientReplyHandler.cancelCall(correlationId);
+			throw e;
+		}
+		
+		return results;
+	}
+	
+			#end
+		#end
+		#end
+	#end
+	#if ($infrastructure.metrics)
+	
+	//instrumented service methods, reporting each call to the metrics listener
+	#foreach( $service in $server.services )
+		#if ($service.hasRequestStream())
+			#set ($returnType = "ClientRequestStream<${service.requestClassName}>")
+			#if ($service.hasStream())
+				#set ($parameters = "StreamObserver<${service.streamClassName}> observer")
+			#else
+				#set ($parameters = "StreamObserver<${service.responseClassName}> observer")
+			#end
+			#set ($arguments = "observer")
+		#elseif ($service.hasStream())
+			#set ($returnType = "ClientStream<${service.streamClassName}>")
+			#set ($parameters = "${service.requestClassName} request")
+			#set ($arguments = "request")
+		#elseif ($service.hasResponse())
+			#set ($returnType = $service.responseClassName)
+			#set ($parameters = "${service.requestClassName} request, long deadlineMillis")
+			#set ($arguments = "request, deadlineMillis")
+		#else
+			#set ($returnType = "void")
+			#set ($parameters = "${service.requestClassName} request")
+			#set ($arguments = "request")
+		#end
+	@Override
+	public ${returnType} ${service.serviceName}(${parameters}) throws RemoteCommunicationsException {
+		long start = callStarted("${service.serviceName}");
+		try {
+		#if ($returnType == "void")
+			call${service.serviceNameUpper}(${arguments});
+			callCompleted("${service.serviceName}", start);
+		#else
+			${returnType} reply = call${service.serviceNameUpper}(${arguments});
+			callCompleted("${service.serviceName}", start);
+			return reply;
+		#end
+		} catch (RemoteCommunicationsException e) {
+			callFailed("${service.serviceName}", e.getErrorType(), start);
+			throw e;
+		} catch (RuntimeException e) {
+			callFailed("${service.serviceName}", RemoteCommunicationsErrorType.REQUEST_FAILED, start);
+			throw e;
+		}
+	}
+	
+		#if ($service.hasResponse() && !$service.hasRequestStream() && !$service.hasStream())
+	@Override
+	public CompletableFuture<${service.responseClassName}> ${service.serviceName}Async(${service.requestClassName} request, long deadlineMillis) {
+		long start = callStarted("${service.serviceName}Async");
+		return callCompletion("${service.serviceName}Async", start, call${service.serviceNameUpper}Async(request, deadlineMillis));
+	}
+	
+			#if ($service.hasBatch())
+	@Override
+	public List<BatchResult<${service.responseClassName}>> ${service.serviceName}Batch(List<${service.requestClassName}> requests, long deadlineMillis) throws RemoteCommunicationsException {
+		long start = callStarted("${service.serviceName}Batch");
+		try {
+			List<BatchResult<${service.responseClassName}>> results = call${service.serviceNameUpper}Batch(requests, deadlineMillis);
+			callCompleted("${service.serviceName}Batch", start);
+			return results;
+		} catch (RemoteCommunicationsException e) {
+			callFailed("${service.serviceName}Batch", e.getErrorType(), start);
+			throw e;
+		} catch (RuntimeException e) {
+			callFailed("${service.serviceName}Batch", RemoteCommunicationsErrorType.REQUEST_FAILED, start);
+			throw e;
+		}
+	}
+	
+	@Override
+	public CompletableFuture<List<BatchResult<${service.responseClassName}>>> ${service.serviceName}BatchAsync(List<${service.requestClassName}> requests, long deadlineMillis) {
+		long start = callStarted("${service.serviceName}BatchAsync");
+		return callCompletion("${service.serviceName}BatchAsync", start, call${service.serviceNameUpper}BatchAsync(requests, deadlineMillis));
+	}
+	
+			#end
+		#end
+	#end
+	#end
+	#if ($server.hasCaches())
+	//the caches of the replies, in order to clear them or read their statistics
+	#foreach ($service in $server.services)
+		#if ($service.hasCache())
+	public ResponseCache<${service.responseClassName}> get${service.serviceNameUpper}Cache() {
+		return ${service.serviceName}Cache;
+	}
+	
+		#end
+	#end
+	#end
+	#if ($server.hasBatches())
+	
+	//encodes the requests of a batch, one item per request
+	private static MessageContainer.Batch encodeBatch(List<? extends MessageLite> requests) {
+		MessageContainer.Batch.Builder batch = MessageContainer.Batch.newBuilder();
+		for (MessageLite request : requests) {
+			batch.addItems(MessageContainer.BatchItem.newBuilder().setMessageData(request.toByteString()));
+		}
+		return batch.build();
+	}
 	#end
 	
 
+	#if ($infrastructure.pooledBuffers)
 	@Override
 	public void handleDataIndication(byte[] payload) {
+		handleDataIndication(ByteBuffer.wrap(payload));
+	}
+	
+	@Override
+	//handles incoming data. The payload is a pooled buffer, neither the buffer nor the 
+	//envelope decoded from it are used after this method returns
+	public void handleDataIndication(ByteBuffer payload) {
+		#set ($payloadData = "EnvelopeCodec.toByteArray(payload)")
+	#else
+	@Override
+	public void handleDataIndication(byte[] payload) {
+		#set ($payloadData = "payload")
+	#end
 		#if ($infrastructure.logging == "log4j")
 		logger.debug("handling data indication");
+		#elseif ($infrastructure.logging == "slf4j")
+		logger.debug("handling data indication");
 		#end
 		
 		MessageContainer incomingMessage = null;
 		try {
-			incomingMessage = MessageContainer.parseFrom(payload);
+			//the message data of the envelope refers to the payload, it is not copied
+			incomingMessage = MessageContainer.parser().parseFrom(EnvelopeCodec.newDecoder(payload));
 		} catch (InvalidProtocolBufferException e) {
 			#if ($infrastructure.logging == "log4j")
 			logger.error("Cannot decode data. Protocol error", e);
-			logger.error("Data that cannot be decoded:"+Arrays.toString(payload));
+			logger.error("Data that cannot be decoded:"+Arrays.toString($payloadData));
+			#elseif ($infrastructure.logging == "slf4j")
+			logger.error("Cannot decode data. Protocol error", e);
+			if (logger.isTraceEnabled()) {
+				logger.trace("Data that cannot be decoded: {}", Arrays.toString($payloadData));
+			}
 			#elseif ($infrastructure.logging == "System")
 			System.out.println("Error: Error: Cannot decode data. Protocol error:"+e.getMessage());
-			System.out.println("Error: Error: Data that cannot be decoded:"+Arrays.toString(payload));
+			System.out.println("Error: Error: Data that cannot be decoded:"+Arrays.toString($payloadData));
 			return;
 			#end
 		}
 		
 		if (incomingMessage != null) {
+			handleEnvelope(incomingMessage);
+		}
+	}
+	
+	@Override
+	//handles a message reassembled from fragments
+	public void handleDataIndication(ByteString payload) {
+		#set ($payloadData = "payload.toByteArray()")
+		#if ($infrastructure.logging == "log4j")
+		logger.debug("handling data indication");
+		#elseif ($infrastructure.logging == "slf4j")
+		logger.debug("handling data indication");
+		#end
+		
+		MessageContainer incomingMessage = null;
+		try {
+			//the message data of the envelope refers to the fragments, it is not copied
+			EnvelopeCodec.SplitEnvelope splitPayload = EnvelopeCodec.split(payload);
+			incomingMessage = MessageContainer.parser().parseFrom(splitPayload.getFields()).toBuilder().setMessageData(splitPayload.getMessageData()).build();
+		} catch (InvalidProtocolBufferException e) {
 			#if ($infrastructure.logging == "log4j")
-			logger.debug("decoded message type:"+incomingMessage.getMessageType().name());
-			#end
-			switch (incomingMessage.getMessageType()) {
-				//handle normal replies
-			#foreach ($service in $server.services)
-				#if($service.hasResponse())
-				case ${service.serviceName}Response : {
-					try {
-						${service.responseClassName} response = ${service.responseClassName}.parseFrom(incomingMessage.getMessageData().toByteArray());
-						client${service.serviceName}ReplyHandler.insertReply(response);
-					} catch (InvalidProtocolBufferException e) {
-						#if ($infrastructure.logging == "log4j")
-						logger.error("Cannot decode data. Protocol error", e);
-						logger.error("Data that cannot be decoded:"+Arrays.toString(incomingMessage.getMessageData().toByteArray()));
-						#elseif ($infrastructure.logging == "System")
-						System.out.println("Error: Error: Cannot decode data. Protocol error:"+e.getMessage());
-						System.out.println("Error: Error: Data that cannot be decoded:"+Arrays.toString(incomingMessage.getMessageData().toByteArray()));
-						#end
-						
-					} catch (InterruptedException e) {
+			logger.error("Cannot decode data. Protocol error", e);
+			logger.error("Data that cannot be decoded:"+Arrays.toString($payloadData));
+			#elseif ($infrastructure.logging == "slf4j")
+			logger.error("Cannot decode data. Protocol error", e);
+			if (logger.isTraceEnabled()) {
+				logger.trace("Data that cannot be decoded: {}", Arrays.toString($payloadData));
+			}
+			#elseif ($infrastructure.logging == "System")
+			System.out.println("Error: Error: Cannot decode data. Protocol error:"+e.getMessage());
+			System.out.println("Error: Error: Data that cannot be decoded:"+Arrays.toString($payloadData));
+			return;
+			#end
+		}
+		
+		if (incomingMessage != null) {
+			handleEnvelope(incomingMessage);
+		}
+	}
+	
+	//handles a decoded envelope
+	private void handleEnvelope(MessageContainer incomingMessage) {
+		#if ($infrastructure.logging == "log4j")
+		logger.debug("decoded message type:"+incomingMessage.getMessageType().name());
+		#elseif ($infrastructure.logging == "slf4j")
+		if (logger.isDebugEnabled()) {
+			logger.debug("decoded message type: {}", incomingMessage.getMessageType());
+		}
+		#end
+		switch (incomingMessage.getMessageType()) {
+			//handle normal replies
+		#foreach ($service in $server.services)
+			#if($service.hasResponse() && !$service.hasRequestStream())
+			case ${service.serviceName}Response : {
+				#if ($server.hasAdmission($service))
+				if (incomingMessage.getOverloaded()) {
+					//the server rejected the request, without running it
+					clientReplyHandler.failCall(incomingMessage.getCorrelationId(), new RemoteCommunicationsException(RemoteCommunicationsErrorType.OVERLOADED, "The server is overloaded and rejected the ${service.serviceName} request"));
+					break;
+				}
+				#end
+				try {
+					${service.responseClassName} response = ${service.responseClassName}.parseFrom(incomingMessage.getMessageData());
+					if (!clientReplyHandler.insertReply(incomingMessage.getCorrelationId(), response)) {
+						//nobody is waiting for this reply anymore (i.e. the call timed out)
 						#if ($infrastructure.logging == "log4j")
-						logger.error("Interrupted while trying to insert reply to handler", e);
-						#elseif ($infrastructure.logging == "System")
-						System.out.println("Error: Error: Interrupted while trying to insert reply to handler");							
+						logger.warn("Discarding reply with correlation id:"+incomingMessage.getCorrelationId()+". There is no pending call waiting for it");
+						#elseif ($infrastructure.logging == "slf4j")
+						logger.warn("Discarding reply with correlation id: {}. There is no pending call waiting for it", incomingMessage.getCorrelationId());
 						#end
-					}									
+					}
+				} catch (InvalidProtocolBufferException e) {
+					#if ($infrastructure.logging == "log4j")
+					logger.error("Cannot decode data. Protocol error", e);
+					logger.error("Data that cannot be decoded:"+Arrays.toString(incomingMessage.getMessageData().toByteArray()));
+					#elseif ($infrastructure.logging == "slf4j")
+					logger.error("Cannot decode data. Protocol error", e);
+					if (logger.isTraceEnabled()) {
+						logger.trace("Data that cannot be decoded: {}", Arrays.toString(incomingMessage.getMessageData().toByteArray()));
+					}
+					#elseif ($infrastructure.logging == "System")
+					System.out.println("Error: Error: Cannot decode data. Protocol error:"+e.getMessage());
+					System.out.println("Error: Error: Data that cannot be decoded:"+Arrays.toString(incomingMessage.getMessageData().toByteArray()));
+					#end
+				}									
+				break;
+			}
+			#end
+		#end
+		
+			//handle the replies to batches
+		#foreach ($service in $server.services)
+			#if($service.hasBatch())
+			case ${service.serviceName}BatchResponse : {
+				#if ($server.hasAdmission($service))
+				if (incomingMessage.getOverloaded()) {
+					//the server rejected the batch, without running it
+					clientReplyHandler.failCall(incomingMessage.getCorrelationId(), new RemoteCommunicationsException(RemoteCommunicationsErrorType.OVERLOADED, "The server is overloaded and rejected the ${service.serviceName} batch"));
 					break;
 				}
 				#end
+				try {
+					//decode all the results here, the message data is not used after this method returns
+					MessageContainer.Batch batch = MessageContainer.Batch.parseFrom(incomingMessage.getMessageData());
+					List<BatchResult<${service.responseClassName}>> results = new ArrayList<BatchResult<${service.responseClassName}>>(batch.getItemsCount());
+					for (MessageContainer.BatchItem item : batch.getItemsList()) {
+						if (item.getError().isEmpty()) {
+							results.add(BatchResult.success(${service.responseClassName}.parseFrom(item.getMessageData())));
+						} else {
+							results.add(BatchResult.<${service.responseClassName}>failure(item.getError()));
+						}
+					}
+					if (!clientReplyHandler.insertReply(incomingMessage.getCorrelationId(), results)) {
+						//nobody is waiting for this reply anymore (i.e. the call timed out)
+						#if ($infrastructure.logging == "log4j")
+						logger.warn("Discarding batch reply with correlation id:"+incomingMessage.getCorrelationId()+". There is no pending call waiting for it");
+						#elseif ($infrastructure.logging == "slf4j")
+						logger.warn("Discarding batch reply with correlation id: {}. There is no pending call waiting for it", incomingMessage.getCorrelationId());
+						#end
+					}
+				} catch (InvalidProtocolBufferException e) {
+					#if ($infrastructure.logging == "log4j")
+					logger.error("Cannot decode data. Protocol error", e);
+					logger.error("Data that cannot be decoded:"+Arrays.toString(incomingMessage.getMessageData().toByteArray()));
+					#elseif ($infrastructure.logging == "slf4j")
+					logger.error("Cannot decode data. Protocol error", e);
+					if (logger.isTraceEnabled()) {
+						logger.trace("Data that cannot be decoded: {}", Arrays.toString(incomingMessage.getMessageData().toByteArray()));
+					}
+					#elseif ($infrastructure.logging == "System")
+					System.out.println("Error: Error: Cannot decode data. Protocol error:"+e.getMessage());
+					System.out.println("Error: Error: Data that cannot be decoded:"+Arrays.toString(incomingMessage.getMessageData().toByteArray()));
+					#end
+				}
+				break;
+			}
 			#end
-			
-				//handle callbacks
-			#foreach ($service in $server.services)
-				#if($service.hasCallback())
-				case ${service.serviceName}Callback : {
-					try {
-						${service.callbackClassName} callbackMessage = ${service.callbackClassName}.parseFrom(incomingMessage.getMessageData().toByteArray());
-						client${service.serviceName}Callback.${service.serviceName}Callback(callbackMessage);						
-					} catch (InvalidProtocolBufferException e) {
+		#end
+		
+			//handle callbacks
+		#foreach ($service in $server.services)
+			#if($service.hasCallback())
+			case ${service.serviceName}Callback : {
+				try {
+					${service.callbackClassName} callbackMessage = ${service.callbackClassName}.parseFrom(incomingMessage.getMessageData());
+					client${service.serviceName}Callback.${service.serviceName}Callback(callbackMessage);						
+				} catch (InvalidProtocolBufferException e) {
+					#if ($infrastructure.logging == "log4j")
+					logger.error("Cannot decode data. Protocol error", e);
+					logger.error("Data that cannot be decoded:"+Arrays.toString(incomingMessage.getMessageData().toByteArray()));
+					#elseif ($infrastructure.logging == "slf4j")
+					logger.error("Cannot decode data. Protocol error", e);
+					if (logger.isTraceEnabled()) {
+						logger.trace("Data that cannot be decoded: {}", Arrays.toString(incomingMessage.getMessageData().toByteArray()));
+					}
+					#elseif ($infrastructure.logging == "System")
+					System.out.println("Error: Error: Cannot decode data. Protocol error:"+e.getMessage());
+					System.out.println("Error: Error: Data that cannot be decoded:"+Arrays.toString(incomingMessage.getMessageData().toByteArray()));						
+					#end
+				} 				
+				break;
+			}
+			#end
+		#end		
+		
+			//handle stream messages
+		#foreach ($service in $server.services)
+			#if($service.hasStream() && !$service.hasRequestStream())
+			case ${service.serviceName}StreamItem : {
+				try {
+					${service.streamClassName} streamMessage = ${service.streamClassName}.parseFrom(incomingMessage.getMessageData());
+					if (!clientReplyHandler.insertStreamMessage(incomingMessage.getCorrelationId(), streamMessage)) {
+						//the stream was closed, the server stops when it receives the cancel message
 						#if ($infrastructure.logging == "log4j")
-						logger.error("Cannot decode data. Protocol error", e);
-						logger.error("Data that cannot be decoded:"+Arrays.toString(incomingMessage.getMessageData().toByteArray()));
-						#elseif ($infrastructure.logging == "System")
-						System.out.println("Error: Error: Cannot decode data. Protocol error:"+e.getMessage());
-						System.out.println("Error: Error: Data that cannot be decoded:"+Arrays.toString(incomingMessage.getMessageData().toByteArray()));						
+						logger.debug("Discarding stream message with correlation id:"+incomingMessage.getCorrelationId()+". The stream is closed");
+						#elseif ($infrastructure.logging == "slf4j")
+						if (logger.isDebugEnabled()) {
+							logger.debug("Discarding stream message with correlation id: {}. The stream is closed", incomingMessage.getCorrelationId());
+						}
 						#end
-					} 				
-					break;
+					}
+				} catch (InvalidProtocolBufferException e) {
+					#if ($infrastructure.logging == "log4j")
+					logger.error("Cannot decode data. Protocol error", e);
+					logger.error("Data that cannot be decoded:"+Arrays.toString(incomingMessage.getMessageData().toByteArray()));
+					#elseif ($infrastructure.logging == "slf4j")
+					logger.error("Cannot decode data. Protocol error", e);
+					if (logger.isTraceEnabled()) {
+						logger.trace("Data that cannot be decoded: {}", Arrays.toString(incomingMessage.getMessageData().toByteArray()));
+					}
+					#elseif ($infrastructure.logging == "System")
+					System.out.println("Error: Error: Cannot decode data. Protocol error:"+e.getMessage());
+					System.out.println("Error: Error: Data that cannot be decoded:"+Arrays.toString(incomingMessage.getMessageData().toByteArray()));
+					#end
 				}
+				break;
+			}
+			
+			case ${service.serviceName}StreamEnd : {
+				clientReplyHandler.endStream(incomingMessage.getCorrelationId(), incomingMessage.getStreamError());
+				break;
+			}
+			#end
+		#end
+		
+			//handle the replies to calls with a stream of requests
+		#foreach ($service in $server.services)
+			#if($service.hasRequestStream())
+				#if($service.hasStream())
+					#set ($replyClassName = $service.streamClassName)
+			case ${service.serviceName}StreamItem : {
+				#else
+					#set ($replyClassName = $service.responseClassName)
+			case ${service.serviceName}Response : {
+					if (!incomingMessage.getStreamError().isEmpty()) {
+						//the server failed the call
+						clientReplyHandler.endRequestStream(incomingMessage.getCorrelationId(), incomingMessage.getStreamError());
+						break;
+					}
 				#end
-			#end		
-				
-				default : { 
+				try {
+					${replyClassName} reply = ${replyClassName}.parseFrom(incomingMessage.getMessageData());
+					if (!clientReplyHandler.insertRequestStreamReply(incomingMessage.getCorrelationId(), reply)) {
+						//the call was cancelled
+						#if ($infrastructure.logging == "log4j")
+						logger.debug("Discarding reply with correlation id:"+incomingMessage.getCorrelationId()+". The call was cancelled");
+						#elseif ($infrastructure.logging == "slf4j")
+						if (logger.isDebugEnabled()) {
+							logger.debug("Discarding reply with correlation id: {}. The call was cancelled", incomingMessage.getCorrelationId());
+						}
+						#end
+					}
+				#if(!$service.hasStream())
+					//the reply ends the call
+					clientReplyHandler.endRequestStream(incomingMessage.getCorrelationId(), "");
+				#end
+				} catch (InvalidProtocolBufferException e) {
 					#if ($infrastructure.logging == "log4j")
-					logger.error("Received message type:"+incomingMessage.getMessageType().name()+" that cannot be processed. Protocol error");
+					logger.error("Cannot decode data. Protocol error", e);
+					logger.error("Data that cannot be decoded:"+Arrays.toString(incomingMessage.getMessageData().toByteArray()));
+					#elseif ($infrastructure.logging == "slf4j")
+					logger.error("Cannot decode data. Protocol error", e);
+					if (logger.isTraceEnabled()) {
+						logger.trace("Data that cannot be decoded: {}", Arrays.toString(incomingMessage.getMessageData().toByteArray()));
+					}
 					#elseif ($infrastructure.logging == "System")
-					System.out.println("Error: Error: Received message type:"+incomingMessage.getMessageType().name()+" that cannot be processed. Protocol error");					
+					System.out.println("Error: Error: Cannot decode data. Protocol error:"+e.getMessage());
+					System.out.println("Error: Error: Data that cannot be decoded:"+Arrays.toString(incomingMessage.getMessageData().toByteArray()));
 					#end
-					break;
 				}
+				break;
+			}
+			
+				#if($service.hasStream())
+			case ${service.serviceName}StreamEnd : {
+				clientReplyHandler.endRequestStream(incomingMessage.getCorrelationId(), incomingMessage.getStreamError());
+				break;
+			}
+			
+				#end
+			case ${service.serviceName}RequestCredit : {
+				clientReplyHandler.addRequestStreamCredits(incomingMessage.getCorrelationId(), incomingMessage.getStreamCredits());
+				break;
+			}
+			#end
+		#end
+			
+			default : { 
+				#if ($infrastructure.logging == "log4j")
+				logger.error("Received message type:"+incomingMessage.getMessageType().name()+" that cannot be processed. Protocol error");
+				#elseif ($infrastructure.logging == "slf4j")
+				logger.error("Received message type: {} that cannot be processed. Protocol error", incomingMessage.getMessageType());
+				#elseif ($infrastructure.logging == "System")
+				System.out.println("Error: Error: Received message type:"+incomingMessage.getMessageType().name()+" that cannot be processed. Protocol error");					
+				#end
+				break;
 			}
 		}
 	}
 
 	@Override
-	protected SocketDataTransceiver getDataTransceiverInstance() throws IOException {
-		return new SocketDataTransceiver(host, port, this, this);
+	protected SocketDataTransceiver getDataTransceiverInstance(ErrorHandler errorHandler) throws IOException {
+		#if ($server.hasHeartbeat())
+		SocketDataTransceiver dataTransceiver = new SocketDataTransceiver(host, port, this, errorHandler);
+		dataTransceiver.setHeartbeat(heartbeat);
+		return dataTransceiver;
+		#else
+		return new SocketDataTransceiver(host, port, this, errorHandler);
+		#end
 	}
 	
 	/**
@@ -215,17 +900,18 @@ public class $className extends ServiceProxy implements DataHandler, ${serviceIn
 	 * It will report the error and handling and will throw a 
 	 * RemoteCommunicationsException for the caller
 	 * 
+	 * The connection on which the send operation failed is already cleared.
+	 * 
 	 * @param e the IOException that caused the send operation to fail
 	 * @throws RemoteCommunicationsException indicating the communications problem
 	 */
 	private void handleSendException(IOException e) throws RemoteCommunicationsException {
 		#if ($infrastructure.logging == "log4j")
 		logger.error("Exception while trying to send message to server", e);		
+		#elseif ($infrastructure.logging == "slf4j")
+		logger.error("Exception while trying to send message to server", e);
 		#end
 		
-		//indicate communications error
-		handleCommunicationsError();
-		
 		//throw exception for caller
 		throw (new RemoteCommunicationsException(RemoteCommunicationsErrorType.DISCONNECTED, e.getMessage()));		
 	}
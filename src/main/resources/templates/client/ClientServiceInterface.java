@@ -1,6 +1,13 @@
 package ${server.javaPackage}.$clientSubPackage;
 
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import ${infrastructure.javaPackage}.BatchResult;
+import ${infrastructure.javaPackage}.ClientRequestStream;
+import ${infrastructure.javaPackage}.ClientStream;
 import ${infrastructure.javaPackage}.RemoteCommunicationsException;
+import ${infrastructure.javaPackage}.StreamObserver;
 #foreach( $importClass in $classImports )
 import ${importClass};
 #end
@@ -8,15 +15,57 @@ import ${importClass};
 /**
  * Service interface on the client-side.
  * all methods throw a @link{RemoteCommunicationsException} in case of commmunication problems
+ * 
+ * Services with a reply also have an asynchronous variant that returns immediately. The returned
+ * future is completed with the reply, or exceptionally with a @link{RemoteCommunicationsException}.
+ * Non-async dependent stages of the future run on the thread that reads the reply from 
+ * the connection, so they should not block.
+ * 
+ * Stream services return a @link{ClientStream} with the messages sent by the server,
+ * which must be closed if it is not read until its end.
+ * 
+ * Services with a stream of requests return a @link{ClientRequestStream} that sends the requests.
+ * The reply, or the stream of replies, is passed to the provided @link{StreamObserver} on the 
+ * thread that reads from the connection, so the observer should not block.
+ * 
+ * Services with batches also have a batch variant, that sends many requests in one message
+ * and returns one @link{BatchResult} per request, in the order of the requests.
+ * 
+ * The calls of services with a reply have a deadline, the time in milliseconds the call
+ * waits for the reply before it fails with a TIMEOUT. The methods without a deadline parameter
+ * use the deadline of the service. The deadline is sent with the request, so that the server
+ * does not run requests whose reply is no longer waited for.
  * @author Petros Pissias
  *
  */
 public interface $className {
 
 	#foreach( $service in $server.services )
-		#if ($service.hasResponse()) 
+		#if ($service.hasRequestStream())
+	public ClientRequestStream<${service.requestClassName}> ${service.serviceName}(StreamObserver<#if ($service.hasStream())${service.streamClassName}#{else}${service.responseClassName}#end> observer) throws RemoteCommunicationsException;		
+	
+		#elseif ($service.hasStream())
+	public ClientStream<${service.streamClassName}> ${service.serviceName}(${service.requestClassName} request) throws RemoteCommunicationsException;		
+	
+		#elseif ($service.hasResponse()) 
 	public ${service.responseClassName} ${service.serviceName}(${service.requestClassName} request) throws RemoteCommunicationsException;		
 		
+	public ${service.responseClassName} ${service.serviceName}(${service.requestClassName} request, long deadlineMillis) throws RemoteCommunicationsException;
+	
+	public CompletableFuture<${service.responseClassName}> ${service.serviceName}Async(${service.requestClassName} request);		
+		
+	public CompletableFuture<${service.responseClassName}> ${service.serviceName}Async(${service.requestClassName} request, long deadlineMillis);
+	
+			#if ($service.hasBatch())
+	public List<BatchResult<${service.responseClassName}>> ${service.serviceName}Batch(List<${service.requestClassName}> requests) throws RemoteCommunicationsException;		
+		
+	public List<BatchResult<${service.responseClassName}>> ${service.serviceName}Batch(List<${service.requestClassName}> requests, long deadlineMillis) throws RemoteCommunicationsException;
+	
+	public CompletableFuture<List<BatchResult<${service.responseClassName}>>> ${service.serviceName}BatchAsync(List<${service.requestClassName}> requests);		
+		
+	public CompletableFuture<List<BatchResult<${service.responseClassName}>>> ${service.serviceName}BatchAsync(List<${service.requestClassName}> requests, long deadlineMillis);
+	
+			#end
 		#else
 	public void ${service.serviceName}(${service.requestClassName} request) throws RemoteCommunicationsException;		
 	
@@ -0,0 +1,199 @@
+package $infrastructure.javaPackage;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits the requests run by a dispatch pool: at most maxConcurrent requests run at the
+ * same time, and at most maxQueued more wait for their turn.
+ *
+ * A request is first admitted (tryAdmit) by the thread reading it, then run (execute) and
+ * released (release) when it completes. A request over the limits is not admitted, so
+ * that the server rejects it right away with the OVERLOADED error type, instead of
+ * queueing it and letting the latency of all the requests grow. The reading of a connection whose request was rejected is paused until
+ * there is room again (see whenAvailable), so that TCP flow control slows down its client.
+ * A oneway request has no reply to carry the rejection, so it is kept and admitted (admit) when
+ * there is room again instead.
+ *
+ * The limits are shared by all the connections using the same AdmissionController.
+ * It can be used under an OrderedExecutor: the requests waiting in the OrderedExecutor
+ * count as queued, and a batch of its requests (which run one at a time) as one running
+ * request.
+ *
+ * @author Petros Pissias
+ *
+ */
+public class AdmissionController implements Executor {
+
+	//the pool running the requests
+	private final Executor executor;
+
+	//the maximum number of running requests, and of admitted requests (running and queued)
+	private final int maxConcurrent;
+	private final int maxAdmitted;
+
+	//the admitted requests that were not released yet
+	private final AtomicInteger admitted = new AtomicInteger(0);
+
+	//the tasks submitted to the pool that did not complete yet
+	private final AtomicInteger running = new AtomicInteger(0);
+
+	//the tasks waiting until fewer than maxConcurrent tasks run
+	private final Queue<Runnable> waiting = new ConcurrentLinkedQueue<Runnable>();
+
+	//run once, when there is room for a new request
+	private final Queue<Runnable> availabilityListeners = new ConcurrentLinkedQueue<Runnable>();
+
+	//the requests that were not admitted
+	private final AtomicLong rejected = new AtomicLong(0);
+
+	/**
+	 * Constructs a new admission controller
+	 * @param executor the pool running the requests
+	 * @param maxConcurrent the maximum number of requests running at the same time
+	 * @param maxQueued the maximum number of admitted requests waiting to run
+	 */
+	public AdmissionController(Executor executor, int maxConcurrent, int maxQueued) {
+		this.executor = executor;
+		this.maxConcurrent = maxConcurrent;
+		this.maxAdmitted = maxConcurrent + maxQueued;
+	}
+
+	/**
+	 * Admits a request, if it is within the limits. An admitted request must then be run with execute,
+	 * and released when it completes
+	 * @return true if the request was admitted, false if it must be rejected
+	 */
+	public boolean tryAdmit() {
+		while (true) {
+			int current = admitted.get();
+			if (current >= maxAdmitted) {
+				rejected.incrementAndGet();
+				return false;
+			}
+			if (admitted.compareAndSet(current, current + 1)) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Admits a request regardless of the limits, i.e. a oneway request that was not admitted
+	 * by tryAdmit and runs when there is room again (see whenAvailable)
+	 */
+	public void admit() {
+		admitted.incrementAndGet();
+	}
+
+	/**
+	 * Releases the place of a completed request, admitted with tryAdmit or admit
+	 */
+	public void release() {
+		admitted.decrementAndGet();
+		notifyAvailable();
+	}
+
+	/**
+	 * Runs an admitted request (or a batch of admitted requests that run one at a time), as
+	 * soon as fewer than maxConcurrent tasks run
+	 * @param task the task
+	 */
+	@Override
+	public void execute(Runnable task) {
+		waiting.add(task);
+		runWaiting();
+	}
+
+	/**
+	 * Runs a task once, as soon as there is room for a new request (i.e. in order to resume
+	 * the reading of a connection). The task is run by the thread completing a request, so
+	 * it must return quickly
+	 * @param listener the task
+	 */
+	public void whenAvailable(Runnable listener) {
+		availabilityListeners.add(listener);
+		if (admitted.get() < maxAdmitted) {
+			//a request completed before the listener was added
+			notifyAvailable();
+		}
+	}
+
+	/**
+	 * Returns the number of admitted requests, running or waiting to run
+	 * @return the number of requests
+	 */
+	public int getAdmittedCount() {
+		return admitted.get();
+	}
+
+	/**
+	 * Returns the number of running tasks
+	 * @return the number of tasks
+	 */
+	public int getRunningCount() {
+		return running.get();
+	}
+
+	/**
+	 * Returns the number of requests that were not admitted
+	 * @return the number of requests
+	 */
+	public long getRejectedCount() {
+		return rejected.get();
+	}
+
+	//submits waiting tasks to the pool, while fewer than maxConcurrent tasks run
+	private void runWaiting() {
+		while (!waiting.isEmpty()) {
+			int current = running.get();
+			if (current >= maxConcurrent) {
+				//the task completing next submits the waiting ones
+				return;
+			}
+			if (!running.compareAndSet(current, current + 1)) {
+				continue;
+			}
+
+			final Runnable task = waiting.poll();
+			if (task == null) {
+				//taken by another thread
+				running.decrementAndGet();
+				continue;
+			}
+			try {
+				executor.execute(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							task.run();
+						} finally {
+							completed();
+						}
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				//the pool is shut down
+				completed();
+				throw e;
+			}
+		}
+	}
+
+	//gives the place of a completed task to the next one
+	private void completed() {
+		running.decrementAndGet();
+		runWaiting();
+	}
+
+	//runs the availability listeners
+	private void notifyAvailable() {
+		Runnable listener;
+		while ((listener = availabilityListeners.poll()) != null) {
+			listener.run();
+		}
+	}
+}
@@ -0,0 +1,80 @@
+package $infrastructure.javaPackage;
+
+/**
+ * The result of one request of a batch: either the reply to the request, or
+ * the reason the server failed to handle it.
+ *
+ * The results of a batch are returned in the order of its requests, and a failed
+ * request does not affect the other requests of the batch.
+ *
+ * @author Petros Pissias
+ *
+ * @param <ResponseType> the type of the reply
+ */
+public final class BatchResult<ResponseType> {
+
+	//the reply, null if the request failed
+	private final ResponseType reply;
+
+	//the reason the request failed, null if it succeeded
+	private final String error;
+
+	private BatchResult(ResponseType reply, String error) {
+		this.reply = reply;
+		this.error = error;
+	}
+
+	/**
+	 * Creates the result of a request that succeeded
+	 * @param reply the reply to the request
+	 * @return the result
+	 */
+	public static <ResponseType> BatchResult<ResponseType> success(ResponseType reply) {
+		if (reply == null) {
+			throw new IllegalArgumentException("The reply of a successful request cannot be null");
+		}
+		return new BatchResult<ResponseType>(reply, null);
+	}
+
+	/**
+	 * Creates the result of a request that failed
+	 * @param error the reason the request failed
+	 * @return the result
+	 */
+	public static <ResponseType> BatchResult<ResponseType> failure(String error) {
+		return new BatchResult<ResponseType>(null, (error == null || error.isEmpty()) ? "Request failed" : error);
+	}
+
+	/**
+	 * Checks if the request succeeded
+	 * @return true if there is a reply, false if the request failed
+	 */
+	public boolean isSuccess() {
+		return error == null;
+	}
+
+	/**
+	 * Returns the reply to the request
+	 * @return the reply
+	 * @throws RemoteCommunicationsException with the REQUEST_FAILED error type, if the request failed
+	 */
+	public ResponseType getReply() throws RemoteCommunicationsException {
+		if (error != null) {
+			throw new RemoteCommunicationsException(RemoteCommunicationsErrorType.REQUEST_FAILED, error);
+		}
+		return reply;
+	}
+
+	/**
+	 * Returns the reason the request failed
+	 * @return the reason, or null if the request succeeded
+	 */
+	public String getError() {
+		return error;
+	}
+
+	@Override
+	public String toString() {
+		return (error == null) ? "BatchResult [reply="+reply+"]" : "BatchResult [error="+error+"]";
+	}
+}
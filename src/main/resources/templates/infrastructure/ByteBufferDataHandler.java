@@ -0,0 +1,26 @@
+package $infrastructure.javaPackage;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Variant of the DataHandler interface, used in order
+ * to receive packets in pooled buffers (see ByteBufferPool).
+ *
+ * If the DataHandler of a data transceiver also implements this interface,
+ * the data transceiver reads the packets into pooled buffers and
+ * indicates them with this method instead of allocating an array for each packet.
+ *
+ * @author Petros Pissias
+ *
+ */
+public interface ByteBufferDataHandler {
+	/**
+	 * Method that indicates that a new complete packet has arrived.
+	 *
+	 * The buffer is given back to the pool when this method returns,
+	 * so neither the buffer nor objects referring to its contents may be used afterwards.
+	 *
+	 * @param payload the packet data (payload), between the position and the limit of the buffer
+	 */
+	public abstract void handleDataIndication(ByteBuffer payload);
+}
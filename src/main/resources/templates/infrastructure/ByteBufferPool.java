@@ -0,0 +1,104 @@
+package $infrastructure.javaPackage;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * A pool of ByteBuffer objects, used to receive packets without allocating
+ * a new array for each packet.
+ *
+ * The buffers are grouped in size classes (powers of two, from 256 bytes to 1 MB).
+ * A request is served by a buffer of the smallest class that fits it, with its
+ * limit set to the requested size. Larger requests are not pooled.
+ *
+ * Each class keeps a limited number of free buffers. Buffers released when
+ * their class is full are left to the garbage collector.
+ *
+ * The pool is shared by all data transceivers.
+ *
+ * @author Petros Pissias
+ *
+ */
+public class ByteBufferPool {
+
+	//the shared instance
+	private static final ByteBufferPool instance = new ByteBufferPool();
+
+	//log2 of the smallest and largest pooled buffer size
+	private static final int minSizeShift = 8;
+	private static final int maxSizeShift = 20;
+
+	//amount of free memory kept by each size class
+	private static final int maxBytesPerClass = 4 * 1024 * 1024;
+
+	//limits of the number of free buffers kept by each size class
+	private static final int minBuffersPerClass = 4;
+	private static final int maxBuffersPerClass = 1024;
+
+	//free buffers, per size class
+	private final ArrayBlockingQueue<ByteBuffer>[] freeBuffers;
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private ByteBufferPool() {
+		freeBuffers = new ArrayBlockingQueue[maxSizeShift - minSizeShift + 1];
+		for (int i = 0; i < freeBuffers.length; i++) {
+			int bufferSize = 1 << (minSizeShift + i);
+			int capacity = Math.min(maxBuffersPerClass, Math.max(minBuffersPerClass, maxBytesPerClass / bufferSize));
+			freeBuffers[i] = new ArrayBlockingQueue<ByteBuffer>(capacity);
+		}
+	}
+
+	/**
+	 * Returns the shared pool
+	 * @return the shared pool
+	 */
+	public static ByteBufferPool getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Returns a buffer with position 0 and limit equal to the requested size.
+	 * The buffer is array backed. It should be given back with the release method
+	 * when it is no longer used.
+	 * @param size the requested size
+	 * @return the buffer
+	 */
+	public ByteBuffer acquire(int size) {
+		int sizeClass = sizeClass(size);
+		if (sizeClass < 0) {
+			//too large, not pooled
+			return ByteBuffer.allocate(size);
+		}
+
+		ByteBuffer buffer = freeBuffers[sizeClass].poll();
+		if (buffer == null) {
+			buffer = ByteBuffer.allocate(1 << (minSizeShift + sizeClass));
+		}
+		buffer.clear();
+		buffer.limit(size);
+		return buffer;
+	}
+
+	/**
+	 * Gives a buffer back to the pool. The buffer must not be used after it is released
+	 * @param buffer a buffer returned by the acquire method
+	 */
+	public void release(ByteBuffer buffer) {
+		int capacity = buffer.capacity();
+		int sizeClass = sizeClass(capacity);
+		if (sizeClass < 0 || capacity != 1 << (minSizeShift + sizeClass)) {
+			//not a pooled buffer
+			return;
+		}
+		freeBuffers[sizeClass].offer(buffer);
+	}
+
+	//returns the size class serving the provided size, -1 if it is too large to be pooled
+	private static int sizeClass(int size) {
+		if (size > 1 << maxSizeShift) {
+			return -1;
+		}
+		int shift = size <= 1 ? 0 : 32 - Integer.numberOfLeadingZeros(size - 1);
+		return Math.max(shift, minSizeShift) - minSizeShift;
+	}
+}
@@ -0,0 +1,229 @@
+package $infrastructure.javaPackage;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+#if ($infrastructure.logging == "log4j")
+import org.apache.log4j.Logger;
+#elseif ($infrastructure.logging == "slf4j")
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+#end
+
+/**
+ * This class is one of the connections of a ServiceProxy to the server.
+ *
+ * It holds the SocketDataTransceiver of the connection, which is created when it is first
+ * needed and cleared when a communications error is detected, either by the reader thread
+ * or by a failed send operation. When it is cleared, the calls that wait for a reply on it
+ * are failed and the ServiceProxy is informed, so that it can replace it.
+ *
+ * It also counts the calls that wait for a reply on it, so that the ServiceProxy can
+ * send each call over the least busy connection.
+ *
+ * @author Petros Pissias
+ *
+ */
+public class ClientConnection {
+
+	#if ($infrastructure.logging == "log4j")
+	//logger
+	private final Logger logger = Logger.getLogger(getClass());
+	#elseif ($infrastructure.logging == "slf4j")
+	//logger
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+	#end
+
+	//the service proxy owning this connection
+	private final ServiceProxy serviceProxy;
+
+	//the number of this connection, used for logging
+	private final int connectionNumber;
+
+	//guards the creation and clearing of the data transceiver. A lock is used instead of synchronized methods
+	//so that a thread connecting to the server does not pin a virtual thread carrier
+	private final ReentrantLock connectionLock = new ReentrantLock();
+
+	//the data transceiver instance, null when not connected
+	private volatile SocketDataTransceiver dataTransceiver = null;
+
+	//the number of calls waiting for a reply on this connection
+	private final AtomicInteger pendingCallCount = new AtomicInteger(0);
+
+	//true while the connection is being replaced in the background
+	private final AtomicBoolean reconnecting = new AtomicBoolean(false);
+
+	ClientConnection(ServiceProxy serviceProxy, int connectionNumber) {
+		this.serviceProxy = serviceProxy;
+		this.connectionNumber = connectionNumber;
+	}
+
+	/**
+	 * Ensures that there is a valid SocketDataTransceiver, creating a new one if necessary
+	 * @throws IOException if a connection to the server cannot be established
+	 */
+	void connect() throws IOException {
+		connectionLock.lock();
+		try {
+			if (dataTransceiver == null) {
+				#if ($infrastructure.logging == "log4j")
+				logger.debug("creating data transceiver for connection "+connectionNumber);
+				#elseif ($infrastructure.logging == "slf4j")
+				if (logger.isDebugEnabled()) {
+					logger.debug("creating data transceiver for connection {}", connectionNumber);
+				}
+				#end
+				//each data transceiver reports its errors with its own handler, so that an error
+				//reported by a previous data transceiver does not clear the current one
+				TransceiverErrorHandler errorHandler = new TransceiverErrorHandler();
+				SocketDataTransceiver newDataTransceiver = serviceProxy.getDataTransceiverInstance(errorHandler);
+				errorHandler.reportingDataTransceiver = newDataTransceiver;
+				#if ($infrastructure.metrics)
+				newDataTransceiver.setMetricsListener(serviceProxy.getMetricsListener());
+				#end
+				newDataTransceiver.initialize();
+				dataTransceiver = newDataTransceiver;
+			}
+		} finally {
+			connectionLock.unlock();
+		}
+	}
+
+	/**
+	 * Checks if this connection has a valid SocketDataTransceiver
+	 * @return true if connected
+	 */
+	public boolean isConnected() {
+		return dataTransceiver != null;
+	}
+
+	/**
+	 * Sends packets over this connection. If the send operation fails, the connection is cleared
+	 * @param packets the packets (see DataTransceiver.sendPackets)
+	 * @throws IOException in case of communication issues, or if the connection was cleared
+	 */
+	public void send(byte[][] packets) throws IOException {
+		SocketDataTransceiver currentDataTransceiver = dataTransceiver;
+		if (currentDataTransceiver == null) {
+			throw new IOException("Connection to the server was lost");
+		}
+
+		try {
+			currentDataTransceiver.sendPackets(packets);
+		} catch (IOException e) {
+			clear(currentDataTransceiver, "Connection to the server was lost");
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns the number of calls waiting for a reply on this connection
+	 * @return the number of pending calls
+	 */
+	public int getPendingCallCount() {
+		return pendingCallCount.get();
+	}
+
+	//called by the ClientReplyHandler when a call is registered on, or removed from this connection
+	void callRegistered() {
+		pendingCallCount.incrementAndGet();
+	}
+
+	void callRemoved() {
+		pendingCallCount.decrementAndGet();
+	}
+
+	/**
+	 * Marks the connection as being replaced in the background
+	 * @return true if it was not already being replaced
+	 */
+	boolean startReconnecting() {
+		return reconnecting.compareAndSet(false, true);
+	}
+
+	void reconnectingFinished() {
+		reconnecting.set(false);
+	}
+
+	/**
+	 * Checks if this connection is being reconnected in the background
+	 * @return true if it is being reconnected
+	 */
+	boolean isReconnecting() {
+		return reconnecting.get();
+	}
+
+	/**
+	 * Clears the provided SocketDataTransceiver, if it is still the current one, and fails all
+	 * calls that wait for a reply on this connection
+	 * @param failedDataTransceiver the data transceiver that failed
+	 * @param reason the reason reported to the callers
+	 */
+	private void clear(SocketDataTransceiver failedDataTransceiver, String reason) {
+		connectionLock.lock();
+		try {
+			if (dataTransceiver != failedDataTransceiver) {
+				//race condition, the error indication is already handled and we may already have a new instance
+				#if ($infrastructure.logging == "log4j")
+				logger.debug("Communications error indication already handled for connection "+connectionNumber);
+				#elseif ($infrastructure.logging == "slf4j")
+				if (logger.isDebugEnabled()) {
+					logger.debug("Communications error indication already handled for connection {}", connectionNumber);
+				}
+				#end
+				failedDataTransceiver.closeSocket();
+				return;
+			}
+
+			#if ($infrastructure.logging == "log4j")
+			logger.error("Received communications error indication. Clearing data transceiver of connection "+connectionNumber);
+			#elseif ($infrastructure.logging == "slf4j")
+			logger.error("Received communications error indication. Clearing data transceiver of connection {}", connectionNumber);
+			#elseif ($infrastructure.logging == "System")
+			System.out.println("Error: Received communications error indication");
+			#end
+			dataTransceiver.closeSocket();
+			dataTransceiver = null;
+		} finally {
+			connectionLock.unlock();
+		}
+
+		serviceProxy.clientReplyHandler.failPendingCalls(this, RemoteCommunicationsErrorType.DISCONNECTED, reason);
+		serviceProxy.connectionFailed(this);
+	}
+
+	/**
+	 * Closes this connection, failing all calls that wait for a reply on it
+	 * @param reason the reason reported to the failed calls
+	 * @return true if the connection was successfully closed (or was not connected)
+	 */
+	boolean close(String reason) {
+		boolean closed = true;
+		connectionLock.lock();
+		try {
+			if (dataTransceiver != null) {
+				closed = dataTransceiver.closeSocket();
+				dataTransceiver = null;
+			}
+		} finally {
+			connectionLock.unlock();
+		}
+		serviceProxy.clientReplyHandler.failPendingCalls(this, RemoteCommunicationsErrorType.DISCONNECTED, reason);
+		return closed;
+	}
+
+	/**
+	 * Receives the error indications of the reader thread of one data transceiver
+	 */
+	private class TransceiverErrorHandler implements ErrorHandler {
+		//the data transceiver reporting to this handler, set before it is initialized
+		private SocketDataTransceiver reportingDataTransceiver;
+
+		@Override
+		public void handleCommunicationsError() {
+			clear(reportingDataTransceiver, "Connection to the server was lost");
+		}
+	}
+}
@@ -1,64 +1,452 @@
 package $infrastructure.javaPackage;
 
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+import com.google.protobuf.MessageLite;
 
 
 /**
- * This class defines the common behaviour of all 
- * Client-side request / reply handlers. 
- * 
- * It provides a method that blocks waiting for a reply
- * using a timeout 
- * 
- * It is a generic class that is instantiated for the specific Reply type for each 
- * Request / Reply communications pattern 
- *  
+ * This class keeps track of all client-side requests
+ * that are waiting for a reply (pending calls).
+ *
+ * Each request is registered with a unique correlation id, which is carried
+ * in the message envelope and copied by the server into the reply. When a reply
+ * arrives it completes the pending call with the same correlation id. This way
+ * any number of threads can have calls in flight over the same connection.
+ *
+ * A pending call can be waited for (blocking calls) or handed to the caller
+ * as a CompletableFuture (asynchronous calls). In the second case no thread waits
+ * for the reply, the future is completed by the thread that reads the reply from
+ * the connection.
+ *
+ * Each call has a deadline, the time its caller waits for the reply. The deadline is also
+ * sent to the server with the request, so that the server does not run requests whose
+ * caller no longer waits. A reply that arrives after its call timed out does not match
+ * any pending call and is discarded.
+ *
+ * Each pending call is registered on the ClientConnection it is sent over, so that
+ * only the calls of a connection are failed when that connection is lost.
+ *
+ * The requests of stream services are registered in the same way, as open streams
+ * which receive any number of messages until the end of the stream (see ClientStream),
+ * and so are the calls to services with a stream of requests (see ClientRequestStream).
+ *
  * @author Petros Pissias
  *
  */
-public class ClientReplyHandler <ReplyType>{
+public class ClientReplyHandler {
+
+	//timer used to expire asynchronous calls, shared by all instances
+	private static final ScheduledThreadPoolExecutor timeoutTimer = createTimeoutTimer();
+
+	//correlation id generator. 0 is reserved for messages that do not expect a reply
+	private final AtomicLong correlationIdCounter = new AtomicLong(0);
 
-	//the reply queue. This is used in order to read a reply following the send of a request
-	private final BlockingQueue<ReplyType> replyQ = new LinkedBlockingQueue <ReplyType>();
-	
-	//the timeout to wait for a reply
+	//the pending calls
+	private final ConcurrentMap<Long, PendingCall> pendingCalls = new ConcurrentHashMap<Long, PendingCall>();
+
+	//the open streams
+	private final ConcurrentMap<Long, ClientStream<?>> openStreams = new ConcurrentHashMap<Long, ClientStream<?>>();
+
+	//the open calls with a stream of requests
+	private final ConcurrentMap<Long, ClientRequestStream<?>> openRequestStreams = new ConcurrentHashMap<Long, ClientRequestStream<?>>();
+
+	//runs the tasks on the calling thread. The observers of the replies are called by the thread reading from the connection
+	private static final Executor callingThreadExecutor = new Executor() {
+		@Override
+		public void execute(Runnable task) {
+			task.run();
+		}
+	};
+
+	//the timeout to wait for a stream message
 	private final int timeoutSeconds;
-	
-	
+
+
 	public ClientReplyHandler(int timeoutSeconds) {
 		this.timeoutSeconds = timeoutSeconds;
 	}
 
 	/**
-	 * Returns the reply of the specific request.
+	 * Registers a new pending call. Must be called before the request is sent.
+	 * @param connection the connection the request is sent over
+	 * @param deadlineMillis the time to wait for the reply, in milliseconds
+	 * @return the correlation id of the call
+	 */
+	public long registerCall(ClientConnection connection, long deadlineMillis) {
+		long correlationId = nextCorrelationId();
+		connection.callRegistered();
+		pendingCalls.put(correlationId, new PendingCall(connection, deadlineMillis));
+		return correlationId;
+	}
+
+	/**
+	 * Registers a new stream. Must be called before the request is sent.
+	 * @param connection the connection the request is sent over
+	 * @param creditMessageType the MessageContainer message type of the credit messages of the stream
+	 * @param cancelMessageType the MessageContainer message type of the cancel message of the stream
+	 * @param window the number of messages the server can send before it waits for credits
+	 * @return the stream, its id is the correlation id of the request
+	 */
+	public <StreamType> ClientStream<StreamType> registerStream(ClientConnection connection, int creditMessageType, int cancelMessageType, int window) {
+		long correlationId = nextCorrelationId();
+		connection.callRegistered();
+		ClientStream<StreamType> stream = new ClientStream<StreamType>(this, connection, correlationId, creditMessageType, cancelMessageType, window, timeoutSeconds);
+		openStreams.put(correlationId, stream);
+		return stream;
+	}
+
+	/**
+	 * Removes a stream, without cancelling it on the server. Called when the stream is closed
+	 * or when its request could not be sent.
+	 * @param streamId the correlation id of the stream request
+	 */
+	public void removeStream(long streamId) {
+		ClientStream<?> stream = openStreams.remove(streamId);
+		if (stream != null) {
+			stream.connection.callRemoved();
+		}
+	}
+
+	/**
+	 * Removes a pending call without waiting for its reply,
+	 * for example because the request could not be sent.
+	 * @param correlationId the correlation id of the call
+	 */
+	public void cancelCall(long correlationId) {
+		removeCall(correlationId);
+	}
+
+	/**
+	 * Fails a pending call with the provided exception.
+	 * @param correlationId the correlation id of the call
+	 * @param exception the exception reported to the caller
+	 */
+	public void failCall(long correlationId, RemoteCommunicationsException exception) {
+		PendingCall pendingCall = removeCall(correlationId);
+		if (pendingCall != null) {
+			pendingCall.reply.completeExceptionally(exception);
+		}
+	}
+
+	/**
+	 * Returns the reply of the specific request, blocking until it arrives.
+	 * @param correlationId the correlation id of the call
 	 * @return the reply object
-	 * @throws RemoteCommunicationsException if no reply is received within a timeout or if the communication channel is interrupted
+	 * @throws RemoteCommunicationsException if no reply is received before the deadline of the call or if the communication channel is interrupted
 	 */
-	public ReplyType getReply() throws RemoteCommunicationsException{
-		Object reply;
+	@SuppressWarnings("unchecked")
+	public <ReplyType> ReplyType getReply(long correlationId) throws RemoteCommunicationsException{
+		PendingCall pendingCall = pendingCalls.get(correlationId);
+		if (pendingCall == null) {
+			throw new RemoteCommunicationsException(RemoteCommunicationsErrorType.DISCONNECTED, "No pending call with correlation id "+correlationId);
+		}
+
 		try {
-			reply = replyQ.poll(timeoutSeconds, TimeUnit.SECONDS);
-					
-			if (reply == null) {
-				throw new RemoteCommunicationsException(RemoteCommunicationsErrorType.TIMEOUT, "Did not receive a reply for "+timeoutSeconds+" seconds");
+			return (ReplyType)pendingCall.reply.get(pendingCall.remainingNanos(), TimeUnit.NANOSECONDS);
+		} catch (TimeoutException e) {
+			throw pendingCall.timeoutException();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RemoteCommunicationsException) {
+				throw (RemoteCommunicationsException)e.getCause();
 			}
-		} catch (InterruptedException e) {			
+			throw new RemoteCommunicationsException(RemoteCommunicationsErrorType.DISCONNECTED, e.getMessage());
+		} catch (InterruptedException e) {
 			throw new RemoteCommunicationsException(RemoteCommunicationsErrorType.DISCONNECTED, "Interrupted while waiting for a reply because of underlying communication channel problems");
+		} finally {
+			removeCall(correlationId);
+		}
+	}
+
+	/**
+	 * Returns a future that is completed with the reply of the specific request.
+	 *
+	 * The future is completed exceptionally with a RemoteCommunicationsException if no reply is
+	 * received before the deadline of the call or if the communication channel is interrupted. If the caller
+	 * completes or cancels the future, the pending call is removed.
+	 *
+	 * @param correlationId the correlation id of the call
+	 * @return the future reply
+	 */
+	@SuppressWarnings("unchecked")
+	public <ReplyType> CompletableFuture<ReplyType> getReplyAsync(final long correlationId) {
+		final PendingCall pendingCall = pendingCalls.get(correlationId);
+		if (pendingCall == null) {
+			return failedReply(new RemoteCommunicationsException(RemoteCommunicationsErrorType.DISCONNECTED, "No pending call with correlation id "+correlationId));
 		}
-		
-		return (ReplyType)reply;		
+
+		final CompletableFuture<Object> pendingReply = pendingCall.reply;
+		final ScheduledFuture<?> timeout = timeoutTimer.schedule(new Runnable() {
+			@Override
+			public void run() {
+				pendingReply.completeExceptionally(pendingCall.timeoutException());
+			}
+		}, pendingCall.remainingNanos(), TimeUnit.NANOSECONDS);
+
+		pendingReply.whenComplete(new BiConsumer<Object, Throwable>() {
+			@Override
+			public void accept(Object result, Throwable failure) {
+				timeout.cancel(false);
+				if (pendingCalls.remove(correlationId, pendingCall)) {
+					pendingCall.connection.callRemoved();
+				}
+			}
+		});
+
+		return (CompletableFuture<ReplyType>)(CompletableFuture<?>)pendingReply;
 	}
-	
 
 
 	/**
 	 * Inserts a reply that was received
+	 * @param correlationId the correlation id carried by the reply
 	 * @param reply the reply
-	 * @throws InterruptedException in case the reply queue throws an exception
+	 * @return true if the reply completed a pending call, false if there is no such call (i.e. it timed out)
+	 */
+	public boolean insertReply(long correlationId, Object reply) {
+		PendingCall pendingCall = pendingCalls.get(correlationId);
+		if (pendingCall == null) {
+			return false;
+		}
+		return pendingCall.reply.complete(reply);
+	}
+
+	/**
+	 * Registers a new call with a stream of requests. Must be called before the call is opened.
+	 * @param connection the connection the call is sent over
+	 * @param requestMessageType the MessageContainer message type of the requests
+	 * @param requestEndMessageType the MessageContainer message type of the end of the request stream
+	 * @param cancelMessageType the MessageContainer message type of the cancel message
+	 * @param replyCreditMessageType the MessageContainer message type of the credit messages of the replies
+	 * @param compression the compression of the requests, or null
+	 * @param window the number of requests (and replies, for a stream of replies) sent before credits are granted
+	 * @param replyStream true if the server replies with a stream of messages, false if it sends one reply
+	 * @param observer the observer of the replies
+	 * @return the call, its stream id is the correlation id of the call
+	 */
+	@SuppressWarnings("unchecked")
+	public <RequestType extends MessageLite> ClientRequestStream<RequestType> registerRequestStream(final ClientConnection connection, int requestMessageType, int requestEndMessageType, int cancelMessageType, int replyCreditMessageType, FrameCompression compression, int window, boolean replyStream, StreamObserver<?> observer) {
+		long correlationId = nextCorrelationId();
+		connection.callRegistered();
+
+		//the observer is called by the thread reading from the connection, or by a thread ending the call. The
+		//ordered executor makes sure that it is called by one thread at a time
+		PacketSender creditSender = !replyStream ? null : new PacketSender() {
+			@Override
+			public void sendPackets(byte[][] packets) throws IOException {
+				connection.send(packets);
+			}
+		};
+		StreamReceiver<Object> replies = new StreamReceiver<Object>(correlationId, new OrderedExecutor(callingThreadExecutor), creditSender, replyCreditMessageType, window);
+		replies.setObserver((StreamObserver<Object>)observer);
+
+		ClientRequestStream<RequestType> requestStream = new ClientRequestStream<RequestType>(this, connection, correlationId, requestMessageType, requestEndMessageType, cancelMessageType, compression, window, replies);
+		openRequestStreams.put(correlationId, requestStream);
+		return requestStream;
+	}
+
+	/**
+	 * Removes a call with a stream of requests, without cancelling it on the server. Called when the call
+	 * is cancelled or when it could not be opened.
+	 * @param streamId the correlation id of the call
+	 * @return true if the call was removed, false if it had already ended
 	 */
-	public void insertReply(ReplyType reply) throws InterruptedException {
-		replyQ.put(reply);
+	public boolean removeRequestStream(long streamId) {
+		ClientRequestStream<?> requestStream = openRequestStreams.remove(streamId);
+		if (requestStream != null) {
+			requestStream.connection.callRemoved();
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Adds the credits granted by the server to a call with a stream of requests
+	 * @param streamId the correlation id of the call
+	 * @param credits the number of credits
+	 */
+	public void addRequestStreamCredits(long streamId, int credits) {
+		ClientRequestStream<?> requestStream = openRequestStreams.get(streamId);
+		if (requestStream != null) {
+			requestStream.addCredits(credits);
+		}
+	}
+
+	/**
+	 * Inserts a reply to a call with a stream of requests
+	 * @param streamId the correlation id carried by the reply
+	 * @param reply the reply
+	 * @return true if the reply belongs to an open call, false if there is no such call (i.e. it was cancelled)
+	 */
+	public boolean insertRequestStreamReply(long streamId, Object reply) {
+		ClientRequestStream<?> requestStream = openRequestStreams.get(streamId);
+		if (requestStream == null) {
+			return false;
+		}
+		requestStream.replies.messageReceived(reply);
+		return true;
+	}
+
+	/**
+	 * Ends a call with a stream of requests, after the server ended it
+	 * @param streamId the correlation id of the call
+	 * @param streamError the reason the server failed the call, empty if it completed normally
+	 */
+	public void endRequestStream(long streamId, String streamError) {
+		ClientRequestStream<?> requestStream = openRequestStreams.remove(streamId);
+		if (requestStream != null) {
+			requestStream.connection.callRemoved();
+			requestStream.stopRequests();
+			requestStream.replies.end(streamError.isEmpty() ? null : new RemoteCommunicationsException(RemoteCommunicationsErrorType.STREAM_FAILED, streamError));
+		}
+	}
+
+	/**
+	 * Inserts a stream message that was received
+	 * @param streamId the correlation id carried by the message
+	 * @param message the message
+	 * @return true if the message belongs to an open stream, false if there is no such stream (i.e. it was closed)
+	 */
+	public boolean insertStreamMessage(long streamId, Object message) {
+		ClientStream<?> stream = openStreams.get(streamId);
+		if (stream == null) {
+			return false;
+		}
+		stream.messageReceived(message);
+		return true;
+	}
+
+	/**
+	 * Ends a stream, after its end of stream message was received
+	 * @param streamId the correlation id carried by the message
+	 * @param streamError the reason the server failed the stream, empty if it completed normally
+	 */
+	public void endStream(long streamId, String streamError) {
+		ClientStream<?> stream = openStreams.remove(streamId);
+		if (stream != null) {
+			stream.connection.callRemoved();
+			stream.endReceived(streamError.isEmpty() ? null : new RemoteCommunicationsException(RemoteCommunicationsErrorType.STREAM_FAILED, streamError));
+		}
+	}
+
+	/**
+	 * Fails the pending calls of a connection. This is used when that connection
+	 * is lost, so that callers do not wait for replies that will never arrive
+	 * @param connection the connection that was lost
+	 * @param errorType the error type reported to the callers
+	 * @param reason the reason reported to the callers
+	 */
+	public void failPendingCalls(ClientConnection connection, RemoteCommunicationsErrorType errorType, String reason) {
+		for (PendingCall pendingCall : pendingCalls.values()) {
+			if (pendingCall.connection == connection) {
+				pendingCall.reply.completeExceptionally(new RemoteCommunicationsException(errorType, reason));
+			}
+		}
+		for (ClientStream<?> stream : openStreams.values()) {
+			if (stream.connection == connection) {
+				failStream(stream, new RemoteCommunicationsException(errorType, reason));
+			}
+		}
+		for (ClientRequestStream<?> requestStream : openRequestStreams.values()) {
+			if (requestStream.connection == connection) {
+				failRequestStream(requestStream, new RemoteCommunicationsException(errorType, reason));
+			}
+		}
+	}
+
+	/**
+	 * Returns a future that is already completed with the provided exception. Used for
+	 * asynchronous calls that fail before they are registered
+	 * @param exception the exception reported to the caller
+	 * @return the failed future
+	 */
+	public static <ReplyType> CompletableFuture<ReplyType> failedReply(RemoteCommunicationsException exception) {
+		CompletableFuture<ReplyType> reply = new CompletableFuture<ReplyType>();
+		reply.completeExceptionally(exception);
+		return reply;
+	}
+
+	//returns a new correlation id
+	private long nextCorrelationId() {
+		long correlationId = correlationIdCounter.incrementAndGet();
+		if (correlationId == 0) {
+			//wrapped around, skip the reserved value
+			correlationId = correlationIdCounter.incrementAndGet();
+		}
+		return correlationId;
+	}
+
+	//ends an open stream with a failure
+	private void failStream(ClientStream<?> stream, RemoteCommunicationsException exception) {
+		if (openStreams.remove(stream.getStreamId(), stream)) {
+			stream.connection.callRemoved();
+			stream.endReceived(exception);
+		}
+	}
+
+	//ends an open call with a stream of requests with a failure
+	private void failRequestStream(ClientRequestStream<?> requestStream, RemoteCommunicationsException exception) {
+		if (openRequestStreams.remove(requestStream.getStreamId(), requestStream)) {
+			requestStream.connection.callRemoved();
+			requestStream.stopRequests();
+			requestStream.replies.end(exception);
+		}
+	}
+
+	//removes a pending call, updating the pending call count of its connection
+	private PendingCall removeCall(long correlationId) {
+		PendingCall pendingCall = pendingCalls.remove(correlationId);
+		if (pendingCall != null) {
+			pendingCall.connection.callRemoved();
+		}
+		return pendingCall;
+	}
+
+	//helper method that creates the timer expiring asynchronous calls
+	private static ScheduledThreadPoolExecutor createTimeoutTimer() {
+		ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, new NamedThreadFactory(ClientReplyHandler.class.getSimpleName()+"-timeouts"));
+		timer.setRemoveOnCancelPolicy(true);
+		return timer;
+	}
+
+	/**
+	 * A call waiting for a reply
+	 */
+	private static class PendingCall {
+		//the reply of the call
+		private final CompletableFuture<Object> reply = new CompletableFuture<Object>();
+
+		//the connection the request was sent over
+		private final ClientConnection connection;
+
+		//the time to wait for the reply, and the time the call was registered
+		private final long deadlineMillis;
+		private final long registeredNanos = System.nanoTime();
+
+		private PendingCall(ClientConnection connection, long deadlineMillis) {
+			this.connection = connection;
+			this.deadlineMillis = deadlineMillis;
+		}
+
+		//returns the time left until the deadline, 0 if it has passed
+		private long remainingNanos() {
+			return Math.max(0, TimeUnit.MILLISECONDS.toNanos(deadlineMillis) - (System.nanoTime() - registeredNanos));
+		}
+
+		//returns the exception of a call that did not receive its reply before its deadline
+		private RemoteCommunicationsException timeoutException() {
+			return new RemoteCommunicationsException(RemoteCommunicationsErrorType.TIMEOUT, "Did not receive a reply within "+deadlineMillis+" milliseconds");
+		}
 	}
 }
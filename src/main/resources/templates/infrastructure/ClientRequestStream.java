@@ -0,0 +1,86 @@
+package $infrastructure.javaPackage;
+
+import java.io.IOException;
+
+import com.google.protobuf.MessageLite;
+
+/**
+ * The client side of a call to a service with a stream of requests. The requests are
+ * sent with the send method and the request stream ends with the complete method (or
+ * with the fail method which reports a reason to the server).
+ *
+ * The requests are flow controlled in the same way as the messages of a ServerStream: the
+ * client can send a window of requests, and the server grants more credits as it processes
+ * them. The send method waits while there are no credits left.
+ *
+ * The reply (or the stream of replies) is passed to the StreamObserver provided with the call,
+ * on the thread that reads from the connection, so the observer should not block. When the server
+ * ends the call, the send method throws a RemoteCommunicationsException with the CANCELLED error type.
+ * The cancel method ends the call on both sides.
+ *
+ * @author Petros Pissias
+ *
+ * @param <RequestType> the type of the requests
+ */
+public class ClientRequestStream<RequestType extends MessageLite> extends StreamSender<RequestType> {
+
+	//the reply handler the call is registered with
+	private final ClientReplyHandler replyHandler;
+
+	//the connection the call is sent over
+	final ClientConnection connection;
+
+	//the MessageContainer message type of the cancel message
+	private final int cancelMessageType;
+
+	//passes the replies to the observer of the call
+	final StreamReceiver<Object> replies;
+
+	/**
+	 * Constructs a new call. Called by the ClientReplyHandler
+	 * @param replyHandler the reply handler the call is registered with
+	 * @param connection the connection the call is sent over
+	 * @param streamId the correlation id of the call
+	 * @param requestMessageType the MessageContainer message type of the requests
+	 * @param requestEndMessageType the MessageContainer message type of the end of the request stream
+	 * @param cancelMessageType the MessageContainer message type of the cancel message
+	 * @param compression the compression of the requests, or null
+	 * @param window the number of requests that can be sent before the server grants credits
+	 * @param replies passes the replies to the observer of the call
+	 */
+	ClientRequestStream(ClientReplyHandler replyHandler, final ClientConnection connection, long streamId, int requestMessageType, int requestEndMessageType, int cancelMessageType, FrameCompression compression, int window, StreamReceiver<Object> replies) {
+		super(new PacketSender() {
+			@Override
+			public void sendPackets(byte[][] packets) throws IOException {
+				connection.send(packets);
+			}
+		}, streamId, requestMessageType, requestEndMessageType, compression, window);
+		this.replyHandler = replyHandler;
+		this.connection = connection;
+		this.cancelMessageType = cancelMessageType;
+		this.replies = replies;
+	}
+
+	/**
+	 * Cancels the call. The server stops processing the requests, and the observer of the
+	 * call receives a RemoteCommunicationsException with the CANCELLED error type.
+	 * Has no effect if the call has already ended
+	 */
+	@Override
+	public void cancel() {
+		super.cancel();
+		if (replyHandler.removeRequestStream(getStreamId())) {
+			try {
+				connection.send(new byte[][] {EnvelopeCodec.encodeStreamControl(cancelMessageType, getStreamId(), 0, null)});
+			} catch (IOException e) {
+				//the connection is lost, the server ends the call
+			}
+			replies.end(new RemoteCommunicationsException(RemoteCommunicationsErrorType.CANCELLED, "Call cancelled by the client"));
+		}
+	}
+
+	//stops the requests when the server ends the call or the connection is lost. Called by the ClientReplyHandler
+	void stopRequests() {
+		super.cancel();
+	}
+}
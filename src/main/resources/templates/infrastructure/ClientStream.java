@@ -0,0 +1,194 @@
+package $infrastructure.javaPackage;
+
+import java.io.IOException;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The client side of a stream of messages received from the server, as the
+ * reply to the request of a stream service.
+ *
+ * The messages are read with the hasNext and next methods, in the order the server sent them.
+ * The client grants the server credits, one for each message it can buffer. The server starts
+ * with a window of credits, and each time half of the window has been read with the next method
+ * the same number of credits is granted again. This way at most one window of messages
+ * is buffered, no matter how fast the server produces them.
+ *
+ * The stream must be closed when it is not read until its end, so that the server
+ * stops sending. Closing it before the end cancels the stream on the server.
+ *
+ * A stream must be read by one thread at a time.
+ *
+ * @author Petros Pissias
+ *
+ * @param <StreamType> the type of the streamed messages
+ */
+public class ClientStream<StreamType> implements AutoCloseable {
+
+	//marks the end of the stream in the queue of received messages
+	private static final Object endOfStream = new Object();
+
+	//the reply handler the stream is registered with
+	private final ClientReplyHandler replyHandler;
+
+	//the connection the stream is received over
+	final ClientConnection connection;
+
+	//the correlation id of the stream request, carried by all stream messages
+	private final long streamId;
+
+	//the MessageContainer message types of the credit and the cancel messages
+	private final int creditMessageType;
+	private final int cancelMessageType;
+
+	//the number of messages read after which credits are granted again
+	private final int creditBatch;
+
+	//the timeout to wait for each message
+	private final int timeoutSeconds;
+
+	//the received messages, and the end of stream marker
+	private final BlockingQueue<Object> receivedMessages = new LinkedBlockingQueue<Object>();
+
+	//the next message, taken from the queue by the hasNext method. null if not taken yet
+	private Object nextMessage = null;
+
+	//the number of messages read since credits were last granted
+	private int readMessages = 0;
+
+	//the failure that ended the stream, null if it completed normally
+	private volatile RemoteCommunicationsException failure = null;
+
+	//true when the end of the stream was received
+	private volatile boolean ended = false;
+
+	//true when the stream was closed
+	private boolean closed = false;
+
+	/**
+	 * Constructs a new stream. Called by the ClientReplyHandler
+	 * @param replyHandler the reply handler the stream is registered with
+	 * @param connection the connection the stream is received over
+	 * @param streamId the correlation id of the stream request
+	 * @param creditMessageType the MessageContainer message type of the credit messages
+	 * @param cancelMessageType the MessageContainer message type of the cancel message
+	 * @param window the number of messages the server can send before it waits for credits
+	 * @param timeoutSeconds the timeout to wait for each message
+	 */
+	ClientStream(ClientReplyHandler replyHandler, ClientConnection connection, long streamId, int creditMessageType, int cancelMessageType, int window, int timeoutSeconds) {
+		this.replyHandler = replyHandler;
+		this.connection = connection;
+		this.streamId = streamId;
+		this.creditMessageType = creditMessageType;
+		this.cancelMessageType = cancelMessageType;
+		this.creditBatch = Math.max(1, window / 2);
+		this.timeoutSeconds = timeoutSeconds;
+	}
+
+	/**
+	 * Returns the correlation id of the stream request
+	 * @return the stream id
+	 */
+	public long getStreamId() {
+		return streamId;
+	}
+
+	/**
+	 * Checks if there are more messages, blocking until the next message or the end of the stream arrives
+	 * @return true if there is a next message, false if the stream completed
+	 * @throws RemoteCommunicationsException if the server failed the stream (STREAM_FAILED), if no message is received
+	 * within a timeout (TIMEOUT) or if the communication channel is interrupted (DISCONNECTED)
+	 */
+	public boolean hasNext() throws RemoteCommunicationsException {
+		if (nextMessage == null) {
+			if (closed) {
+				return false;
+			}
+
+			try {
+				nextMessage = receivedMessages.poll(timeoutSeconds, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				throw new RemoteCommunicationsException(RemoteCommunicationsErrorType.DISCONNECTED, "Interrupted while waiting for a stream message");
+			}
+
+			if (nextMessage == null) {
+				close();
+				throw new RemoteCommunicationsException(RemoteCommunicationsErrorType.TIMEOUT, "Did not receive a stream message for "+timeoutSeconds+" seconds");
+			}
+		}
+
+		if (nextMessage == endOfStream) {
+			if (failure != null) {
+				throw failure;
+			}
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the next message, blocking until it arrives
+	 * @return the next message
+	 * @throws RemoteCommunicationsException see hasNext
+	 * @throws NoSuchElementException if the stream completed
+	 */
+	@SuppressWarnings("unchecked")
+	public StreamType next() throws RemoteCommunicationsException {
+		if (!hasNext()) {
+			throw new NoSuchElementException("The stream has completed");
+		}
+
+		Object message = nextMessage;
+		nextMessage = null;
+
+		readMessages++;
+		if (readMessages >= creditBatch && !ended) {
+			sendControl(creditMessageType, readMessages);
+			readMessages = 0;
+		}
+		return (StreamType)message;
+	}
+
+	/**
+	 * Closes the stream. If the end of the stream was not received, the stream is cancelled on the server
+	 */
+	@Override
+	public void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+
+		replyHandler.removeStream(streamId);
+		if (!ended) {
+			sendControl(cancelMessageType, 0);
+		}
+		receivedMessages.clear();
+		if (nextMessage != endOfStream) {
+			nextMessage = null;
+		}
+	}
+
+	//called by the ClientReplyHandler when a message of the stream is received
+	void messageReceived(Object message) {
+		receivedMessages.offer(message);
+	}
+
+	//called by the ClientReplyHandler when the stream ends, with the failure or null
+	void endReceived(RemoteCommunicationsException streamFailure) {
+		failure = streamFailure;
+		ended = true;
+		receivedMessages.offer(endOfStream);
+	}
+
+	//sends a credit or cancel message
+	private void sendControl(int messageType, int credits) {
+		try {
+			connection.send(new byte[][] {EnvelopeCodec.encodeStreamControl(messageType, streamId, credits, null)});
+		} catch (IOException e) {
+			//the connection is lost, its pending calls and streams are failed
+		}
+	}
+}
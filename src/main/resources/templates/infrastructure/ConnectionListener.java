@@ -0,0 +1,20 @@
+package $infrastructure.javaPackage;
+
+/**
+ * Interface implemented by users of 
+ * the NioServerTransport. 
+ * 
+ * Used in order to inform about new connections
+ * 
+ * @author Petros Pissias
+ *
+ */
+public interface ConnectionListener {
+	/**
+	 * Method that indicates that a new connection was accepted.
+	 * The implementation must set the handlers of the provided NioDataTransceiver
+	 * and initialize it, in order to start receiving data.
+	 * @param dataTransceiver the data transceiver of the new connection
+	 */
+	public abstract void connectionAccepted(NioDataTransceiver dataTransceiver);
+}
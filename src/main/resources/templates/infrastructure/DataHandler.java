@@ -1,5 +1,7 @@
 package $infrastructure.javaPackage;
 
+import com.google.protobuf.ByteString;
+
 /**
  * Interface implemented by users of 
  * the SocketDataTransceiver. 
@@ -15,4 +17,11 @@ public interface DataHandler {
 	 * @param payload the packet data (payload)
 	 */
 	public abstract void handleDataIndication(byte[] payload);
+
+	/**
+	 * Method that indicates that a new complete message, reassembled from fragments, has arrived
+	 * (see PacketAssembler). The message refers to the fragments, that are not copied into one array
+	 * @param payload the message data (payload)
+	 */
+	public abstract void handleDataIndication(ByteString payload);
 }
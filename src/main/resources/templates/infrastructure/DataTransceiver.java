@@ -0,0 +1,77 @@
+package $infrastructure.javaPackage;
+
+import java.io.IOException;
+
+/**
+ * Interface of the objects used in order to send and receive
+ * packets over a connection, using the packet encoding :
+ * 
+ * [4 byte header=payload size][payload]
+ * 
+ * Received packets are forwarded to a DataHandler and communication errors 
+ * are reported to an ErrorHandler.
+ * 
+ * @author Petros Pissias
+ *
+ */
+public interface DataTransceiver extends PacketSender {
+	/**
+	 * Starts the processing of this DataTransceiver
+	 */
+	public abstract void initialize();
+	
+	/**
+	 * Sends the specified payload data using the predefined packet encoding.
+	 * The send operation is atomic
+	 * @param data the payload data
+	 * @throws IOException in case of communication issues 
+	 */
+	public abstract void send(byte[] data) throws IOException;
+	
+	/**
+	 * Sends a complete packet, that already starts with the 4 byte header (see EnvelopeCodec).
+	 * The send operation is atomic
+	 * @param packet the packet data (header and payload)
+	 * @throws IOException in case of communication issues 
+	 */
+	public abstract void sendPacket(byte[] packet) throws IOException;
+	
+	/**
+	 * Sends complete packets (i.e. the fragments of a message, see EnvelopeCodec), that already start with the 4 byte header.
+	 * The send operation is atomic, no other packets are sent between them
+	 * @param packets the packets data (header and payload)
+	 * @throws IOException in case of communication issues 
+	 */
+	public abstract void sendPackets(byte[][] packets) throws IOException;
+	
+	/**
+	 * Attempts to close the underlying connection
+	 * @return true if succesful false if an exception is thrown while trying to close the connection
+	 */
+	public abstract boolean closeSocket();
+	
+	/**
+	 * Stops reading from the connection, after the data already read is handled, until 
+	 * resumeReading is called. The sender is then slowed down by TCP flow control
+	 */
+	public abstract void pauseReading();
+	
+	/**
+	 * Resumes reading from the connection, after pauseReading
+	 */
+	public abstract void resumeReading();
+	
+	/**
+	 * Sets the heartbeats and idle timeout of the connection (see Heartbeat). Must be called before it is initialized
+	 * @param heartbeat the heartbeat settings
+	 */
+	public abstract void setHeartbeat(Heartbeat heartbeat);
+#if ($infrastructure.metrics)
+	
+	/**
+	 * Sets the listener the packets sent and received by this DataTransceiver are reported to
+	 * @param metricsListener the listener
+	 */
+	public abstract void setMetricsListener(MetricsListener metricsListener);
+#end
+}
@@ -0,0 +1,124 @@
+package $infrastructure.javaPackage;
+
+import java.net.ProtocolException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A codec compressing packet payloads with the JDK Deflater and Inflater (zlib format).
+ *
+ * Deflater and Inflater objects hold native memory, and creating one for each message
+ * is expensive, so they are kept in small pools and reused.
+ *
+ * @author Petros Pissias
+ *
+ */
+public class DeflateFrameCodec implements FrameCodec {
+
+	//id and name of this codec
+	public static final int id = 1;
+	public static final String name = "deflate";
+
+	//maximum number of idle deflaters and inflaters kept
+	private static final int poolSize = 32;
+
+	//the compression level
+	private final int level;
+
+	//the idle deflaters and inflaters
+	private final BlockingQueue<Deflater> deflaters = new ArrayBlockingQueue<Deflater>(poolSize);
+	private final BlockingQueue<Inflater> inflaters = new ArrayBlockingQueue<Inflater>(poolSize);
+
+	/**
+	 * Constructs a new codec with the default compression level
+	 */
+	public DeflateFrameCodec() {
+		this(Deflater.DEFAULT_COMPRESSION);
+	}
+
+	/**
+	 * Constructs a new codec
+	 * @param level the compression level (see Deflater)
+	 */
+	public DeflateFrameCodec(int level) {
+		this.level = level;
+	}
+
+	@Override
+	public int getId() {
+		return id;
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public byte[] encode(byte[] data, int offset, int length) {
+		Deflater deflater = deflaters.poll();
+		if (deflater == null) {
+			deflater = new Deflater(level);
+		}
+
+		try {
+			deflater.setInput(data, offset, length);
+			deflater.finish();
+
+			byte[] output = new byte[Math.max(64, length / 2)];
+			int outputSize = 0;
+			while (!deflater.finished()) {
+				if (outputSize == output.length) {
+					output = Arrays.copyOf(output, output.length * 2);
+				}
+				outputSize += deflater.deflate(output, outputSize, output.length - outputSize);
+			}
+			return Arrays.copyOf(output, outputSize);
+		} finally {
+			deflater.reset();
+			if (!deflaters.offer(deflater)) {
+				deflater.end();
+			}
+		}
+	}
+
+	@Override
+	public byte[] decode(byte[] data, int offset, int length, int maxSize) throws ProtocolException {
+		Inflater inflater = inflaters.poll();
+		if (inflater == null) {
+			inflater = new Inflater();
+		}
+
+		try {
+			inflater.setInput(data, offset, length);
+
+			byte[] output = new byte[(int)Math.min(maxSize, Math.max(64L, length * 4L))];
+			int outputSize = 0;
+			while (!inflater.finished()) {
+				if (outputSize == output.length) {
+					if (output.length == maxSize) {
+						throw new ProtocolException("Received compressed message larger than the maximum message size of "+maxSize+" bytes");
+					}
+					output = Arrays.copyOf(output, (int)Math.min(maxSize, output.length * 2L));
+				}
+				int inflated = inflater.inflate(output, outputSize, output.length - outputSize);
+				if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					throw new ProtocolException("Received truncated compressed message");
+				}
+				outputSize += inflated;
+			}
+			return (outputSize == output.length) ? output : Arrays.copyOf(output, outputSize);
+		} catch (DataFormatException e) {
+			throw new ProtocolException("Received compressed message that cannot be decompressed: "+e.getMessage());
+		} finally {
+			inflater.reset();
+			if (!inflaters.offer(inflater)) {
+				inflater.end();
+			}
+		}
+	}
+}
@@ -0,0 +1,552 @@
+package $infrastructure.javaPackage;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.MessageLite;
+import com.google.protobuf.WireFormat;
+
+/**
+ * This class encodes and decodes the MessageContainer envelope
+ * without intermediate copies of the message data.
+ *
+ * Encoding writes the packet header, the envelope fields and the message
+ * itself with a CodedOutputStream directly into the array of the packet
+ * that is sent by the DataTransceiver :
+ *
+ * [4 byte header=payload size][MessageContainer payload]
+ *
+ * The result is the same as building a MessageContainer and serializing it, but the
+ * message is serialized only once and no other array is allocated.
+ *
+ * Messages of services with compression are encoded in one array, compressed
+ * and then split into packets with the compressed flag set (see FrameCodecs).
+ *
+ * Envelopes larger than the chunk size, or than the maximum packet size without a chunk
+ * size, are sent in fragments, so that no packet is rejected by the receiving side.
+ * Envelopes larger than the maximum message size are not sent at all: a MessageTooLargeException
+ * is thrown instead.
+ *
+ * Requests can carry the deadline of their call, the time in milliseconds the client
+ * waits for the reply. Other messages, and requests without one, do not write the field.
+ * The replies to requests rejected by the admission control of the server carry the
+ * overloaded flag instead of a message.
+ *
+ * Decoding uses a CodedInputStream with aliasing enabled, so that the messageData of the
+ * decoded MessageContainer refers to the received packet instead of a copy of it. The inner
+ * message is then parsed from that ByteString. Messages reassembled from fragments are
+ * split first (see split), so that their messageData is a part of the fragments
+ * instead of a copy of it.
+ *
+ * @author Petros Pissias
+ *
+ */
+public final class EnvelopeCodec {
+
+	//size of the packet header
+	public static final int headerSize = 4;
+
+	//envelopes larger than this are sent in fragments of this size, 0 if they are only fragmented when larger than the maximum packet size
+	public static final int chunkSize = ${infrastructure.chunkSize};
+
+	//the size of the fragments
+	private static final int fragmentSize = (chunkSize == 0) ? PacketAssembler.maxPacketSize : chunkSize;
+
+	//size of the buffer used when encoding fragments. Large byte fields are copied directly to the fragments
+	private static final int encodeBufferSize = 8 * 1024;
+
+	//field numbers of the MessageContainer envelope
+	private static final int messageTypeField = 1;
+	private static final int messageDataField = 2;
+	private static final int correlationIdField = 3;
+	private static final int streamCreditsField = 4;
+	private static final int streamErrorField = 5;
+	private static final int deadlineField = 6;
+	private static final int overloadedField = 7;
+
+	//tag of the messageData field
+	private static final int messageDataTag = (messageDataField << 3) | WireFormat.WIRETYPE_LENGTH_DELIMITED;
+
+	private EnvelopeCodec() {
+	}
+
+	/**
+	 * Encodes a message in a MessageContainer envelope, including the packet header
+	 * @param messageType the number of the MessageContainer message type
+	 * @param correlationId the correlation id, 0 for messages that do not expect a reply
+	 * @param message the message to be carried in the envelope
+	 * @return the complete packet, to be sent with DataTransceiver.sendPacket
+	 * @throws MessageTooLargeException if the envelope is larger than the maximum packet size
+	 */
+	public static byte[] encodePacket(int messageType, long correlationId, MessageLite message) {
+		int payloadSize = envelopeSize(messageType, correlationId, 0, message);
+		if (payloadSize > PacketAssembler.maxPacketSize) {
+			throw new MessageTooLargeException("Message of "+payloadSize+" bytes is larger than the maximum packet size of "+PacketAssembler.maxPacketSize+" bytes");
+		}
+		return packet(messageType, correlationId, 0, message, payloadSize);
+	}
+
+	//encodes a message (a MessageLite, or its serialized ByteString) in an envelope of the provided size with a deadline (0 if none), including the packet header
+	private static byte[] packet(int messageType, long correlationId, int deadline, Object message, int payloadSize) {
+		byte[] packet = new byte[headerSize + payloadSize];
+
+		//header
+		writeHeader(packet, payloadSize);
+
+		//envelope
+		CodedOutputStream output = CodedOutputStream.newInstance(packet, headerSize, payloadSize);
+		try {
+			writeEnvelope(output, messageType, correlationId, deadline, message);
+			output.checkNoSpaceLeft();
+		} catch (IOException e) {
+			//cannot happen when writing to an array of the computed size
+			throw new IllegalStateException("Cannot encode message", e);
+		}
+
+		return packet;
+	}
+
+	/**
+	 * Encodes a message in a MessageContainer envelope, as one or more packets.
+	 *
+	 * If the envelope is larger than the chunk size (or the maximum packet size without a chunk size),
+	 * it is encoded directly into fragments of that size (see PacketAssembler), without an array
+	 * holding the whole envelope. Otherwise a single packet is returned, as with the encodePacket method.
+	 *
+	 * @param messageType the number of the MessageContainer message type
+	 * @param correlationId the correlation id, 0 for messages that do not expect a reply
+	 * @param message the message to be carried in the envelope
+	 * @return the packets, to be sent with DataTransceiver.sendPackets
+	 * @throws MessageTooLargeException if the envelope is larger than the maximum message size
+	 */
+	public static byte[][] encodePackets(int messageType, long correlationId, MessageLite message) {
+		return packets(messageType, correlationId, 0, message);
+	}
+
+	/**
+	 * Encodes a request in a MessageContainer envelope with the deadline of its call, as one or more packets.
+	 * @param messageType the number of the MessageContainer message type
+	 * @param correlationId the correlation id of the call
+	 * @param deadlineMillis the time the client waits for the reply, in milliseconds. It is sent as at least 1
+	 * @param message the request
+	 * @return the packets, to be sent with DataTransceiver.sendPackets
+	 * @throws MessageTooLargeException if the envelope is larger than the maximum message size
+	 */
+	public static byte[][] encodePackets(int messageType, long correlationId, long deadlineMillis, MessageLite message) {
+		return packets(messageType, correlationId, deadline(deadlineMillis), message);
+	}
+
+	/**
+	 * Encodes a request in a MessageContainer envelope with the deadline of its call, as one or more packets,
+	 * compressing the envelope if it is not smaller than the threshold of the compression.
+	 * @param messageType the number of the MessageContainer message type
+	 * @param correlationId the correlation id of the call
+	 * @param deadlineMillis the time the client waits for the reply, in milliseconds. It is sent as at least 1
+	 * @param message the request
+	 * @param compression the compression of the message
+	 * @return the packets, to be sent with DataTransceiver.sendPackets
+	 * @throws MessageTooLargeException if the envelope, before compression, is larger than the maximum message size
+	 */
+	public static byte[][] encodePackets(int messageType, long correlationId, long deadlineMillis, MessageLite message, FrameCompression compression) {
+		return compressedPackets(messageType, correlationId, deadline(deadlineMillis), message, compression);
+	}
+
+	/**
+	 * Encodes an already serialized request in a MessageContainer envelope with the deadline of its call,
+	 * as one or more packets. The envelope is the same as with the request itself, but the request is not
+	 * serialized again (i.e. when its bytes are also the key of a ResponseCache)
+	 * @param messageType the number of the MessageContainer message type
+	 * @param correlationId the correlation id of the call
+	 * @param deadlineMillis the time the client waits for the reply, in milliseconds. It is sent as at least 1
+	 * @param message the serialized request
+	 * @return the packets, to be sent with DataTransceiver.sendPackets
+	 * @throws MessageTooLargeException if the envelope is larger than the maximum message size
+	 */
+	public static byte[][] encodePackets(int messageType, long correlationId, long deadlineMillis, ByteString message) {
+		return packets(messageType, correlationId, deadline(deadlineMillis), message);
+	}
+
+	/**
+	 * Encodes an already serialized request in a MessageContainer envelope with the deadline of its call,
+	 * as one or more packets, compressing the envelope if it is not smaller than the threshold of the compression.
+	 * @param messageType the number of the MessageContainer message type
+	 * @param correlationId the correlation id of the call
+	 * @param deadlineMillis the time the client waits for the reply, in milliseconds. It is sent as at least 1
+	 * @param message the serialized request
+	 * @param compression the compression of the message
+	 * @return the packets, to be sent with DataTransceiver.sendPackets
+	 * @throws MessageTooLargeException if the envelope, before compression, is larger than the maximum message size
+	 */
+	public static byte[][] encodePackets(int messageType, long correlationId, long deadlineMillis, ByteString message, FrameCompression compression) {
+		return compressedPackets(messageType, correlationId, deadline(deadlineMillis), message, compression);
+	}
+
+	//encodes a message (a MessageLite, or its serialized ByteString) in an envelope with a deadline (0 if none), as one or more packets
+	private static byte[][] packets(int messageType, long correlationId, int deadline, Object message) {
+		int payloadSize = checkMessageSize(envelopeSize(messageType, correlationId, deadline, message));
+		if (payloadSize <= fragmentSize) {
+			return new byte[][] {packet(messageType, correlationId, deadline, message, payloadSize)};
+		}
+
+		FragmentOutputStream fragments = new FragmentOutputStream(payloadSize, 0);
+		CodedOutputStream output = CodedOutputStream.newInstance(fragments, Math.min(fragmentSize, encodeBufferSize));
+		try {
+			writeEnvelope(output, messageType, correlationId, deadline, message);
+			output.flush();
+		} catch (IOException e) {
+			//cannot happen when writing to arrays of the computed size
+			throw new IllegalStateException("Cannot encode message", e);
+		}
+
+		return fragments.packets;
+	}
+
+	/**
+	 * Encodes a message in a MessageContainer envelope, as one or more packets, compressing
+	 * the envelope if it is not smaller than the threshold of the compression.
+	 *
+	 * The envelope is sent uncompressed if the compression does not make it smaller.
+	 * The compressed envelope is sent in fragments if it is larger than the chunk size
+	 * (or the maximum packet size without a chunk size).
+	 *
+	 * @param messageType the number of the MessageContainer message type
+	 * @param correlationId the correlation id, 0 for messages that do not expect a reply
+	 * @param message the message to be carried in the envelope
+	 * @param compression the compression of the message
+	 * @return the packets, to be sent with DataTransceiver.sendPackets
+	 * @throws MessageTooLargeException if the envelope, before compression, is larger than the maximum message size
+	 */
+	public static byte[][] encodePackets(int messageType, long correlationId, MessageLite message, FrameCompression compression) {
+		return compressedPackets(messageType, correlationId, 0, message, compression);
+	}
+
+	//encodes a message (a MessageLite, or its serialized ByteString) in an envelope with a deadline (0 if none), as one or more packets, compressing the envelope
+	private static byte[][] compressedPackets(int messageType, long correlationId, int deadline, Object message, FrameCompression compression) {
+		//the receiving side limits the size of the decompressed envelope
+		int payloadSize = checkMessageSize(envelopeSize(messageType, correlationId, deadline, message));
+		if (payloadSize < compression.getThreshold()) {
+			return packets(messageType, correlationId, deadline, message);
+		}
+
+		//encode the whole envelope, as it is compressed at once
+		byte[] envelope = new byte[payloadSize];
+		CodedOutputStream output = CodedOutputStream.newInstance(envelope);
+		try {
+			writeEnvelope(output, messageType, correlationId, deadline, message);
+			output.checkNoSpaceLeft();
+		} catch (IOException e) {
+			//cannot happen when writing to an array of the computed size
+			throw new IllegalStateException("Cannot encode message", e);
+		}
+
+		FrameCodec codec = compression.getCodec();
+		byte[] compressed = codec.encode(envelope, 0, payloadSize);
+
+		FragmentOutputStream fragments;
+		if (compressed.length + 1 < payloadSize) {
+			//compressed payload, starting with the codec id
+			fragments = new FragmentOutputStream(compressed.length + 1, PacketAssembler.compressedFlag);
+			fragments.write(codec.getId());
+			fragments.write(compressed, 0, compressed.length);
+		} else {
+			//incompressible data, send it as it is
+			fragments = new FragmentOutputStream(payloadSize, 0);
+			fragments.write(envelope, 0, payloadSize);
+		}
+		return fragments.packets;
+	}
+
+	/**
+	 * Encodes a stream control message (credits, cancellation or end of stream) in a
+	 * MessageContainer envelope without message data, including the packet header
+	 * @param messageType the number of the MessageContainer message type
+	 * @param correlationId the correlation id of the stream
+	 * @param streamCredits the credits granted, 0 if none
+	 * @param streamError the reason a stream failed, null if none
+	 * @return the complete packet, to be sent with DataTransceiver.sendPacket
+	 */
+	public static byte[] encodeStreamControl(int messageType, long correlationId, int streamCredits, String streamError) {
+		int payloadSize = CodedOutputStream.computeEnumSize(messageTypeField, messageType)
+				+ CodedOutputStream.computeUInt64Size(correlationIdField, correlationId);
+		if (streamCredits != 0) {
+			payloadSize += CodedOutputStream.computeUInt32Size(streamCreditsField, streamCredits);
+		}
+		if (streamError != null && !streamError.isEmpty()) {
+			payloadSize += CodedOutputStream.computeStringSize(streamErrorField, streamError);
+		}
+
+		byte[] packet = new byte[headerSize + payloadSize];
+		writeHeader(packet, payloadSize);
+
+		CodedOutputStream output = CodedOutputStream.newInstance(packet, headerSize, payloadSize);
+		try {
+			output.writeEnum(messageTypeField, messageType);
+			output.writeUInt64(correlationIdField, correlationId);
+			if (streamCredits != 0) {
+				output.writeUInt32(streamCreditsField, streamCredits);
+			}
+			if (streamError != null && !streamError.isEmpty()) {
+				output.writeString(streamErrorField, streamError);
+			}
+			output.checkNoSpaceLeft();
+		} catch (IOException e) {
+			//cannot happen when writing to an array of the computed size
+			throw new IllegalStateException("Cannot encode message", e);
+		}
+
+		return packet;
+	}
+
+	/**
+	 * Encodes the reply to a request that the server rejected because it is overloaded, in a
+	 * MessageContainer envelope without message data, including the packet header
+	 * @param messageType the number of the MessageContainer message type of the reply
+	 * @param correlationId the correlation id of the request
+	 * @return the complete packet, to be sent with DataTransceiver.sendPacket
+	 */
+	public static byte[] encodeOverloaded(int messageType, long correlationId) {
+		int payloadSize = CodedOutputStream.computeEnumSize(messageTypeField, messageType)
+				+ CodedOutputStream.computeUInt64Size(correlationIdField, correlationId)
+				+ CodedOutputStream.computeBoolSize(overloadedField, true);
+
+		byte[] packet = new byte[headerSize + payloadSize];
+		writeHeader(packet, payloadSize);
+
+		CodedOutputStream output = CodedOutputStream.newInstance(packet, headerSize, payloadSize);
+		try {
+			output.writeEnum(messageTypeField, messageType);
+			output.writeUInt64(correlationIdField, correlationId);
+			output.writeBool(overloadedField, true);
+			output.checkNoSpaceLeft();
+		} catch (IOException e) {
+			//cannot happen when writing to an array of the computed size
+			throw new IllegalStateException("Cannot encode message", e);
+		}
+
+		return packet;
+	}
+
+	//returns the value of the deadline field, between 1 (a deadline that has already passed) and Integer.MAX_VALUE
+	private static int deadline(long deadlineMillis) {
+		return (int) Math.max(1, Math.min(deadlineMillis, Integer.MAX_VALUE));
+	}
+
+	//returns the size of the envelope. As in proto3, fields with a default value are not written
+	private static int envelopeSize(int messageType, long correlationId, int deadline, Object message) {
+		int payloadSize = (message instanceof ByteString) ? CodedOutputStream.computeBytesSize(messageDataField, (ByteString) message) : CodedOutputStream.computeMessageSize(messageDataField, (MessageLite) message);
+		if (messageType != 0) {
+			payloadSize += CodedOutputStream.computeEnumSize(messageTypeField, messageType);
+		}
+		if (correlationId != 0) {
+			payloadSize += CodedOutputStream.computeUInt64Size(correlationIdField, correlationId);
+		}
+		if (deadline != 0) {
+			payloadSize += CodedOutputStream.computeUInt32Size(deadlineField, deadline);
+		}
+		return payloadSize;
+	}
+
+	//checks that an envelope is not larger than the maximum message size, and returns its size
+	private static int checkMessageSize(int payloadSize) {
+		if (payloadSize > PacketAssembler.maxMessageSize) {
+			throw new MessageTooLargeException("Message of "+payloadSize+" bytes is larger than the maximum message size of "+PacketAssembler.maxMessageSize+" bytes");
+		}
+		return payloadSize;
+	}
+
+	//writes the envelope fields
+	private static void writeEnvelope(CodedOutputStream output, int messageType, long correlationId, int deadline, Object message) throws IOException {
+		if (messageType != 0) {
+			output.writeEnum(messageTypeField, messageType);
+		}
+		if (message instanceof ByteString) {
+			output.writeBytes(messageDataField, (ByteString) message);
+		} else {
+			output.writeMessage(messageDataField, (MessageLite) message);
+		}
+		if (correlationId != 0) {
+			output.writeUInt64(correlationIdField, correlationId);
+		}
+		if (deadline != 0) {
+			output.writeUInt32(deadlineField, deadline);
+		}
+	}
+
+	//writes a packet header at the start of the packet
+	private static void writeHeader(byte[] packet, int header) {
+		packet[0] = (byte)(header >>> 24);
+		packet[1] = (byte)(header >>> 16);
+		packet[2] = (byte)(header >>> 8);
+		packet[3] = (byte)header;
+	}
+
+	/**
+	 * Creates the input used to decode a received MessageContainer payload.
+	 * The decoded byte fields refer to the payload instead of copying it, so the
+	 * payload must not be modified while they are in use.
+	 * @param payload the received payload
+	 * @return the input to parse the MessageContainer from
+	 */
+	public static CodedInputStream newDecoder(byte[] payload) {
+		CodedInputStream input = CodedInputStream.newInstance(payload);
+		input.enableAliasing(true);
+		return input;
+	}
+
+	/**
+	 * Creates the input used to decode a received MessageContainer payload from a buffer.
+	 * The decoded byte fields refer to the buffer instead of copying it, so the
+	 * buffer must not be modified or reused while they are in use. Messages parsed from these
+	 * byte fields (with parseFrom(ByteString)) do not refer to the buffer.
+	 * @param payload the received payload, between the position and the limit of the buffer
+	 * @return the input to parse the MessageContainer from
+	 */
+	public static CodedInputStream newDecoder(ByteBuffer payload) {
+		CodedInputStream input = CodedInputStream.newInstance(payload.array(), payload.arrayOffset() + payload.position(), payload.remaining());
+		input.enableAliasing(true);
+		return input;
+	}
+
+	/**
+	 * Splits a received MessageContainer payload, reassembled from fragments (see PacketAssembler),
+	 * in its messageData and the rest of its fields. Parsing the messageData from the fragments would
+	 * copy it, so the envelope is parsed from the other fields and the messageData, a part of the
+	 * payload that is not copied, is set on it afterwards.
+	 * @param payload the reassembled payload
+	 * @return the split payload
+	 * @throws InvalidProtocolBufferException if the fields of the payload cannot be read
+	 */
+	public static SplitEnvelope split(ByteString payload) throws InvalidProtocolBufferException {
+		//the position of the last messageData field (as in protobuf, the last one is used), and of its value
+		int fieldStart = -1;
+		int dataStart = 0;
+		int dataEnd = 0;
+		try {
+			CodedInputStream input = payload.newCodedInput();
+			while (true) {
+				int position = input.getTotalBytesRead();
+				int tag = input.readTag();
+				if (tag == messageDataTag) {
+					int length = input.readRawVarint32();
+					fieldStart = position;
+					dataStart = input.getTotalBytesRead();
+					input.skipRawBytes(length);
+					dataEnd = dataStart + length;
+				} else if (tag == 0 || !input.skipField(tag)) {
+					break;
+				}
+			}
+		} catch (InvalidProtocolBufferException e) {
+			throw e;
+		} catch (IOException e) {
+			//reading a ByteString does not fail with other errors
+			throw new InvalidProtocolBufferException(e);
+		}
+
+		if (fieldStart < 0) {
+			return new SplitEnvelope(payload, ByteString.EMPTY);
+		}
+		return new SplitEnvelope(payload.substring(0, fieldStart).concat(payload.substring(dataEnd)), payload.substring(dataStart, dataEnd));
+	}
+
+	/**
+	 * Returns a copy of the contents of a buffer, used in order to log data that cannot be decoded
+	 * @param payload the buffer
+	 * @return the data between the position and the limit of the buffer
+	 */
+	public static byte[] toByteArray(ByteBuffer payload) {
+		byte[] data = new byte[payload.remaining()];
+		payload.duplicate().get(data);
+		return data;
+	}
+
+	/**
+	 * A received MessageContainer payload split in its messageData and the rest of its fields (see split)
+	 */
+	public static final class SplitEnvelope {
+		//the payload without the messageData field
+		private final ByteString fields;
+
+		//the value of the messageData field
+		private final ByteString messageData;
+
+		private SplitEnvelope(ByteString fields, ByteString messageData) {
+			this.fields = fields;
+			this.messageData = messageData;
+		}
+
+		public ByteString getFields() {
+			return fields;
+		}
+
+		public ByteString getMessageData() {
+			return messageData;
+		}
+	}
+
+	/**
+	 * Output stream writing into the fragments of an envelope of known size.
+	 * Each fragment is a packet with a header, all but the last one have the
+	 * more fragments flag set. If the envelope is not larger than the fragment size,
+	 * it is written in a single packet.
+	 */
+	private static class FragmentOutputStream extends OutputStream {
+		//the fragments
+		private final byte[][] packets;
+
+		//the fragment being written and the position in it
+		private int packetIndex = -1;
+		private byte[] packet = null;
+		private int position = 0;
+
+		/**
+		 * @param payloadSize the size of the envelope
+		 * @param flags the flags set on the header of all fragments
+		 */
+		private FragmentOutputStream(int payloadSize, int flags) {
+			int packetCount = (payloadSize + fragmentSize - 1) / fragmentSize;
+			packets = new byte[packetCount][];
+			for (int i = 0; i < packetCount; i++) {
+				boolean last = (i == packetCount - 1);
+				int size = last ? payloadSize - i * fragmentSize : fragmentSize;
+				packets[i] = new byte[headerSize + size];
+				writeHeader(packets[i], (last ? size : size | PacketAssembler.moreFragmentsFlag) | flags);
+			}
+		}
+
+		@Override
+		public void write(int b) {
+			nextPacketIfFull();
+			packet[position++] = (byte)b;
+		}
+
+		@Override
+		public void write(byte[] data, int offset, int length) {
+			while (length > 0) {
+				nextPacketIfFull();
+				int count = Math.min(length, packet.length - position);
+				System.arraycopy(data, offset, packet, position, count);
+				position += count;
+				offset += count;
+				length -= count;
+			}
+		}
+
+		//moves to the next fragment if the current one is full
+		private void nextPacketIfFull() {
+			if (packet == null || position == packet.length) {
+				if (packetIndex + 1 == packets.length) {
+					throw new IllegalStateException("Envelope larger than its computed size");
+				}
+				packetIndex++;
+				packet = packets[packetIndex];
+				position = headerSize;
+			}
+		}
+	}
+}
@@ -0,0 +1,50 @@
+package $infrastructure.javaPackage;
+
+import java.net.ProtocolException;
+
+/**
+ * A codec compressing the payload of packets.
+ *
+ * A compressed payload starts with the id of its codec, so that the receiver
+ * can decode it without knowing how the sender is configured (see FrameCodecs).
+ * Codecs are registered with FrameCodecs, by id and by name.
+ *
+ * Implementations are used by many threads at the same time and must be thread safe.
+ *
+ * @author Petros Pissias
+ *
+ */
+public interface FrameCodec {
+
+	/**
+	 * Returns the id of this codec, written in the compressed payloads
+	 * @return the id, between 1 and 255
+	 */
+	public int getId();
+
+	/**
+	 * Returns the name of this codec, used in the service description
+	 * @return the name
+	 */
+	public String getName();
+
+	/**
+	 * Compresses data
+	 * @param data the array holding the data
+	 * @param offset the start of the data
+	 * @param length the size of the data
+	 * @return the compressed data
+	 */
+	public byte[] encode(byte[] data, int offset, int length);
+
+	/**
+	 * Decompresses data
+	 * @param data the array holding the compressed data
+	 * @param offset the start of the compressed data
+	 * @param length the size of the compressed data
+	 * @param maxSize the largest decompressed size accepted
+	 * @return the decompressed data
+	 * @throws ProtocolException if the data cannot be decompressed, or is larger than the maximum size
+	 */
+	public byte[] decode(byte[] data, int offset, int length, int maxSize) throws ProtocolException;
+}
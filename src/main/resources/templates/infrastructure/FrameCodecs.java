@@ -0,0 +1,89 @@
+package $infrastructure.javaPackage;
+
+import java.net.ProtocolException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * This class holds the codecs used to compress the payload of packets.
+ *
+ * The deflate codec (DeflateFrameCodec) is always registered. Other codecs can be
+ * registered before the clients and servers using them are created.
+ *
+ * A packet with a compressed payload has the compressed flag of its header set
+ * (see PacketAssembler), and its payload starts with the id of the codec :
+ *
+ * [1 byte codec id][compressed MessageContainer payload]
+ *
+ * The fragments of a compressed message all have the flag set, and the compressed
+ * payload is split over them. Receivers decompress every flagged message with the codec
+ * of its id, whatever their own configuration is, so compressed and uncompressed
+ * messages can be mixed on a connection.
+ *
+ * @author Petros Pissias
+ *
+ */
+public final class FrameCodecs {
+
+	//the registered codecs
+	private static final AtomicReferenceArray<FrameCodec> codecsById = new AtomicReferenceArray<FrameCodec>(256);
+	private static final ConcurrentHashMap<String, FrameCodec> codecsByName = new ConcurrentHashMap<String, FrameCodec>();
+
+	static {
+		register(new DeflateFrameCodec());
+	}
+
+	private FrameCodecs() {
+	}
+
+	/**
+	 * Registers a codec
+	 * @param codec the codec
+	 * @throws IllegalArgumentException if the id of the codec is not between 1 and 255, or if a codec with the same id or name is registered
+	 */
+	public static void register(FrameCodec codec) {
+		int id = codec.getId();
+		if (id < 1 || id > 255) {
+			throw new IllegalArgumentException("Codec "+codec.getName()+" has id "+id+". The id of a codec must be between 1 and 255");
+		}
+		if (codecsByName.putIfAbsent(codec.getName(), codec) != null) {
+			throw new IllegalArgumentException("A codec named "+codec.getName()+" is already registered");
+		}
+		if (!codecsById.compareAndSet(id, null, codec)) {
+			codecsByName.remove(codec.getName());
+			throw new IllegalArgumentException("A codec with id "+id+" is already registered");
+		}
+	}
+
+	/**
+	 * Returns a registered codec
+	 * @param name the name of the codec
+	 * @return the codec
+	 * @throws IllegalArgumentException if no codec with this name is registered
+	 */
+	public static FrameCodec forName(String name) {
+		FrameCodec codec = codecsByName.get(name);
+		if (codec == null) {
+			throw new IllegalArgumentException("No codec named "+name+" is registered");
+		}
+		return codec;
+	}
+
+	/**
+	 * Decompresses a received payload, that starts with the id of its codec
+	 * @param payload the compressed payload
+	 * @return the decompressed payload
+	 * @throws ProtocolException if the codec is unknown, the payload cannot be decompressed or is larger than the maximum message size
+	 */
+	public static byte[] decode(byte[] payload) throws ProtocolException {
+		if (payload.length == 0) {
+			throw new ProtocolException("Received compressed message without a codec id");
+		}
+		int id = payload[0] & 0xFF;
+		FrameCodec codec = codecsById.get(id);
+		if (codec == null) {
+			throw new ProtocolException("Received message compressed with unknown codec "+id);
+		}
+		return codec.decode(payload, 1, payload.length - 1, PacketAssembler.maxMessageSize);
+	}
+}
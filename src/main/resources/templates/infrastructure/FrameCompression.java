@@ -0,0 +1,55 @@
+package $infrastructure.javaPackage;
+
+/**
+ * The compression of the messages of a service: the codec and the size
+ * above which messages are compressed.
+ *
+ * The codec is looked up by name when it is first used, so that codecs
+ * registered with FrameCodecs after this object is created can be used.
+ *
+ * @author Petros Pissias
+ *
+ */
+public final class FrameCompression {
+
+	//the name of the codec
+	private final String codecName;
+
+	//messages smaller than this (in bytes) are not compressed
+	private final int threshold;
+
+	//the codec, looked up when first used
+	private volatile FrameCodec codec = null;
+
+	/**
+	 * Constructs a new FrameCompression
+	 * @param codecName the name of a codec registered with FrameCodecs
+	 * @param threshold messages smaller than this (in bytes) are not compressed
+	 */
+	public FrameCompression(String codecName, int threshold) {
+		this.codecName = codecName;
+		this.threshold = threshold;
+	}
+
+	/**
+	 * Returns the size (in bytes) from which messages are compressed
+	 * @return the threshold
+	 */
+	public int getThreshold() {
+		return threshold;
+	}
+
+	/**
+	 * Returns the codec
+	 * @return the codec
+	 * @throws IllegalArgumentException if the codec is not registered
+	 */
+	public FrameCodec getCodec() {
+		FrameCodec currentCodec = codec;
+		if (currentCodec == null) {
+			currentCodec = FrameCodecs.forName(codecName);
+			codec = currentCodec;
+		}
+		return currentCodec;
+	}
+}
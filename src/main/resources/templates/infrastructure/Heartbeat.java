@@ -0,0 +1,147 @@
+package $infrastructure.javaPackage;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The heartbeats and the idle timeout of the connections between a client and a server.
+ *
+ * A data transceiver with a Heartbeat sends a heartbeat packet when it has not sent anything
+ * for the heartbeat interval, so that an idle connection still carries traffic. It closes the
+ * connection, as if it had failed, when it has not received anything (data or heartbeats) for
+ * the idle timeout. A peer that crashed, or that cannot be reached anymore, is then detected
+ * within a bounded time even when no call is waiting for it, and the resources of the
+ * connection (i.e. the reader thread of a server connection) are released.
+ *
+ * A heartbeat packet is a packet header with the more fragments and compressed flags set and
+ * an empty payload, which is never sent otherwise (see PacketAssembler). It is discarded by
+ * the receiving data transceiver. While the reading of a connection is paused, the connection
+ * does not time out.
+ *
+ * The connections are checked by a thread shared by all of them. The heartbeats are sent by
+ * other threads, so that a connection that cannot be written to does not delay the checks.
+ *
+ * @author Petros Pissias
+ *
+ */
+public final class Heartbeat {
+
+	//the header of a heartbeat packet
+	public static final int header = PacketAssembler.moreFragmentsFlag | PacketAssembler.compressedFlag;
+
+	//a heartbeat packet
+	private static final byte[] packet = new byte[] {(byte)(header >>> 24), (byte)(header >>> 16), (byte)(header >>> 8), (byte)header};
+
+	//checks the connections, shared by all instances
+	private static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory(Heartbeat.class.getSimpleName()));
+
+	//sends the heartbeats, shared by all instances
+	private static final ExecutorService sender = Executors.newCachedThreadPool(new NamedThreadFactory(Heartbeat.class.getSimpleName()+"-sender"));
+
+	//the time (in nanoseconds) without sending after which a heartbeat is sent
+	private final long intervalNanos;
+
+	//the time (in nanoseconds) without receiving after which the connection is closed
+	private final long timeoutNanos;
+
+	/**
+	 * Constructs a new Heartbeat
+	 * @param intervalMillis the time (in milliseconds) without sending after which a heartbeat is sent
+	 * @param timeoutMillis the time (in milliseconds) without receiving after which the connection is closed
+	 */
+	public Heartbeat(long intervalMillis, long timeoutMillis) {
+		if (intervalMillis <= 0 || timeoutMillis <= intervalMillis) {
+			throw new IllegalArgumentException("Invalid heartbeat interval and timeout: "+intervalMillis+", "+timeoutMillis);
+		}
+		this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+		this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+	}
+
+	/**
+	 * Returns a heartbeat packet. The same array is returned every time, it must not be modified
+	 * @return the packet
+	 */
+	static byte[] getPacket() {
+		return packet;
+	}
+
+	/**
+	 * Starts checking a connection, every half heartbeat interval, until it is closed
+	 * @param connection the connection
+	 */
+	void monitor(final Connection connection) {
+		final long period = intervalNanos / 2;
+		final ScheduledFuture<?>[] check = new ScheduledFuture<?>[1];
+
+		//true while a heartbeat is being sent, so that a blocked connection does not use up the sender threads
+		final AtomicBoolean sending = new AtomicBoolean(false);
+		final Runnable sendHeartbeat = new Runnable() {
+			@Override
+			public void run() {
+				try {
+					connection.sendHeartbeat();
+				} finally {
+					sending.set(false);
+				}
+			}
+		};
+
+		synchronized (check) {
+			check[0] = scheduler.scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run() {
+					if (connection.isClosed()) {
+						synchronized (check) {
+							check[0].cancel(false);
+						}
+						return;
+					}
+
+					long now = System.nanoTime();
+					if (now - connection.getLastReceivedNanos() >= timeoutNanos) {
+						connection.idleTimeout(TimeUnit.NANOSECONDS.toMillis(timeoutNanos));
+					} else if (now - connection.getLastSentNanos() >= intervalNanos && sending.compareAndSet(false, true)) {
+						sender.execute(sendHeartbeat);
+					}
+				}
+			}, period, period, TimeUnit.NANOSECONDS);
+		}
+	}
+
+	/**
+	 * A connection checked by a Heartbeat, implemented by the data transceivers.
+	 * The methods are called by the thread checking the connections, so they must not block,
+	 * except sendHeartbeat which is called by a sender thread
+	 */
+	interface Connection {
+		/**
+		 * @return the time (System.nanoTime) a packet was last received, or the current time while the reading is paused
+		 */
+		long getLastReceivedNanos();
+
+		/**
+		 * @return the time (System.nanoTime) a packet was last sent
+		 */
+		long getLastSentNanos();
+
+		/**
+		 * Sends a heartbeat packet
+		 */
+		void sendHeartbeat();
+
+		/**
+		 * Closes the connection and reports it as failed, nothing was received for the idle timeout
+		 * @param timeoutMillis the idle timeout, in milliseconds
+		 */
+		void idleTimeout(long timeoutMillis);
+
+		/**
+		 * @return true if the connection is closed
+		 */
+		boolean isClosed();
+	}
+}
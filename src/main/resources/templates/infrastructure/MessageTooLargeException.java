@@ -0,0 +1,18 @@
+package $infrastructure.javaPackage;
+
+/**
+ * Thrown when a message is encoded that is larger than the maximum message size, which the
+ * receiving side would reject by closing the connection. The client methods report it to the
+ * caller as a RemoteCommunicationsException with the MESSAGE_TOO_LARGE error type.
+ * 
+ * @author Petros Pissias
+ *
+ */
+public class MessageTooLargeException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	public MessageTooLargeException(String message) {
+		super(message);
+	}
+}
@@ -0,0 +1,68 @@
+package $infrastructure.javaPackage;
+
+/**
+ * Receives the metrics of the generated code: the calls of each service, their
+ * latency and failures, and the packets sent and received over the connections.
+ *
+ * On the client side a call is a call of a service method (or of its Async or Batch
+ * variant, reported with the name of the variant), from the method call until the reply
+ * is received. On the server side a call is the handling of a request, from its dispatch
+ * until the reply is sent. For stream services and services with a stream of requests
+ * the client side call is the opening of the stream, the server side call is the run of
+ * the service method.
+ *
+ * The methods are called by the threads making the calls and reading from the
+ * connections, so they must be thread safe and return quickly. All methods do nothing
+ * by default. See MetricsRecorder for an implementation that aggregates the metrics.
+ *
+ * @author Petros Pissias
+ *
+ */
+public interface MetricsListener {
+
+	//the listener used when no listener is set
+	public static final MetricsListener none = new MetricsListener() {
+	};
+
+	/**
+	 * A call of a service started
+	 * @param serviceName the name of the service
+	 */
+	public default void callStarted(String serviceName) {
+	}
+
+	/**
+	 * A call of a service completed
+	 * @param serviceName the name of the service
+	 * @param latencyNanos the duration of the call, in nanoseconds
+	 */
+	public default void callCompleted(String serviceName, long latencyNanos) {
+	}
+
+	/**
+	 * A call of a service failed. On the server side the failures are exceptions
+	 * thrown by the service implementation, reported with the REQUEST_FAILED error type,
+	 * requests dropped because their deadline passed, reported with the TIMEOUT error type,
+	 * and requests rejected by admission control, reported with the OVERLOADED error type
+	 * @param serviceName the name of the service
+	 * @param errorType the reason the call failed
+	 * @param latencyNanos the duration of the call, in nanoseconds
+	 */
+	public default void callFailed(String serviceName, RemoteCommunicationsErrorType errorType, long latencyNanos) {
+	}
+
+	/**
+	 * Packets were sent over a connection
+	 * @param packets the number of packets
+	 * @param bytes the size of the packets, including their headers
+	 */
+	public default void packetsSent(int packets, long bytes) {
+	}
+
+	/**
+	 * A packet was received from a connection
+	 * @param bytes the size of the packet, including its header
+	 */
+	public default void packetReceived(int bytes) {
+	}
+}
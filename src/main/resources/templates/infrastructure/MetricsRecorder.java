@@ -0,0 +1,276 @@
+package $infrastructure.javaPackage;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongBinaryOperator;
+
+/**
+ * A MetricsListener that aggregates the metrics in memory: per service the number of
+ * calls, the failures by error type, the calls in flight and a histogram of the latency
+ * of the completed calls, and the number of packets and bytes sent and received.
+ *
+ * The metrics can be read at any time, i.e. by a thread exporting them periodically
+ * to a monitoring system. Reading does not stop the recording, so the values read one
+ * after the other can belong to slightly different moments.
+ *
+ * @author Petros Pissias
+ *
+ */
+public class MetricsRecorder implements MetricsListener {
+
+	//the metrics of each service, by service name
+	private final ConcurrentMap<String, ServiceMetrics> services = new ConcurrentHashMap<String, ServiceMetrics>();
+
+	//packets and bytes sent and received over all connections
+	private final LongAdder packetsSent = new LongAdder();
+	private final LongAdder bytesSent = new LongAdder();
+	private final LongAdder packetsReceived = new LongAdder();
+	private final LongAdder bytesReceived = new LongAdder();
+
+	@Override
+	public void callStarted(String serviceName) {
+		ServiceMetrics metrics = getOrCreate(serviceName);
+		metrics.calls.increment();
+		metrics.inFlight.incrementAndGet();
+	}
+
+	@Override
+	public void callCompleted(String serviceName, long latencyNanos) {
+		ServiceMetrics metrics = getOrCreate(serviceName);
+		metrics.inFlight.decrementAndGet();
+		metrics.completed.increment();
+		metrics.latency.record(latencyNanos);
+	}
+
+	@Override
+	public void callFailed(String serviceName, RemoteCommunicationsErrorType errorType, long latencyNanos) {
+		ServiceMetrics metrics = getOrCreate(serviceName);
+		metrics.inFlight.decrementAndGet();
+		metrics.failures[errorType.ordinal()].increment();
+	}
+
+	@Override
+	public void packetsSent(int packets, long bytes) {
+		packetsSent.add(packets);
+		bytesSent.add(bytes);
+	}
+
+	@Override
+	public void packetReceived(int bytes) {
+		packetsReceived.increment();
+		bytesReceived.add(bytes);
+	}
+
+	/**
+	 * Returns the metrics of the services that had at least one call
+	 * @return the metrics of each service, by service name
+	 */
+	public Map<String, ServiceMetrics> getServices() {
+		return Collections.unmodifiableMap(services);
+	}
+
+	/**
+	 * Returns the metrics of a service
+	 * @param serviceName the name of the service
+	 * @return the metrics of the service, or null if it had no calls
+	 */
+	public ServiceMetrics getService(String serviceName) {
+		return services.get(serviceName);
+	}
+
+	public long getPacketsSent() {
+		return packetsSent.sum();
+	}
+
+	public long getBytesSent() {
+		return bytesSent.sum();
+	}
+
+	public long getPacketsReceived() {
+		return packetsReceived.sum();
+	}
+
+	public long getBytesReceived() {
+		return bytesReceived.sum();
+	}
+
+	//returns the metrics of a service, creating them on its first call
+	private ServiceMetrics getOrCreate(String serviceName) {
+		ServiceMetrics metrics = services.get(serviceName);
+		if (metrics == null) {
+			ServiceMetrics newMetrics = new ServiceMetrics();
+			metrics = services.putIfAbsent(serviceName, newMetrics);
+			if (metrics == null) {
+				metrics = newMetrics;
+			}
+		}
+		return metrics;
+	}
+
+	@Override
+	public String toString() {
+		return "MetricsRecorder [services="+services+", packetsSent="+getPacketsSent()+", bytesSent="+getBytesSent()
+				+", packetsReceived="+getPacketsReceived()+", bytesReceived="+getBytesReceived()+"]";
+	}
+
+	/**
+	 * The metrics of a service
+	 */
+	public static class ServiceMetrics {
+
+		//the calls started, completed and failed (by error type)
+		private final LongAdder calls = new LongAdder();
+		private final LongAdder completed = new LongAdder();
+		private final LongAdder[] failures = new LongAdder[RemoteCommunicationsErrorType.values().length];
+
+		//the calls started but not completed or failed yet
+		private final AtomicInteger inFlight = new AtomicInteger(0);
+
+		//the latency of the completed calls
+		private final LatencyHistogram latency = new LatencyHistogram();
+
+		private ServiceMetrics() {
+			for (int i = 0; i < failures.length; i++) {
+				failures[i] = new LongAdder();
+			}
+		}
+
+		public long getCalls() {
+			return calls.sum();
+		}
+
+		public long getCompletedCalls() {
+			return completed.sum();
+		}
+
+		public long getFailedCalls() {
+			long sum = 0;
+			for (LongAdder failure : failures) {
+				sum += failure.sum();
+			}
+			return sum;
+		}
+
+		public long getFailedCalls(RemoteCommunicationsErrorType errorType) {
+			return failures[errorType.ordinal()].sum();
+		}
+
+		public int getInFlightCalls() {
+			return inFlight.get();
+		}
+
+		public LatencyHistogram getLatency() {
+			return latency;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder failed = new StringBuilder();
+			for (RemoteCommunicationsErrorType errorType : RemoteCommunicationsErrorType.values()) {
+				long count = getFailedCalls(errorType);
+				if (count > 0) {
+					failed.append(failed.length() == 0 ? "" : ", ").append(errorType).append('=').append(count);
+				}
+			}
+			return "ServiceMetrics [calls="+getCalls()+", completed="+getCompletedCalls()+", failed={"+failed+"}, inFlight="+getInFlightCalls()+", latency="+latency+"]";
+		}
+	}
+
+	/**
+	 * A histogram of latencies with power of two buckets: bucket i counts the latencies
+	 * from 2^(i-1) to 2^i - 1 nanoseconds. Recording is lock free and does not allocate.
+	 * The percentiles are the upper bound of their bucket, so they are at most twice the
+	 * exact value.
+	 */
+	public static class LatencyHistogram {
+
+		//number of buckets, one for each number of significant bits of a non negative long (0 to 63)
+		private static final int bucketCount = 64;
+
+		private final AtomicLongArray buckets = new AtomicLongArray(bucketCount);
+		private final LongAdder count = new LongAdder();
+		private final LongAdder totalNanos = new LongAdder();
+		private final LongAccumulator maxNanos = new LongAccumulator(new LongBinaryOperator() {
+			@Override
+			public long applyAsLong(long left, long right) {
+				return Math.max(left, right);
+			}
+		}, 0);
+
+		private LatencyHistogram() {
+		}
+
+		//records a latency
+		void record(long latencyNanos) {
+			long latency = Math.max(latencyNanos, 0);
+			buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(latency));
+			count.increment();
+			totalNanos.add(latency);
+			maxNanos.accumulate(latency);
+		}
+
+		public long getCount() {
+			return count.sum();
+		}
+
+		public long getMeanNanos() {
+			long samples = count.sum();
+			return (samples == 0) ? 0 : totalNanos.sum() / samples;
+		}
+
+		public long getMaxNanos() {
+			return maxNanos.get();
+		}
+
+		/**
+		 * Returns a percentile of the latencies
+		 * @param percentile the percentile, between 0 and 100 (i.e. 99.9)
+		 * @return the upper bound of the bucket of the percentile, in nanoseconds, or 0 if there are no latencies
+		 */
+		public long getPercentileNanos(double percentile) {
+			long[] counts = new long[bucketCount];
+			long samples = 0;
+			for (int i = 0; i < bucketCount; i++) {
+				counts[i] = buckets.get(i);
+				samples += counts[i];
+			}
+			if (samples == 0) {
+				return 0;
+			}
+
+			long rank = (long) Math.ceil(samples * Math.min(Math.max(percentile, 0), 100) / 100);
+			long seen = 0;
+			for (int i = 0; i < bucketCount; i++) {
+				seen += counts[i];
+				if (seen >= rank && counts[i] > 0) {
+					return Math.min((1L << i) - 1, getMaxNanos());
+				}
+			}
+			return getMaxNanos();
+		}
+
+		/**
+		 * Returns the number of latencies of each bucket
+		 * @return the counts, bucket i holding the latencies from 2^(i-1) to 2^i - 1 nanoseconds
+		 */
+		public long[] getBucketCounts() {
+			long[] counts = new long[bucketCount];
+			for (int i = 0; i < bucketCount; i++) {
+				counts[i] = buckets.get(i);
+			}
+			return counts;
+		}
+
+		@Override
+		public String toString() {
+			return "LatencyHistogram [count="+getCount()+", meanNanos="+getMeanNanos()+", p50Nanos="+getPercentileNanos(50)
+					+", p99Nanos="+getPercentileNanos(99)+", maxNanos="+getMaxNanos()+"]";
+		}
+	}
+}
@@ -0,0 +1,46 @@
+package $infrastructure.javaPackage;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Thread factory for the threads created by the generated code.
+ * 
+ * The threads are daemon threads and are named after a prefix and 
+ * a sequence number, so that they can be easily identified.
+#if ($infrastructure.virtualThreads)
+ * 
+ * The threads are virtual threads. Thread pools created with this factory
+ * (i.e. the dispatch pools) still limit the number of tasks running in parallel. 
+#end
+ * 
+ * @author Petros Pissias
+ *
+ */
+public class NamedThreadFactory implements ThreadFactory {
+
+	//the thread name prefix
+	private final String namePrefix;
+	
+	//thread number counter
+	private final AtomicInteger threadCount = new AtomicInteger(0);
+	
+	/**
+	 * Constructs a new thread factory
+	 * @param namePrefix the prefix of the names of the created threads
+	 */
+	public NamedThreadFactory(String namePrefix) {
+		this.namePrefix = namePrefix;
+	}
+	
+	@Override
+	public Thread newThread(Runnable runnable) {
+		#if ($infrastructure.virtualThreads)
+		return Thread.ofVirtual().name(namePrefix+"-"+threadCount.incrementAndGet()).unstarted(runnable);
+		#else
+		Thread thread = new Thread(runnable, namePrefix+"-"+threadCount.incrementAndGet());
+		thread.setDaemon(true);
+		return thread;
+		#end
+	}
+}
@@ -0,0 +1,602 @@
+package $infrastructure.javaPackage;
+
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+#if ($infrastructure.logging == "log4j")
+import org.apache.log4j.Logger;
+#elseif ($infrastructure.logging == "slf4j")
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+#end
+
+import com.google.protobuf.ByteString;
+
+/**
+ * This is a class used to send data over a non-blocking socket channel
+ * using the same packet encoding as the SocketDataTransceiver :
+ *
+ * [4 byte header=payload size][payload]
+ *
+ * Instead of having its own reader thread, it is served by a NioEventLoop
+ * which reads the data when it is available and forwards the complete packets
+ * to the DataHandler. If the DataHandler implements ByteBufferDataHandler, the packets
+ * are read into buffers of the ByteBufferPool instead of new arrays. The packet headers
+ * are checked, and fragmented messages are reassembled, by a PacketAssembler. Compressed
+ * messages are decompressed (see FrameCodecs) before they are passed to the DataHandler.
+ * Heartbeat packets (see Heartbeat) are discarded.
+ *
+ * A send operation writes directly to the channel. If the channel cannot accept
+ * all the data, the rest is queued and written by the event loop when the channel
+ * becomes writable. If too much data is queued, senders (other than the event loop thread)
+ * wait until it is written, as they would with a blocking socket.
+ *
+ * @author Petros Pissias
+ *
+ */
+public class NioDataTransceiver implements DataTransceiver {
+
+	//size of the buffer used for reading from the channel
+	private static final int readBufferSize = 16 * 1024;
+
+	//maximum number of bytes read from a connection each time it is served, so that other connections are not starved
+	private static final int maxBytesPerRead = 256 * 1024;
+
+	//amount of queued data above which senders wait
+	private static final int maxQueuedBytes = 4 * 1024 * 1024;
+
+	//the channel of this data transceiver
+	private final SocketChannel channel;
+
+	//the event loop serving this data transceiver
+	private final NioEventLoop eventLoop;
+
+	#if ($infrastructure.logging == "log4j")
+	//logger
+	private final Logger logger = Logger.getLogger(getClass());
+	#elseif ($infrastructure.logging == "slf4j")
+	//logger
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+	#end
+
+	//reference to a data handler that receives decoded data
+	private DataHandler dataHandler;
+
+	//the same data handler, if it receives the data in pooled buffers. null otherwise
+	private ByteBufferDataHandler bufferDataHandler;
+
+	//the pool of the receive buffers
+	private final ByteBufferPool bufferPool = ByteBufferPool.getInstance();
+
+	//reference to an error handler that ocmmunication errors are reported to
+	private ErrorHandler errorHandler;
+
+	//the key of the channel, set by the event loop
+	private SelectionKey key;
+
+	//read state. Only accessed by the event loop thread
+	private final ByteBuffer readBuffer = ByteBuffer.allocate(readBufferSize);
+	private ByteBuffer payloadBuffer = null;
+	private boolean moreFragments = false;
+	private boolean compressed = false;
+	private boolean pooledPayload = false;
+	private final PacketAssembler packetAssembler = new PacketAssembler();
+
+	//write state, guarded by the write lock
+	private final ReentrantLock writeLock = new ReentrantLock();
+	private final Condition writeQueueDrained = writeLock.newCondition();
+	private final Queue<ByteBuffer> writeQueue = new ArrayDeque<ByteBuffer>();
+	private int queuedBytes = 0;
+	private boolean closed = false;
+
+	//true while the reading is paused, set by the event loop thread
+	private volatile boolean readPaused = false;
+
+	//the time (System.nanoTime) data was last read and written
+	private volatile long lastReceivedNanos = System.nanoTime();
+	private volatile long lastSentNanos = System.nanoTime();
+
+	//the heartbeats and idle timeout of the connection, null if none
+	private Heartbeat heartbeat = null;
+#if ($infrastructure.metrics)
+
+	//the listener the sent and received packets are reported to
+	private volatile MetricsListener metricsListener = MetricsListener.none;
+#end
+
+	/**
+	 * Constructs a new NioDataTransceiver object
+	 * @param channel the connected channel
+	 * @param eventLoop the event loop that will serve this data transceiver
+	 * @throws IOException in case is I/O problems
+	 */
+	public NioDataTransceiver(SocketChannel channel, NioEventLoop eventLoop) throws IOException {
+		this.channel = channel;
+		this.eventLoop = eventLoop;
+
+		channel.configureBlocking(false);
+		channel.socket().setTcpNoDelay(true);
+	}
+
+	/**
+	 * Sets the handlers of this data transceiver. Must be called before it is initialized
+	 * @param dataHandler the data handler to receive data indications
+	 * @param errorHandler the error handler which will be informed in case of a communications error
+	 */
+	public void setHandlers(DataHandler dataHandler, ErrorHandler errorHandler) {
+		this.dataHandler = dataHandler;
+		this.bufferDataHandler = (dataHandler instanceof ByteBufferDataHandler) ? (ByteBufferDataHandler)dataHandler : null;
+		this.errorHandler = errorHandler;
+	}
+
+#if ($infrastructure.metrics)
+	/**
+	 * Sets the listener the packets sent and received by this data transceiver are reported to
+	 * @param metricsListener the listener
+	 */
+	@Override
+	public void setMetricsListener(MetricsListener metricsListener) {
+		this.metricsListener = metricsListener;
+	}
+
+#end
+	/**
+	 * Starts the processing of this data transceiver
+	 */
+	@Override
+	public void initialize() {
+		eventLoop.register(this);
+
+		if (heartbeat != null) {
+			heartbeat.monitor(new HeartbeatConnection());
+		}
+	}
+
+	/**
+	 * Sets the heartbeats and idle timeout of the connection. Must be called before it is initialized
+	 * @param heartbeat the heartbeat settings
+	 */
+	@Override
+	public void setHeartbeat(Heartbeat heartbeat) {
+		this.heartbeat = heartbeat;
+	}
+
+	/**
+	 * Registers the channel with the selector. Called by the event loop thread
+	 * @param selector the selector of the event loop
+	 */
+	void register(Selector selector) {
+		try {
+			key = channel.register(selector, SelectionKey.OP_READ, this);
+			
+			writeLock.lock();
+			try {
+				if (!writeQueue.isEmpty()) {
+					//data was queued before the registration
+					key.interestOps(readInterest() | SelectionKey.OP_WRITE);
+				}
+			} finally {
+				writeLock.unlock();
+			}
+		} catch (ClosedChannelException e) {
+			handleError(e);
+		}
+	}
+
+	/**
+	 * Sends the specified payload data via the channel
+	 * using the predefined packet encoding.
+	 *
+	 * The send operation is atomic
+	 *
+	 * @param data the payload data
+	 * @throws IOException in case of communication issues
+	 */
+	@Override
+	public void send(byte[] data) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(4);
+		header.putInt(data.length);
+		header.flip();
+		write(new ByteBuffer[] {header, ByteBuffer.wrap(data)});
+		#if ($infrastructure.metrics)
+		metricsListener.packetsSent(1, 4 + data.length);
+		#end
+	}
+
+	/**
+	 * Sends a complete packet, that already starts with the 4 byte header.
+	 *
+	 * The send operation is atomic
+	 *
+	 * @param packet the packet data (header and payload)
+	 * @throws IOException in case of communication issues
+	 */
+	@Override
+	public void sendPacket(byte[] packet) throws IOException {
+		write(new ByteBuffer[] {ByteBuffer.wrap(packet)});
+		#if ($infrastructure.metrics)
+		metricsListener.packetsSent(1, packet.length);
+		#end
+	}
+
+	/**
+	 * Sends complete packets (i.e. the fragments of a message), that already start with the 4 byte header.
+	 *
+	 * The send operation is atomic, no other packets are sent between them
+	 *
+	 * @param packets the packets data (header and payload)
+	 * @throws IOException in case of communication issues
+	 */
+	@Override
+	public void sendPackets(byte[][] packets) throws IOException {
+		ByteBuffer[] buffers = new ByteBuffer[packets.length];
+		#if ($infrastructure.metrics)
+		long bytes = 0;
+		#end
+		for (int i = 0; i < packets.length; i++) {
+			buffers[i] = ByteBuffer.wrap(packets[i]);
+			#if ($infrastructure.metrics)
+			bytes += packets[i].length;
+			#end
+		}
+		write(buffers);
+		#if ($infrastructure.metrics)
+		metricsListener.packetsSent(packets.length, bytes);
+		#end
+	}
+
+	//writes the buffers with one gathering write, or queues what cannot be written
+	private void write(ByteBuffer[] buffers) throws IOException {
+		writeLock.lock();
+		try {
+			if (closed) {
+				throw new IOException("Connection is closed");
+			}
+			lastSentNanos = System.nanoTime();
+
+			if (writeQueue.isEmpty()) {
+				//try to write directly
+				channel.write(buffers);
+				if (!buffers[buffers.length - 1].hasRemaining()) {
+					return;
+				}
+				//could not write everything, the event loop will write the rest
+				enableWriteInterest();
+			}
+
+			for (ByteBuffer buffer : buffers) {
+				if (buffer.hasRemaining()) {
+					queue(buffer);
+				}
+			}
+
+			//do not let the queue grow without limit if the client does not read
+			while (queuedBytes > maxQueuedBytes && !closed && !eventLoop.inEventLoop()) {
+				writeQueueDrained.awaitUninterruptibly();
+			}
+			if (closed) {
+				throw new IOException("Connection is closed");
+			}
+		} catch (IOException e) {
+			closeSocket();
+			throw e;
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * Writes the queued data. Called by the event loop thread when the channel is writable
+	 */
+	void handleWritable() {
+		writeLock.lock();
+		try {
+			ByteBuffer buffer;
+			while ((buffer = writeQueue.peek()) != null) {
+				int written = channel.write(buffer);
+				queuedBytes -= written;
+				if (buffer.hasRemaining()) {
+					//channel is full
+					break;
+				}
+				writeQueue.poll();
+			}
+
+			if (writeQueue.isEmpty()) {
+				key.interestOps(readInterest());
+			}
+			if (queuedBytes <= maxQueuedBytes) {
+				writeQueueDrained.signalAll();
+			}
+		} catch (IOException e) {
+			handleError(e);
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * Reads the available data and dispatches the complete packets.
+	 * Called by the event loop thread when the channel is readable
+	 */
+	void handleReadable() {
+		try {
+			int totalRead = 0;
+			while (totalRead < maxBytesPerRead && !readPaused) {
+				int read;
+				if (payloadBuffer != null && readBuffer.position() == 0 && payloadBuffer.remaining() >= readBufferSize) {
+					//large payload, read directly into it
+					read = channel.read(payloadBuffer);
+				} else {
+					read = channel.read(readBuffer);
+				}
+
+				if (read < 0) {
+					throw new IOException("Connection closed by peer");
+				} else if (read == 0) {
+					break;
+				}
+				totalRead += read;
+				lastReceivedNanos = System.nanoTime();
+
+				decodePackets();
+			}
+		} catch (IOException e) {
+			handleError(e);
+		} catch (RuntimeException e) {
+			//the data handler failed, do not let it terminate the event loop
+			handleError(new IOException("Error while handling data: "+e.getMessage(), e));
+		}
+	}
+
+	//decodes the complete packets available in the read buffer, until the reading is paused.
+	//The remaining data is kept in the read buffer, and decoded when the reading is resumed
+	private void decodePackets() throws IOException {
+		readBuffer.flip();
+		while (!readPaused) {
+			if (payloadBuffer == null) {
+				if (readBuffer.remaining() < 4) {
+					break;
+				}
+				//read payload size, checked against the maximum packet size
+				int header = readBuffer.getInt();
+				if (header == Heartbeat.header) {
+					continue;
+				}
+				int payloadSize = PacketAssembler.payloadSize(header);
+				moreFragments = PacketAssembler.hasMoreFragments(header);
+				compressed = PacketAssembler.isCompressed(header);
+
+				//fragments are kept until the message is reassembled and compressed payloads are decompressed, so they are not pooled
+				pooledPayload = (bufferDataHandler != null) && !moreFragments && !packetAssembler.isAssembling() && !compressed;
+				payloadBuffer = pooledPayload ? bufferPool.acquire(payloadSize) : ByteBuffer.allocate(payloadSize);
+			}
+
+			//copy the available payload bytes
+			int length = Math.min(readBuffer.remaining(), payloadBuffer.remaining());
+			payloadBuffer.put(readBuffer.array(), readBuffer.arrayOffset() + readBuffer.position(), length);
+			readBuffer.position(readBuffer.position() + length);
+
+			if (payloadBuffer.hasRemaining()) {
+				break;
+			}
+
+			ByteBuffer payload = payloadBuffer;
+			payloadBuffer = null;
+			#if ($infrastructure.metrics)
+			metricsListener.packetReceived(4 + payload.position());
+			#end
+			if (moreFragments) {
+				//fragment of a message
+				packetAssembler.addFragment(payload.array());
+			} else if (packetAssembler.isAssembling()) {
+				//last fragment of a message, the codecs decompress from one array
+				ByteString message = packetAssembler.complete(payload.array());
+				if (compressed) {
+					dataHandler.handleDataIndication(FrameCodecs.decode(message.toByteArray()));
+				} else {
+					dataHandler.handleDataIndication(message);
+				}
+			} else if (compressed) {
+				//compressed message
+				dataHandler.handleDataIndication(FrameCodecs.decode(payload.array()));
+			} else if (pooledPayload) {
+				//pooled buffer, given back after the dispatch
+				payload.flip();
+				try {
+					bufferDataHandler.handleDataIndication(payload);
+				} finally {
+					bufferPool.release(payload);
+				}
+			} else {
+				dataHandler.handleDataIndication(payload.array());
+			}
+		}
+		readBuffer.compact();
+	}
+
+	//queues data to be written by the event loop. Must hold the write lock
+	private void queue(ByteBuffer buffer) {
+		writeQueue.add(buffer);
+		queuedBytes += buffer.remaining();
+	}
+
+	//asks the event loop to write the queued data when the channel becomes writable
+	private void enableWriteInterest() {
+		eventLoop.execute(new Runnable() {
+			@Override
+			public void run() {
+				if (key != null && key.isValid()) {
+					key.interestOps(readInterest() | SelectionKey.OP_WRITE);
+				}
+			}
+		});
+	}
+
+	@Override
+	public void pauseReading() {
+		setReadPaused(true);
+	}
+
+	@Override
+	public void resumeReading() {
+		setReadPaused(false);
+	}
+
+	//pauses or resumes the reading, on the event loop thread
+	private void setReadPaused(final boolean paused) {
+		Runnable update = new Runnable() {
+			@Override
+			public void run() {
+				readPaused = paused;
+				lastReceivedNanos = System.nanoTime();
+				if (key != null && key.isValid()) {
+					key.interestOps(paused ? (key.interestOps() & ~SelectionKey.OP_READ) : (key.interestOps() | SelectionKey.OP_READ));
+					if (!paused) {
+						//the packets read before the reading was paused
+						decodeBufferedPackets();
+					}
+				}
+			}
+		};
+		if (paused && eventLoop.inEventLoop()) {
+			//stops the decoding of the read buffer before the next packet
+			update.run();
+		} else {
+			//resuming is never done during the dispatch of a packet, since it decodes the read buffer
+			eventLoop.execute(update);
+		}
+	}
+
+	//decodes the packets left in the read buffer when the reading was paused. Called by the event loop thread
+	private void decodeBufferedPackets() {
+		try {
+			decodePackets();
+		} catch (IOException e) {
+			handleError(e);
+		} catch (RuntimeException e) {
+			//the data handler failed, do not let it terminate the event loop
+			handleError(new IOException("Error while handling data: "+e.getMessage(), e));
+		}
+	}
+
+	//returns the read interest of the channel, none while the reading is paused. Called by the event loop thread
+	private int readInterest() {
+		return readPaused ? 0 : SelectionKey.OP_READ;
+	}
+
+	/**
+	 * The connection of this data transceiver, as checked by its Heartbeat
+	 */
+	private class HeartbeatConnection implements Heartbeat.Connection {
+		@Override
+		public long getLastReceivedNanos() {
+			return readPaused ? System.nanoTime() : lastReceivedNanos;
+		}
+
+		@Override
+		public long getLastSentNanos() {
+			return lastSentNanos;
+		}
+
+		@Override
+		public void sendHeartbeat() {
+			IOException failure = null;
+			writeLock.lock();
+			try {
+				if (closed || !writeQueue.isEmpty()) {
+					//closed, or data is already waiting to be written
+					return;
+				}
+				ByteBuffer packet = ByteBuffer.wrap(Heartbeat.getPacket());
+				channel.write(packet);
+				lastSentNanos = System.nanoTime();
+				if (packet.hasRemaining()) {
+					//the event loop will write the rest
+					queue(packet);
+					enableWriteInterest();
+				}
+			} catch (IOException e) {
+				failure = e;
+			} finally {
+				writeLock.unlock();
+			}
+
+			if (failure != null) {
+				reportError(failure);
+			}
+		}
+
+		@Override
+		public void idleTimeout(long timeoutMillis) {
+			reportError(new IOException("Nothing received for "+timeoutMillis+" ms"));
+		}
+
+		@Override
+		public boolean isClosed() {
+			return !channel.isOpen();
+		}
+
+		//closes the connection and informs the error handler, on the event loop thread
+		private void reportError(final IOException e) {
+			eventLoop.execute(new Runnable() {
+				@Override
+				public void run() {
+					handleError(e);
+				}
+			});
+		}
+	}
+
+	//closes the connection and informs the error handler
+	private void handleError(IOException e) {
+		#if ($infrastructure.logging == "log4j")
+		logger.error("Communications error. Indicating communications problem to handler and closing connection. Error info:"+e.getMessage());
+		#elseif ($infrastructure.logging == "slf4j")
+		logger.error("Communications error. Indicating communications problem to handler and closing connection. Error info: {}", e.getMessage());
+		#elseif ($infrastructure.logging == "System")
+		if (e instanceof ProtocolException) {
+			System.out.println("Error: Protocol error. Closing connection. Error info:"+e.getMessage());
+		}
+		#end
+		if (closeSocket()) {
+			errorHandler.handleCommunicationsError();
+		}
+	}
+
+	/**
+	 * Attempts to close the channel
+	 * @return true if the channel was closed by this call, false if it was already closed or an exception is thrown while trying to close it
+	 */
+	@Override
+	public boolean closeSocket() {
+		writeLock.lock();
+		try {
+			if (closed) {
+				return false;
+			}
+			closed = true;
+			writeQueue.clear();
+			queuedBytes = 0;
+			writeQueueDrained.signalAll();
+		} finally {
+			writeLock.unlock();
+		}
+
+		try {
+			channel.close();
+			return true;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+}
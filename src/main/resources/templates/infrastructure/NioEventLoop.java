@@ -0,0 +1,126 @@
+package $infrastructure.javaPackage;
+
+import java.io.IOException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+#if ($infrastructure.logging == "log4j")
+import org.apache.log4j.Logger;
+#elseif ($infrastructure.logging == "slf4j")
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+#end
+
+/**
+ * This thread serves a set of non-blocking connections (NioDataTransceiver objects)
+ * using a Selector. It reads data from the connections that have data available
+ * and writes the data that could not be written directly by the senders.
+ *
+ * All operations on the selector (registrations and interest changes) are executed
+ * by this thread. Other threads submit them as tasks via the execute method.
+ *
+ * @author Petros Pissias
+ *
+ */
+public class NioEventLoop extends Thread {
+
+	#if ($infrastructure.logging == "log4j")
+	//logger
+	private final Logger logger = Logger.getLogger(getClass());
+	#elseif ($infrastructure.logging == "slf4j")
+	//logger
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+	#end
+
+	//the selector of this event loop
+	private final Selector selector;
+
+	//tasks to be executed by this thread
+	private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+
+	/**
+	 * Constructs a new event loop
+	 * @param name the name of the thread
+	 * @throws IOException in case the selector cannot be opened
+	 */
+	public NioEventLoop(String name) throws IOException {
+		super(name);
+		selector = Selector.open();
+	}
+
+	/**
+	 * Executes the provided task on this event loop thread
+	 * @param task the task
+	 */
+	public void execute(Runnable task) {
+		tasks.add(task);
+		selector.wakeup();
+	}
+
+	/**
+	 * Checks if the calling thread is this event loop thread
+	 * @return true if the calling thread is this event loop thread
+	 */
+	public boolean inEventLoop() {
+		return Thread.currentThread() == this;
+	}
+
+	/**
+	 * Registers the provided data transceiver with this event loop,
+	 * it will be notified when data can be read from its channel
+	 * @param dataTransceiver the data transceiver
+	 */
+	public void register(final NioDataTransceiver dataTransceiver) {
+		execute(new Runnable() {
+			@Override
+			public void run() {
+				dataTransceiver.register(selector);
+			}
+		});
+	}
+
+	@Override
+	public void run() {
+		while (true) {
+			try {
+				selector.select();
+
+				//run pending tasks
+				Runnable task;
+				while ((task = tasks.poll()) != null) {
+					task.run();
+				}
+
+				//serve the connections that are ready
+				Iterator<SelectionKey> selectedKeys = selector.selectedKeys().iterator();
+				while (selectedKeys.hasNext()) {
+					SelectionKey key = selectedKeys.next();
+					selectedKeys.remove();
+
+					NioDataTransceiver dataTransceiver = (NioDataTransceiver)key.attachment();
+					if (key.isValid() && key.isWritable()) {
+						dataTransceiver.handleWritable();
+					}
+					if (key.isValid() && key.isReadable()) {
+						dataTransceiver.handleReadable();
+					}
+				}
+			} catch (ClosedSelectorException e) {
+				return;
+			} catch (IOException e) {
+				#if ($infrastructure.logging == "log4j")
+				logger.error("Selector error. Terminating event loop. Error info:"+e.getMessage());
+				#elseif ($infrastructure.logging == "slf4j")
+				logger.error("Selector error. Terminating event loop. Error info: {}", e.getMessage());
+				#elseif ($infrastructure.logging == "System")
+				System.out.println("Error: Selector error. Terminating event loop. Error info:"+e.getMessage());
+				#end
+				return;
+			}
+		}
+	}
+}
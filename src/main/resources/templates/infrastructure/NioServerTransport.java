@@ -0,0 +1,114 @@
+package $infrastructure.javaPackage;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+#if ($infrastructure.logging == "log4j")
+import org.apache.log4j.Logger;
+#elseif ($infrastructure.logging == "slf4j")
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+#end
+
+/**
+ * Non-blocking server transport.
+ *
+ * It accepts connections on a ServerSocketChannel and distributes them 
+ * (round robin) to a small number of NioEventLoop threads, each one serving
+ * its connections with a Selector. This way the number of threads does not
+ * depend on the number of connected clients.
+ *
+ * Received packets are handled on the event loop threads. Requests that take long
+ * to handle should therefore run on a dispatch pool, so that they do not delay the
+ * other connections of the same event loop.
+ *
+ * @author Petros Pissias
+ *
+ */
+public class NioServerTransport {
+
+	#if ($infrastructure.logging == "log4j")
+	//logger
+	private final Logger logger = Logger.getLogger(getClass());
+	#elseif ($infrastructure.logging == "slf4j")
+	//logger
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+	#end
+
+	//the server channel
+	private final ServerSocketChannel serverChannel;
+
+	//the event loops
+	private final NioEventLoop[] eventLoops;
+
+	//the listener informed about new connections
+	private final ConnectionListener connectionListener;
+
+	//the event loop that will get the next connection
+	private int nextEventLoop = 0;
+
+	/**
+	 * Constructs a new transport listening on the provided port
+	 * @param name the name of the transport, used for naming the event loop threads
+	 * @param port the port to listen on
+	 * @param eventLoopCount the number of event loop threads. If not positive, the number of available processors is used
+	 * @param connectionListener the listener informed about new connections
+	 * @throws IOException in case the port cannot be bound
+	 */
+	public NioServerTransport(String name, int port, int eventLoopCount, ConnectionListener connectionListener) throws IOException {
+		this.connectionListener = connectionListener;
+
+		if (eventLoopCount <= 0) {
+			eventLoopCount = Runtime.getRuntime().availableProcessors();
+		}
+
+		serverChannel = ServerSocketChannel.open();
+		serverChannel.socket().bind(new InetSocketAddress(port));
+
+		eventLoops = new NioEventLoop[eventLoopCount];
+		for (int i = 0; i < eventLoopCount; i++) {
+			eventLoops[i] = new NioEventLoop(name+"-"+NioEventLoop.class.getSimpleName()+"-"+(i+1));
+			eventLoops[i].start();
+		}
+	}
+
+	/**
+	 * Accepts connections until the server channel is closed or fails.
+	 * Blocks the calling thread.
+	 * @throws IOException in case of a problem with the server channel
+	 */
+	public void acceptConnections() throws IOException {
+		while (true) {
+			#if ($infrastructure.logging == "log4j")
+			logger.info("Waiting for connection...");
+			#elseif ($infrastructure.logging == "slf4j")
+			logger.info("Waiting for connection...");
+			#end
+			SocketChannel incomingConnection = serverChannel.accept();
+
+			#if ($infrastructure.logging == "log4j")
+			logger.info("incoming connection arrived");
+			#elseif ($infrastructure.logging == "slf4j")
+			logger.info("incoming connection arrived");
+			#end
+
+			try {
+				NioDataTransceiver dataTransceiver = new NioDataTransceiver(incomingConnection, eventLoops[nextEventLoop]);
+				nextEventLoop = (nextEventLoop + 1) % eventLoops.length;
+
+				connectionListener.connectionAccepted(dataTransceiver);
+			} catch (IOException ioex) {
+				#if ($infrastructure.logging == "log4j")
+				logger.error("Problem with client connection originating from:"+incomingConnection.socket().getInetAddress());
+				#elseif ($infrastructure.logging == "slf4j")
+				logger.error("Problem with client connection originating from: {}", incomingConnection.socket().getInetAddress());
+				#elseif ($infrastructure.logging == "System")
+				System.out.println("Error: Problem with client connection originating from:"+incomingConnection.socket().getInetAddress());
+				#end
+				incomingConnection.close();
+			}
+		}
+	}
+}
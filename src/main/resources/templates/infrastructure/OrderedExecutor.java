@@ -0,0 +1,82 @@
+package $infrastructure.javaPackage;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Executor that runs its tasks one at a time, in the order they were submitted,
+ * on top of another (shared) executor.
+ * 
+ * It is used on the server side in order to preserve the order of the requests
+ * of a connection while still running them on a shared dispatch pool. 
+ * Tasks of different OrderedExecutor instances run in parallel.
+ * 
+ * In order not to monopolize a thread of the shared executor, the tasks
+ * are run in batches. After each batch the remaining tasks are resubmitted.
+ * 
+ * @author Petros Pissias
+ *
+ */
+public class OrderedExecutor implements Executor {
+
+	//maximum number of tasks run before giving the thread back to the shared executor
+	private static final int maxBatchSize = 64;
+	
+	//the shared executor
+	private final Executor executor;
+	
+	//the tasks waiting to be run
+	private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+	
+	//true when a batch is submitted to, or running on the shared executor
+	private final AtomicBoolean scheduled = new AtomicBoolean(false);
+	
+	//runs a batch of tasks
+	private final Runnable batchRunner = new Runnable() {
+		@Override
+		public void run() {
+			try {
+				Runnable task;
+				int count = 0;
+				while (count < maxBatchSize && (task = tasks.poll()) != null) {
+					count++;
+					task.run();
+				}
+			} finally {
+				scheduled.set(false);
+				if (!tasks.isEmpty()) {
+					schedule();
+				}
+			}
+		}
+	};
+	
+	/**
+	 * Constructs a new OrderedExecutor
+	 * @param executor the shared executor running the tasks
+	 */
+	public OrderedExecutor(Executor executor) {
+		this.executor = executor;
+	}
+	
+	@Override
+	public void execute(Runnable task) {
+		tasks.add(task);
+		schedule();
+	}
+	
+	//submits a batch to the shared executor, if there is none already
+	private void schedule() {
+		if (scheduled.compareAndSet(false, true)) {
+			try {
+				executor.execute(batchRunner);
+			} catch (RejectedExecutionException e) {
+				scheduled.set(false);
+				throw e;
+			}
+		}
+	}
+}
@@ -0,0 +1,308 @@
+package $infrastructure.javaPackage;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+#if ($infrastructure.logging == "log4j")
+import org.apache.log4j.Logger;
+#elseif ($infrastructure.logging == "slf4j")
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+#end
+
+/**
+ * A bounded queue of outgoing messages, sent by a dedicated writer thread.
+ *
+ * The caller only encodes its message and adds it to the queue, it does not wait
+ * for it to be written. The writer thread takes all queued messages (up to a batch size)
+ * and sends them with one send operation, so that they are written with one flush.
+ *
+ * Instead of a dedicated thread, the queue can be written by a shared executor. A batch
+ * is then submitted to the executor only when there are queued messages, one batch at a time.
+ *
+ * When the queue is full, the OverflowPolicy of the queue applies: the caller waits,
+ * the new or the oldest message is discarded, the caller gets a RemoteCommunicationsException,
+ * or the receiver is considered too slow and is disconnected by the overflow handler.
+ *
+ * Messages are not acknowledged. If a batch cannot be sent, its messages are lost
+ * (counted with the dropped messages) and the next batch is sent normally.
+ *
+ * @author Petros Pissias
+ *
+ */
+public class OutboundQueue {
+
+	//maximum number of messages sent with one send operation
+	private static final int maxBatchSize = 256;
+
+	#if ($infrastructure.logging == "log4j")
+	//logger
+	private final Logger logger = Logger.getLogger(getClass());
+	#elseif ($infrastructure.logging == "slf4j")
+	//logger
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+	#end
+
+	//the name of the queue, used for its writer thread and errors
+	private final String name;
+
+	//the queued messages, each one is a set of packets
+	private final ArrayBlockingQueue<byte[][]> queue;
+
+	//what happens when the queue is full
+	private final OverflowPolicy overflowPolicy;
+
+	//where the messages are sent to
+	private final PacketSender packetSender;
+
+	//informed when the queue overflows with the DISCONNECT policy, may be null
+	private final ErrorHandler overflowHandler;
+
+	//the writer thread, null if the queue is written by a shared executor
+	private final Thread writerThread;
+
+	//the shared executor writing the queue, null if the queue has its own writer thread
+	private final Executor writer;
+
+	//true when a batch is submitted to, or being written by the shared executor
+	private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+	//writes a batch of queued messages on the shared executor
+	private final Runnable batchWriter = new Runnable() {
+		@Override
+		public void run() {
+			try {
+				List<byte[][]> batch = new ArrayList<byte[][]>(maxBatchSize);
+				queue.drainTo(batch, maxBatchSize);
+				if (!batch.isEmpty()) {
+					writeBatch(batch);
+				}
+			} finally {
+				scheduled.set(false);
+				if (!queue.isEmpty() && !closed) {
+					scheduleWrite();
+				}
+			}
+		}
+	};
+
+	//number of messages discarded because the queue was full, or because they could not be sent
+	private final AtomicLong droppedCount = new AtomicLong(0);
+
+	//number of messages sent
+	private final AtomicLong sentCount = new AtomicLong(0);
+
+	//true when the queue no longer accepts messages
+	private volatile boolean closed = false;
+
+	/**
+	 * Constructs a new queue and starts its writer thread
+	 * @param name the name of the queue
+	 * @param capacity the maximum number of queued messages
+	 * @param overflowPolicy what happens when the queue is full
+	 * @param packetSender where the messages are sent to
+	 */
+	public OutboundQueue(String name, int capacity, OverflowPolicy overflowPolicy, PacketSender packetSender) {
+		this(name, capacity, overflowPolicy, packetSender, null);
+	}
+
+	/**
+	 * Constructs a new queue and starts its writer thread
+	 * @param name the name of the queue
+	 * @param capacity the maximum number of queued messages
+	 * @param overflowPolicy what happens when the queue is full
+	 * @param packetSender where the messages are sent to
+	 * @param overflowHandler informed when the queue overflows with the DISCONNECT policy, null if none
+	 */
+	public OutboundQueue(String name, int capacity, OverflowPolicy overflowPolicy, PacketSender packetSender, ErrorHandler overflowHandler) {
+		this(name, capacity, overflowPolicy, packetSender, overflowHandler, null);
+	}
+
+	/**
+	 * Constructs a new queue
+	 * @param name the name of the queue
+	 * @param capacity the maximum number of queued messages
+	 * @param overflowPolicy what happens when the queue is full
+	 * @param packetSender where the messages are sent to
+	 * @param overflowHandler informed when the queue overflows with the DISCONNECT policy, null if none
+	 * @param writer the shared executor writing the queue, null to start a writer thread for this queue
+	 */
+	public OutboundQueue(String name, int capacity, OverflowPolicy overflowPolicy, PacketSender packetSender, ErrorHandler overflowHandler, Executor writer) {
+		this.name = name;
+		this.queue = new ArrayBlockingQueue<byte[][]>(capacity);
+		this.overflowPolicy = overflowPolicy;
+		this.packetSender = packetSender;
+		this.overflowHandler = overflowHandler;
+		this.writer = writer;
+
+		if (writer != null) {
+			writerThread = null;
+			return;
+		}
+		writerThread = new NamedThreadFactory(name+"-writer").newThread(new Runnable() {
+			@Override
+			public void run() {
+				writeMessages();
+			}
+		});
+		writerThread.start();
+	}
+
+	/**
+	 * Adds a message to the queue
+	 * @param packets the packets of the message
+	 * @return true if the message was queued, false if it was discarded
+	 * @throws RemoteCommunicationsException if the queue is full and its policy is FAIL or DISCONNECT, or if the queue is closed
+	 */
+	public boolean add(byte[][] packets) throws RemoteCommunicationsException {
+		boolean queued = enqueue(packets);
+		if (queued && writer != null) {
+			scheduleWrite();
+		}
+		return queued;
+	}
+
+	//adds a message to the queue, applying the overflow policy
+	private boolean enqueue(byte[][] packets) throws RemoteCommunicationsException {
+		if (closed) {
+			throw new RemoteCommunicationsException(RemoteCommunicationsErrorType.DISCONNECTED, "Outbound queue "+name+" is closed");
+		}
+
+		switch (overflowPolicy) {
+			case BLOCK : {
+				try {
+					queue.put(packets);
+					return true;
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new RemoteCommunicationsException(RemoteCommunicationsErrorType.DISCONNECTED, "Interrupted while waiting for space in outbound queue "+name);
+				}
+			}
+			case DROP : {
+				if (!queue.offer(packets)) {
+					droppedCount.incrementAndGet();
+					return false;
+				}
+				return true;
+			}
+			case DROP_OLDEST : {
+				while (!queue.offer(packets)) {
+					if (queue.poll() != null) {
+						droppedCount.incrementAndGet();
+					}
+				}
+				return true;
+			}
+			case DISCONNECT : {
+				if (!queue.offer(packets)) {
+					//the receiver does not keep up, discard what is queued for it
+					int discarded = queue.size();
+					queue.clear();
+					droppedCount.addAndGet(discarded + 1);
+					if (overflowHandler != null) {
+						overflowHandler.handleCommunicationsError();
+					}
+					throw new RemoteCommunicationsException(RemoteCommunicationsErrorType.DISCONNECTED, "Outbound queue "+name+" is full. Disconnecting");
+				}
+				return true;
+			}
+			default : {
+				if (!queue.offer(packets)) {
+					throw new RemoteCommunicationsException(RemoteCommunicationsErrorType.QUEUE_FULL, "Outbound queue "+name+" is full");
+				}
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of messages discarded because the queue was full, or because they could not be sent
+	 * @return the number of dropped messages
+	 */
+	public long getDroppedCount() {
+		return droppedCount.get();
+	}
+
+	/**
+	 * Returns the number of messages sent
+	 * @return the number of sent messages
+	 */
+	public long getSentCount() {
+		return sentCount.get();
+	}
+
+	/**
+	 * Returns the number of queued messages
+	 * @return the number of queued messages
+	 */
+	public int size() {
+		return queue.size();
+	}
+
+	/**
+	 * Closes the queue. Queued messages are discarded and the writer thread terminates
+	 */
+	public void close() {
+		closed = true;
+		queue.clear();
+		if (writerThread != null) {
+			writerThread.interrupt();
+		}
+	}
+
+	//submits a batch to the shared executor, if there is none already
+	private void scheduleWrite() {
+		if (scheduled.compareAndSet(false, true)) {
+			writer.execute(batchWriter);
+		}
+	}
+
+	//run by the writer thread, sends the queued messages in batches
+	private void writeMessages() {
+		List<byte[][]> batch = new ArrayList<byte[][]>(maxBatchSize);
+		while (!closed) {
+			try {
+				batch.add(queue.take());
+			} catch (InterruptedException e) {
+				//closed
+				continue;
+			}
+			queue.drainTo(batch, maxBatchSize - 1);
+			writeBatch(batch);
+			batch.clear();
+		}
+	}
+
+	//sends all packets of the batch with one send operation
+	private void writeBatch(List<byte[][]> batch) {
+		int packetCount = 0;
+		for (byte[][] packets : batch) {
+			packetCount += packets.length;
+		}
+		byte[][] batchPackets = new byte[packetCount][];
+		int position = 0;
+		for (byte[][] packets : batch) {
+			System.arraycopy(packets, 0, batchPackets, position, packets.length);
+			position += packets.length;
+		}
+
+		try {
+			packetSender.sendPackets(batchPackets);
+			sentCount.addAndGet(batch.size());
+		} catch (IOException e) {
+			droppedCount.addAndGet(batch.size());
+			#if ($infrastructure.logging == "log4j")
+			logger.error("Cannot send "+batch.size()+" messages of outbound queue "+name+". Error info:"+e.getMessage());
+			#elseif ($infrastructure.logging == "slf4j")
+			logger.error("Cannot send {} messages of outbound queue {}. Error info: {}", batch.size(), name, e.getMessage());
+			#elseif ($infrastructure.logging == "System")
+			System.out.println("Error: Cannot send "+batch.size()+" messages of outbound queue "+name+". Error info:"+e.getMessage());
+			#end
+		}
+	}
+}
@@ -0,0 +1,22 @@
+package $infrastructure.javaPackage;
+
+/**
+ * Enumeration indicating what happens when a message
+ * is added to a full OutboundQueue
+ * 
+ * @author Petros Pissias
+ *
+ */
+public enum OverflowPolicy {
+	//the caller waits until there is space in the queue
+	BLOCK,
+	//the new message is discarded
+	DROP,
+	//the oldest queued message is discarded to make space for the new one
+	DROP_OLDEST,
+	//the caller gets a RemoteCommunicationsException
+	FAIL,
+	//the queued messages and the new one are discarded, the overflow handler of the queue
+	//is informed (i.e. to close the connection) and the caller gets a RemoteCommunicationsException
+	DISCONNECT
+}
@@ -0,0 +1,133 @@
+package $infrastructure.javaPackage;
+
+import java.net.ProtocolException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.UnsafeByteOperations;
+
+/**
+ * This class checks the headers of the received packets and
+ * reassembles the messages that are sent in fragments.
+ *
+ * The most significant bit of the 4 byte packet header is set on all fragments
+ * of a message except the last one. The next bit is set on all packets of a message
+ * with a compressed payload (see FrameCodecs). The rest of the header is the size of the payload :
+ *
+ * [1 bit more fragments flag + 1 bit compressed flag + 30 bit payload size][payload]
+ *
+ * Messages sent in one packet have the flag cleared, so the encoding is the same as
+ * without fragments. The fragments of a message are sent one after the other,
+ * without other packets between them. A header with both flags set and an empty
+ * payload is a heartbeat (see Heartbeat), and is discarded before it reaches the
+ * PacketAssembler.
+ *
+ * Packets larger than the maximum packet size and reassembled messages larger than the
+ * maximum message size are rejected, so that a corrupt or hostile header cannot make the
+ * receiver allocate an arbitrary amount of memory. A fragmented message only uses
+ * memory as its fragments arrive, and the reassembled message refers to the fragments
+ * instead of copying them into one array.
+ *
+ * Each connection has its own PacketAssembler, used by the thread reading the connection.
+ *
+ * @author Petros Pissias
+ *
+ */
+public class PacketAssembler {
+
+	//the flag of the packet header indicating that more fragments follow
+	public static final int moreFragmentsFlag = 0x80000000;
+
+	//the flag of the packet header indicating that the payload of the message is compressed
+	public static final int compressedFlag = 0x40000000;
+
+	//the largest packet payload accepted
+	public static final int maxPacketSize = ${infrastructure.maxPacketSize};
+
+	//the largest message accepted, after reassembly
+	public static final int maxMessageSize = ${infrastructure.maxMessageSize};
+
+	//the fragments received so far
+	private final List<ByteString> fragments = new ArrayList<ByteString>();
+
+	//the size of the fragments received so far
+	private long fragmentsSize = 0;
+
+	/**
+	 * Returns the payload size of a packet header
+	 * @param header the packet header
+	 * @return the payload size
+	 * @throws ProtocolException if the payload size exceeds the maximum packet size
+	 */
+	public static int payloadSize(int header) throws ProtocolException {
+		int payloadSize = header & ~(moreFragmentsFlag | compressedFlag);
+		if (payloadSize > maxPacketSize) {
+			throw new ProtocolException("Received packet of "+payloadSize+" bytes, larger than the maximum packet size of "+maxPacketSize+" bytes");
+		}
+		return payloadSize;
+	}
+
+	/**
+	 * Checks if a packet header indicates a fragment that is followed by more fragments
+	 * @param header the packet header
+	 * @return true if more fragments follow
+	 */
+	public static boolean hasMoreFragments(int header) {
+		return (header & moreFragmentsFlag) != 0;
+	}
+
+	/**
+	 * Checks if a packet header indicates a message with a compressed payload
+	 * @param header the packet header
+	 * @return true if the payload is compressed
+	 */
+	public static boolean isCompressed(int header) {
+		return (header & compressedFlag) != 0;
+	}
+
+	/**
+	 * Checks if the fragments of a message are being received, i.e. if
+	 * the next packet is a fragment of the same message
+	 * @return true if a message is being reassembled
+	 */
+	public boolean isAssembling() {
+		return !fragments.isEmpty();
+	}
+
+	/**
+	 * Adds a fragment of a message, that is followed by more fragments.
+	 * The fragment is kept as it is, so it must not be modified afterwards
+	 * @param fragment the payload of the fragment
+	 * @throws ProtocolException if the message exceeds the maximum message size
+	 */
+	public void addFragment(byte[] fragment) throws ProtocolException {
+		checkMessageSize(fragment.length);
+		fragments.add(UnsafeByteOperations.unsafeWrap(fragment));
+		fragmentsSize += fragment.length;
+	}
+
+	/**
+	 * Adds the last fragment of a message and returns the reassembled message.
+	 * The message is a concatenation of the fragments, they are not copied
+	 * @param lastFragment the payload of the last fragment
+	 * @return the message
+	 * @throws ProtocolException if the message exceeds the maximum message size
+	 */
+	public ByteString complete(byte[] lastFragment) throws ProtocolException {
+		checkMessageSize(lastFragment.length);
+		fragments.add(UnsafeByteOperations.unsafeWrap(lastFragment));
+
+		ByteString message = ByteString.copyFrom(fragments);
+		fragments.clear();
+		fragmentsSize = 0;
+		return message;
+	}
+
+	//checks that the message does not exceed the maximum message size if the provided fragment is added
+	private void checkMessageSize(int fragmentSize) throws ProtocolException {
+		if (fragmentsSize + fragmentSize > maxMessageSize) {
+			throw new ProtocolException("Received fragmented message of more than "+maxMessageSize+" bytes, larger than the maximum message size");
+		}
+	}
+}
@@ -0,0 +1,21 @@
+package $infrastructure.javaPackage;
+
+import java.io.IOException;
+
+/**
+ * Interface of the objects that an OutboundQueue
+ * sends its queued packets to, and that streams send their messages to.
+ * Every DataTransceiver is a PacketSender.
+ * 
+ * @author Petros Pissias
+ *
+ */
+public interface PacketSender {
+	/**
+	 * Sends complete packets, that already start with the 4 byte header.
+	 * The send operation is atomic
+	 * @param packets the packets data (header and payload)
+	 * @throws IOException in case of communication issues 
+	 */
+	public abstract void sendPackets(byte[][] packets) throws IOException;
+}
@@ -0,0 +1,60 @@
+package $infrastructure.javaPackage;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The delays between the attempts to reconnect a lost connection to the server.
+ *
+ * The delay doubles after each failed attempt, from the initial delay up to the maximum
+ * delay. Each delay is a random value between half and all of it (jitter), so that the
+ * clients that lost their connections at the same time, i.e. because the server was
+ * restarted, do not reconnect all at the same time.
+ *
+ * @author Petros Pissias
+ *
+ */
+public final class ReconnectBackoff {
+
+	//the delay (in milliseconds) before the first attempt
+	private final long initialDelayMillis;
+
+	//the maximum delay (in milliseconds) between two attempts
+	private final long maxDelayMillis;
+
+	/**
+	 * Constructs a new ReconnectBackoff
+	 * @param initialDelayMillis the delay (in milliseconds) before the first attempt
+	 * @param maxDelayMillis the maximum delay (in milliseconds) between two attempts
+	 */
+	public ReconnectBackoff(long initialDelayMillis, long maxDelayMillis) {
+		if (initialDelayMillis <= 0 || maxDelayMillis < initialDelayMillis) {
+			throw new IllegalArgumentException("Invalid reconnect delays: "+initialDelayMillis+", "+maxDelayMillis);
+		}
+		this.initialDelayMillis = initialDelayMillis;
+		this.maxDelayMillis = maxDelayMillis;
+	}
+
+	/**
+	 * Returns the delay before an attempt
+	 * @param attempt the number of the attempt, 0 for the first one
+	 * @return the delay, in milliseconds
+	 */
+	public long getDelayMillis(int attempt) {
+		//double the delay for each failed attempt, without overflowing
+		long delay = maxDelayMillis;
+		if (attempt < 62 && initialDelayMillis <= (maxDelayMillis >> attempt)) {
+			delay = initialDelayMillis << attempt;
+		}
+
+		long half = delay / 2;
+		return half + ThreadLocalRandom.current().nextLong(delay - half + 1);
+	}
+
+	public long getInitialDelayMillis() {
+		return initialDelayMillis;
+	}
+
+	public long getMaxDelayMillis() {
+		return maxDelayMillis;
+	}
+}
@@ -9,5 +9,11 @@ package $infrastructure.javaPackage;
 public enum RemoteCommunicationsErrorType {
 	CANNOT_CONNECT,
 	DISCONNECTED,
-	TIMEOUT
+	TIMEOUT,
+	QUEUE_FULL,
+	CANCELLED,
+	STREAM_FAILED,
+	REQUEST_FAILED,
+	OVERLOADED,
+	MESSAGE_TOO_LARGE
 }
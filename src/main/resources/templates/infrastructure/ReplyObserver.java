@@ -0,0 +1,135 @@
+package $infrastructure.javaPackage;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.google.protobuf.MessageLite;
+
+/**
+ * The server side of the reply to a call with a stream of requests.
+ *
+ * The service provides the reply with the onNext method and sends it with the onCompleted method,
+ * or fails the call with the onError method which reports the reason to the client. Once the reply
+ * is sent, the requests that have not been received yet are discarded and the observer of
+ * the requests receives a RemoteCommunicationsException with the CANCELLED error type.
+ *
+ * @author Petros Pissias
+ *
+ * @param <ResponseType> the type of the reply
+ */
+public class ReplyObserver<ResponseType extends MessageLite> implements StreamObserver<ResponseType> {
+
+	//the data transceiver of the connection to the client
+	private final DataTransceiver dataTransceiver;
+
+	//the correlation id of the call
+	private final long streamId;
+
+	//the MessageContainer message type of the reply
+	private final int responseMessageType;
+
+	//the compression of the reply, null if it is not compressed
+	private final FrameCompression compression;
+
+	//the open request streams of the connection, the request stream of this call is removed when the reply is sent
+	private final ConcurrentMap<Long, ? extends StreamReceiver<?>> openRequestStreams;
+
+	//the reply provided with the onNext method
+	private volatile ResponseType reply = null;
+
+	//true when the reply (or the failure) has been sent
+	private final AtomicBoolean replied = new AtomicBoolean(false);
+
+	/**
+	 * Constructs a new reply observer. Called by the generated code
+	 * @param dataTransceiver the data transceiver of the connection to the client
+	 * @param streamId the correlation id of the call
+	 * @param responseMessageType the MessageContainer message type of the reply
+	 * @param compression the compression of the reply, or null
+	 * @param openRequestStreams the open request streams of the connection
+	 */
+	public ReplyObserver(DataTransceiver dataTransceiver, long streamId, int responseMessageType, FrameCompression compression, ConcurrentMap<Long, ? extends StreamReceiver<?>> openRequestStreams) {
+		this.dataTransceiver = dataTransceiver;
+		this.streamId = streamId;
+		this.responseMessageType = responseMessageType;
+		this.compression = compression;
+		this.openRequestStreams = openRequestStreams;
+	}
+
+	/**
+	 * Provides the reply, which is sent by the onCompleted method
+	 * @param message the reply
+	 * @throws IllegalStateException if a reply was already provided
+	 */
+	@Override
+	public void onNext(ResponseType message) {
+		if (reply != null || replied.get()) {
+			throw new IllegalStateException("A reply has already been provided");
+		}
+		reply = message;
+	}
+
+	/**
+	 * Fails the call. Has no effect if the call has already ended
+	 * @param error the failure, its message is reported to the client
+	 */
+	@Override
+	public void onError(RemoteCommunicationsException error) {
+		String reason = error.getMessage();
+		end(EnvelopeCodec.encodeStreamControl(responseMessageType, streamId, 0, (reason == null || reason.isEmpty()) ? "Call failed" : reason));
+	}
+
+	/**
+	 * Sends the reply. Fails the call if no reply was provided. Has no effect if the call has already ended
+	 */
+	@Override
+	public void onCompleted() {
+		ResponseType completedReply = reply;
+		if (completedReply == null) {
+			end(EnvelopeCodec.encodeStreamControl(responseMessageType, streamId, 0, "The service completed the call without a reply"));
+			return;
+		}
+		try {
+			if (compression == null) {
+				end(EnvelopeCodec.encodePackets(responseMessageType, streamId, completedReply));
+			} else {
+				end(EnvelopeCodec.encodePackets(responseMessageType, streamId, completedReply, compression));
+			}
+		} catch (MessageTooLargeException e) {
+			//the client would reject the reply, fail the call instead
+			end(EnvelopeCodec.encodeStreamControl(responseMessageType, streamId, 0, e.getMessage()));
+		}
+	}
+
+	/**
+	 * Checks if the reply (or the failure) has been sent
+	 * @return true if the call has ended
+	 */
+	public boolean isCompleted() {
+		return replied.get();
+	}
+
+	//ends the call with a failure
+	private void end(byte[] packet) {
+		end(new byte[][] {packet});
+	}
+
+	//ends the call, sending the reply or the failure
+	private void end(byte[][] packets) {
+		if (!replied.compareAndSet(false, true)) {
+			return;
+		}
+
+		StreamReceiver<?> requests = openRequestStreams.remove(streamId);
+		if (requests != null) {
+			requests.end(new RemoteCommunicationsException(RemoteCommunicationsErrorType.CANCELLED, "The call has ended"));
+		}
+
+		try {
+			dataTransceiver.sendPackets(packets);
+		} catch (IOException e) {
+			//the connection is lost, the client fails the call
+		}
+	}
+}
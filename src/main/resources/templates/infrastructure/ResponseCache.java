@@ -0,0 +1,246 @@
+package $infrastructure.javaPackage;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+
+import com.google.protobuf.ByteString;
+
+/**
+ * A bounded cache of the replies of a service, used on the client side in order to
+ * answer repeated identical requests without a round trip to the server.
+ *
+ * The replies are keyed by the serialized request, so two requests are the same if they
+ * have the same bytes. A reply is kept for a time to live (TTL) after it was received,
+ * and the cache keeps at most a maximum number of replies: when it is full, the least
+ * recently used reply is evicted.
+ *
+ * The cache is split in segments, each one a LinkedHashMap in access order guarded by
+ * its own lock, so that the threads looking up different requests rarely wait for each
+ * other. The least recently used reply is evicted per segment, so the order of eviction
+ * is an approximation of the order of use over the whole cache. Expired replies are
+ * removed when they are looked up, or evicted as the least recently used.
+ *
+ * @author Petros Pissias
+ *
+ * @param <ResponseType> the type of the replies
+ */
+public final class ResponseCache<ResponseType> {
+
+	//the maximum number of segments, and the minimum number of replies per segment
+	private static final int maxSegments = 16;
+	private static final int minSegmentSize = 16;
+
+	//the segments, a request is cached in the segment of the hash of its bytes
+	private final Segment<ResponseType>[] segments;
+
+	//the time (in nanoseconds) a reply is kept
+	private final long ttlNanos;
+
+	//the look ups that found a reply, and the ones that did not
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+
+	/**
+	 * Constructs a new ResponseCache
+	 * @param ttlMillis the time (in milliseconds) a reply is kept after it is received
+	 * @param maxSize the maximum number of replies kept
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public ResponseCache(long ttlMillis, int maxSize) {
+		if (ttlMillis <= 0 || maxSize <= 0) {
+			throw new IllegalArgumentException("Invalid cache TTL and size: "+ttlMillis+", "+maxSize);
+		}
+		this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+
+		int segmentCount = Math.max(1, Math.min(maxSegments, maxSize / minSegmentSize));
+		this.segments = new Segment[segmentCount];
+		for (int i = 0; i < segmentCount; i++) {
+			//the sizes of the segments add up to the maximum size
+			segments[i] = new Segment<ResponseType>(maxSize / segmentCount + ((i < maxSize % segmentCount) ? 1 : 0));
+		}
+	}
+
+	/**
+	 * Returns the cached reply to a request
+	 * @param request the serialized request
+	 * @return the reply, or null if there is no reply or it expired
+	 */
+	public ResponseType get(ByteString request) {
+		ResponseType reply = segmentOf(request).get(request, System.nanoTime());
+		if (reply != null) {
+			hits.increment();
+		} else {
+			misses.increment();
+		}
+		return reply;
+	}
+
+	/**
+	 * Caches the reply to a request, replacing the previous one if any
+	 * @param request the serialized request
+	 * @param reply the reply
+	 */
+	public void put(ByteString request, ResponseType reply) {
+		segmentOf(request).put(request, reply, System.nanoTime() + ttlNanos);
+	}
+
+	/**
+	 * Caches the reply to a request when it is received
+	 * @param request the serialized request
+	 * @param reply the future of the reply. Failed replies are not cached
+	 * @return the same future
+	 */
+	public CompletableFuture<ResponseType> putWhenReceived(final ByteString request, CompletableFuture<ResponseType> reply) {
+		reply.whenComplete(new BiConsumer<ResponseType, Throwable>() {
+			@Override
+			public void accept(ResponseType response, Throwable failure) {
+				if (failure == null && response != null) {
+					put(request, response);
+				}
+			}
+		});
+		return reply;
+	}
+
+	/**
+	 * Removes the cached reply to a request, i.e. because the data it was taken from changed
+	 * @param request the serialized request
+	 */
+	public void invalidate(ByteString request) {
+		segmentOf(request).remove(request);
+	}
+
+	/**
+	 * Removes all cached replies
+	 */
+	public void clear() {
+		for (Segment<ResponseType> segment : segments) {
+			segment.clear();
+		}
+	}
+
+	/**
+	 * Returns the number of cached replies, including the expired ones that were not removed yet
+	 * @return the number of replies
+	 */
+	public int size() {
+		int size = 0;
+		for (Segment<ResponseType> segment : segments) {
+			size += segment.size();
+		}
+		return size;
+	}
+
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+	public long getMissCount() {
+		return misses.sum();
+	}
+
+	//returns the segment of a request
+	private Segment<ResponseType> segmentOf(ByteString request) {
+		int hash = request.hashCode();
+		//spread the bits of the hash, so that similar requests use different segments
+		hash ^= (hash >>> 16);
+		return segments[(hash & Integer.MAX_VALUE) % segments.length];
+	}
+
+	@Override
+	public String toString() {
+		return "ResponseCache [size="+size()+", hits="+getHitCount()+", misses="+getMissCount()+"]";
+	}
+
+	/**
+	 * A cached reply and the time it expires
+	 */
+	private static final class Entry<ResponseType> {
+		private final ResponseType reply;
+		private final long expiresNanos;
+
+		private Entry(ResponseType reply, long expiresNanos) {
+			this.reply = reply;
+			this.expiresNanos = expiresNanos;
+		}
+	}
+
+	/**
+	 * A part of the cache, with its own lock. A lock is used instead of synchronized methods
+	 * so that a virtual thread looking up a reply is not pinned to its carrier
+	 */
+	private static final class Segment<ResponseType> {
+		private final ReentrantLock lock = new ReentrantLock();
+		private final LinkedHashMap<ByteString, Entry<ResponseType>> entries;
+
+		private Segment(final int maxSize) {
+			//access order, the eldest entry is the least recently used one
+			this.entries = new LinkedHashMap<ByteString, Entry<ResponseType>>(16, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<ByteString, Entry<ResponseType>> eldest) {
+					return size() > maxSize;
+				}
+			};
+		}
+
+		private ResponseType get(ByteString request, long now) {
+			lock.lock();
+			try {
+				Entry<ResponseType> entry = entries.get(request);
+				if (entry == null) {
+					return null;
+				}
+				if (now - entry.expiresNanos >= 0) {
+					entries.remove(request);
+					return null;
+				}
+				return entry.reply;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		private void put(ByteString request, ResponseType reply, long expiresNanos) {
+			lock.lock();
+			try {
+				entries.put(request, new Entry<ResponseType>(reply, expiresNanos));
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		private void remove(ByteString request) {
+			lock.lock();
+			try {
+				entries.remove(request);
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		private void clear() {
+			lock.lock();
+			try {
+				entries.clear();
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		private int size() {
+			lock.lock();
+			try {
+				return entries.size();
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+}
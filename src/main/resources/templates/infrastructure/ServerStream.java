@@ -0,0 +1,81 @@
+package $infrastructure.javaPackage;
+
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.protobuf.MessageLite;
+
+/**
+ * The server side of a stream of messages sent to a client, as the
+ * reply to the request of a stream service.
+ *
+ * The client grants credits, one for each message it can buffer. A message is only
+ * sent when there is a credit for it, otherwise the send method waits until the client
+ * grants more credits. This way the server never sends faster than the client consumes.
+ *
+ * The stream ends with the complete method, or with the fail method which reports a reason
+ * to the client. The client can also cancel the stream, after which the send method throws
+ * a RemoteCommunicationsException with the CANCELLED error type. The stream is also cancelled
+ * when the connection to the client is lost.
+ *
+ * For a call with a stream of requests, the end of this stream also ends the call: the requests
+ * that have not been received yet are discarded and the observer of the requests receives a
+ * RemoteCommunicationsException with the CANCELLED error type.
+ *
+ * The send, complete and fail methods must not be called by more than one thread at a time,
+ * so that the messages are sent in order and before the end of the stream.
+ *
+ * @author Petros Pissias
+ *
+ * @param <StreamType> the type of the streamed messages
+ */
+public class ServerStream<StreamType extends MessageLite> extends StreamSender<StreamType> {
+
+	//the open streams of the connection, this stream removes itself when it ends
+	private final ConcurrentMap<Long, ServerStream<?>> openStreams;
+
+	//the open request streams of the connection, the request stream of the call is removed when this stream ends. null if the call has no request stream
+	private final ConcurrentMap<Long, ? extends StreamReceiver<?>> openRequestStreams;
+
+	/**
+	 * Constructs a new stream and registers it with the open streams of the connection.
+	 * Called by the generated code
+	 * @param dataTransceiver the data transceiver of the connection to the client
+	 * @param streamId the correlation id of the stream request
+	 * @param itemMessageType the MessageContainer message type of the stream messages
+	 * @param endMessageType the MessageContainer message type of the end of stream message
+	 * @param compression the compression of the stream messages, or null
+	 * @param openStreams the open streams of the connection
+	 */
+	public ServerStream(DataTransceiver dataTransceiver, long streamId, int itemMessageType, int endMessageType, FrameCompression compression, ConcurrentMap<Long, ServerStream<?>> openStreams) {
+		this(dataTransceiver, streamId, itemMessageType, endMessageType, compression, openStreams, null);
+	}
+
+	/**
+	 * Constructs a new stream of a call with a stream of requests, and registers it with the open
+	 * streams of the connection. Called by the generated code
+	 * @param dataTransceiver the data transceiver of the connection to the client
+	 * @param streamId the correlation id of the call
+	 * @param itemMessageType the MessageContainer message type of the stream messages
+	 * @param endMessageType the MessageContainer message type of the end of stream message
+	 * @param compression the compression of the stream messages, or null
+	 * @param openStreams the open streams of the connection
+	 * @param openRequestStreams the open request streams of the connection
+	 */
+	public ServerStream(DataTransceiver dataTransceiver, long streamId, int itemMessageType, int endMessageType, FrameCompression compression, ConcurrentMap<Long, ServerStream<?>> openStreams, ConcurrentMap<Long, ? extends StreamReceiver<?>> openRequestStreams) {
+		super(dataTransceiver, streamId, itemMessageType, endMessageType, compression, 0);
+		this.openStreams = openStreams;
+		this.openRequestStreams = openRequestStreams;
+		openStreams.put(streamId, this);
+	}
+
+	@Override
+	protected void ended() {
+		openStreams.remove(getStreamId(), this);
+		if (openRequestStreams != null) {
+			StreamReceiver<?> requests = openRequestStreams.remove(getStreamId());
+			if (requests != null) {
+				requests.end(new RemoteCommunicationsException(RemoteCommunicationsErrorType.CANCELLED, "The call has ended"));
+			}
+		}
+	}
+}
@@ -1,26 +1,66 @@
 package $infrastructure.javaPackage;
 
 import java.io.IOException;
+import java.util.List;
+#if ($infrastructure.metrics)
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+#end
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+#if ($infrastructure.metrics)
+import java.util.function.BiConsumer;
+#end
 
 #if ($infrastructure.logging == "log4j")
 import org.apache.log4j.Logger;
+#elseif ($infrastructure.logging == "slf4j")
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 #end
 
 /**
- * This abstract class implements the common functions 
+ * This abstract class implements the common functions
  * of all concrete Service implementations on the client side.
- * 
- * It has an internal SocketDataTransceiver object which is used
- * for the low-level packet based communication with the server.
- * 
+ *
+ * It has a number of connections to the server (ClientConnection objects), each one
+ * with a SocketDataTransceiver which is used for the low-level packet based communication
+ * with the server. By default there is a single connection.
+ *
  * Before each RPC interaction, all concrete Service
- * implementations will call the checkDataTransceiver
- * method ensuring that there is a valid SocketDataTransceiver object
- * 
- * This class receives error notifications from the SocketDataTransceiverReaderThread 
- * when a communications problem is detected and clears the SocketDataTransceiver
- * in order to establish a new communications channel for the next interaction
- * 
+ * implementations will call the checkConnection
+ * method, which selects the connection with the fewest calls waiting for a reply
+ * and ensures that it has a valid SocketDataTransceiver.
+ *
+ * The connections are shared by all threads using the service. Replies
+ * are matched to their requests through the ClientReplyHandler (pending call table)
+ * so that many calls can be in flight at the same time.
+ *
+ * When a communications problem is detected on a connection, either by its reader thread
+ * or by a failed send operation, its SocketDataTransceiver is cleared and all calls that
+ * wait for a reply on it are failed. With a single connection, a new communications channel
+ * is established for the next interaction. With more connections, the failed connection is
+ * replaced in the background while the calls use the other connections.
+ *
+ * With a ReconnectBackoff, all lost connections (including the ones cleared by
+ * handleCommunicationsError) are reconnected in the background, retrying with growing
+ * delays until they are connected again. The calls do not connect while a connection is
+ * being reconnected: they use the other connections, or fail with CANNOT_CONNECT if none
+ * is connected. The connections can also be created when the client is constructed
+ * (connectEagerly), so that the first calls do not pay for connecting.
+ *
+ * Oneway services with an outbound queue do not send their messages in the calling thread,
+ * they add them to an OutboundQueue whose writer thread sends them over the connections.
+ *
+#if ($infrastructure.metrics)
+ * The calls and the traffic of the connections are reported to a MetricsListener, if one is set.
+ *
+#end
  * @author Petros Pissias
  *
  */
@@ -28,124 +68,417 @@ public abstract class ServiceProxy implements ErrorHandler{
 
 	//the server host
 	protected final String host;
-	
+
 	//the server port
 	protected final int port;
-	
-	//the data transceiver instance
-	protected SocketDataTransceiver clientDataTransceiver = null; 
+
+	//the connections to the server
+	private final ClientConnection[] connections;
+
+	//used in order to spread the calls over connections with the same number of pending calls
+	private final AtomicInteger nextConnection = new AtomicInteger(0);
+
+	//the pending calls, waiting for a reply
+	protected final ClientReplyHandler clientReplyHandler;
+
+	//the delays between reconnection attempts, null if lost connections are created when they are needed
+	private final ReconnectBackoff reconnectBackoff;
+
+	//the outbound queues of the oneway services, closed when the client is finished
+	private final List<OutboundQueue> outboundQueues = new CopyOnWriteArrayList<OutboundQueue>();
+
+	//true when the client no longer wants to interact with the server
+	private volatile boolean finished = false;
+#if ($infrastructure.metrics)
+
+	//the listener the calls and the traffic are reported to
+	private volatile MetricsListener metricsListener = MetricsListener.none;
+#end
 
 	#if ($infrastructure.logging == "log4j")
 	//logger
 	private final Logger logger = Logger.getLogger(getClass());
+	#elseif ($infrastructure.logging == "slf4j")
+	//logger
+	private final Logger logger = LoggerFactory.getLogger(getClass());
 	#end
-	
-	public ServiceProxy(String host, int port) {
+
+	public ServiceProxy(String host, int port, int timeoutSeconds) {
+		this(host, port, timeoutSeconds, 1);
+	}
+
+	public ServiceProxy(String host, int port, int timeoutSeconds, int connectionCount) {
+		this(host, port, timeoutSeconds, connectionCount, null);
+	}
+
+	public ServiceProxy(String host, int port, int timeoutSeconds, int connectionCount, ReconnectBackoff reconnectBackoff) {
+		if (connectionCount < 1) {
+			throw new IllegalArgumentException("The number of connections must be positive: "+connectionCount);
+		}
 		this.host = host;
 		this.port = port;
+		this.clientReplyHandler = new ClientReplyHandler(timeoutSeconds);
+		this.reconnectBackoff = reconnectBackoff;
+		this.connections = new ClientConnection[connectionCount];
+		for (int i = 0; i < connectionCount; i++) {
+			connections[i] = new ClientConnection(this, i);
+		}
 	}
 
 	/**
 	 * This method is called as the first statement of each RPC call handling
-	 * and it ensures that we will have a valid SocketDataTransceiver
-	 * for the duration of the call. 
-	 * 
-	 * If a valid SocketDataTransceiver instance cannot be created, it will throw an exception 
-	 * 
-	 * The caller method is synchronized so that it will not interfere with 
-	 * the handleCommunicationsError method, which clears (nullifies) the 
-	 * SocketDataTransceiver following a communication error.
-	 * 
-	 * The actual SocketDataTransceiver instance is provided by the Service implementation
-	 * class, as it has access to the appropriate DataHandler and ErrorHandler objects.
-	 * 
+	 * and it returns the connection to use for the call.
+	 *
+	 * It selects the connected connection with the fewest calls waiting for a reply.
+	 * If no connection is connected, it connects one (with a ReconnectBackoff, one that is not
+	 * being reconnected in the background), and if a valid SocketDataTransceiver
+	 * instance cannot be created, it will throw an exception.
+	 *
+	 * The actual SocketDataTransceiver instances are provided by the Service implementation
+	 * class, as it has access to the appropriate DataHandler object.
+	 *
+	 * @return the connection to use for the call
 	 * @throws RemoteCommunicationsException If a valid SocketDataTransceiver instance cannot be created
 	 */
-	protected void checkDataTransceiver() throws RemoteCommunicationsException {
-		try {		
-			if (clientDataTransceiver == null ) {
-				#if ($infrastructure.logging == "log4j")
-				logger.debug("creating data transceiver");
-				#end
-				clientDataTransceiver = getDataTransceiverInstance();
-				clientDataTransceiver.initialize();
+	protected ClientConnection checkConnection() throws RemoteCommunicationsException {
+		//start from a different connection each time, so that idle connections share the calls
+		int start = (nextConnection.getAndIncrement() & Integer.MAX_VALUE) % connections.length;
+
+		ClientConnection selected = null;
+		for (int i = 0; i < connections.length; i++) {
+			ClientConnection connection = connections[(start + i) % connections.length];
+			if (connection.isConnected() && (selected == null || connection.getPendingCallCount() < selected.getPendingCallCount())) {
+				selected = connection;
 			}
 		}
+
+		if (selected != null) {
+			return selected;
+		}
+
+		//no connection is connected, connect one in the calling thread
+		selected = connections[start];
+		if (reconnectBackoff != null) {
+			//do not wait for the connections that are being reconnected in the background
+			selected = null;
+			for (int i = 0; i < connections.length && selected == null; i++) {
+				ClientConnection connection = connections[(start + i) % connections.length];
+				if (!connection.isReconnecting()) {
+					selected = connection;
+				}
+			}
+
+			if (selected == null) {
+				throw (new RemoteCommunicationsException(RemoteCommunicationsErrorType.CANNOT_CONNECT, "Reconnecting to the server"));
+			}
+		}
+
+		try {
+			selected.connect();
+			return selected;
+		}
 		catch (IOException e) {
 			#if ($infrastructure.logging == "log4j")
 			logger.error("Exception trying to connect to server", e);
+			#elseif ($infrastructure.logging == "slf4j")
+			logger.error("Exception trying to connect to server", e);
 			#end
+			if (reconnectBackoff != null) {
+				//the next calls fail fast while the connection is retried in the background
+				reconnect(selected);
+			}
 			throw (new RemoteCommunicationsException(RemoteCommunicationsErrorType.CANNOT_CONNECT, e.getMessage()));
-		} 			
-	}
-	
-	/**
-	 * This method is called when there is a communications error
-	 * either from the reader side (SocketDataTransceiverReaderThread) or
-	 * from the service implementation, when a send() fails.
-	 * 
-	 * It will have the effect that the SocketDataTransceiver object 
-	 * will be cleared (nullified) and a new object will be created for the next interaction.
-	 * 
-	 * The method is synchronized in order not to interfere with the Service
-	 * implementation methods, which are also synchronized
-	 */
-	@Override	
-	public synchronized void handleCommunicationsError() {
-		if (clientDataTransceiver == null) {
-			#if ($infrastructure.logging == "log4j")
-			logger.debug("Communications error indication already handled. clientDataTransceiver is null");
-			#end
-		} else {
-			//check from where the call originates
-			if (Thread.currentThread() instanceof SocketDataTransceiverReaderThread) {
-				//check if the call we are handling originates from the actual clientDataTransceiver instance we have
-				if (clientDataTransceiver.isDataTransceiverThread(Thread.currentThread())) {
-					//this call originates from the current reader thread
+		}
+	}
+
+	/**
+	 * Connects all the connections to the server, so that the first calls do not pay for
+	 * connecting. The connections that cannot be connected are reconnected in the background
+	 * if there is a ReconnectBackoff, otherwise they are connected when they are needed.
+	 * Called by the Service implementations when they are constructed
+	 */
+	protected void connectEagerly() {
+		for (ClientConnection connection : connections) {
+			try {
+				connection.connect();
+			} catch (IOException e) {
+				#if ($infrastructure.logging == "log4j")
+				logger.warn("Cannot connect to server. Error info:"+e.getMessage());
+				#elseif ($infrastructure.logging == "slf4j")
+				logger.warn("Cannot connect to server. Error info: {}", e.getMessage());
+				#end
+				if (reconnectBackoff != null) {
+					reconnect(connection);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Creates an outbound queue, whose writer thread sends the queued messages
+	 * over the connections of this service proxy.
+	 * @param name the name of the queue
+	 * @param capacity the maximum number of queued messages
+	 * @param overflowPolicy what happens when the queue is full
+	 * @return the new outbound queue
+	 */
+	protected OutboundQueue createOutboundQueue(String name, int capacity, OverflowPolicy overflowPolicy) {
+		OutboundQueue outboundQueue = new OutboundQueue(name, capacity, overflowPolicy, new PacketSender() {
+			@Override
+			public void sendPackets(byte[][] packets) throws IOException {
+				ClientConnection connection;
+				try {
+					connection = checkConnection();
+				} catch (RemoteCommunicationsException e) {
+					throw new IOException(e.getMessage(), e);
+				}
+				connection.send(packets);
+			}
+		}, null);
+		outboundQueues.add(outboundQueue);
+		return outboundQueue;
+	}
+
+	/**
+	 * This method is called by a connection when it is lost.
+	 *
+	 * With a ReconnectBackoff, the lost connection is reconnected in the background.
+	 * Otherwise, when there are more connections, the lost one is replaced in the background,
+	 * so that the calls can use all connections again. With a single connection,
+	 * a new connection is created for the next interaction.
+	 *
+	 * @param connection the connection that was lost
+	 */
+	void connectionFailed(final ClientConnection connection) {
+		if (reconnectBackoff != null) {
+			reconnect(connection);
+			return;
+		}
+
+		if (connections.length == 1 || finished || !connection.startReconnecting()) {
+			return;
+		}
+
+		ReconnectExecutor.instance.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					if (!finished) {
+						connection.connect();
+					}
+				} catch (IOException e) {
+					//the connection will be created when it is needed
 					#if ($infrastructure.logging == "log4j")
-					logger.error("Received communications error indication. Clearing data transceiver");
-					logger.debug("Received communications error indication from SocketDataTransceiverReaderThread. Clearing data transceiver");
-					#elseif ($infrastructure.logging == "System")
-					System.out.println("Error: Received communications error indication");					
+					logger.warn("Cannot replace lost connection to server. Error info:"+e.getMessage());
+					#elseif ($infrastructure.logging == "slf4j")
+					logger.warn("Cannot replace lost connection to server. Error info: {}", e.getMessage());
 					#end
-					
-					clientDataTransceiver = null;
-				} else {
-					//in this case, we received an error indication from a previous clientDataTransceiver
-					//object (race condition). The indication is already handled from an exception and a already have 
-					//a new instance
+				} finally {
+					connection.reconnectingFinished();
+				}
+
+				if (finished) {
+					connection.close("Client finished");
+				}
+			}
+		});
+	}
+
+	/**
+	 * Reconnects a lost connection in the background, retrying with the delays of the
+	 * ReconnectBackoff until it is connected or the client is finished
+	 * @param connection the connection that was lost
+	 */
+	private void reconnect(ClientConnection connection) {
+		if (finished || !connection.startReconnecting()) {
+			return;
+		}
+		scheduleReconnect(connection, 0);
+	}
+
+	//schedules a reconnection attempt after its delay. The attempt runs on the reconnect executor, so that
+	//a slow connect does not delay the attempts of the other connections
+	private void scheduleReconnect(final ClientConnection connection, final int attempt) {
+		final long delayMillis = reconnectBackoff.getDelayMillis(attempt);
+		final Runnable reconnectAttempt = new Runnable() {
+			@Override
+			public void run() {
+				if (finished) {
+					connection.reconnectingFinished();
+					return;
+				}
+
+				try {
+					connection.connect();
+				} catch (IOException e) {
 					#if ($infrastructure.logging == "log4j")
-					logger.warn("Received a call from a previous SocketDataTransceiverReaderThread instance. The error indication already handled.");
+					logger.warn("Cannot reconnect to server (attempt "+(attempt + 1)+"). Error info:"+e.getMessage());
+					#elseif ($infrastructure.logging == "slf4j")
+					logger.warn("Cannot reconnect to server (attempt {}). Error info: {}", attempt + 1, e.getMessage());
 					#end
-				}				
-			} else {
-				//we received an error indication from a service implementation 
+					scheduleReconnect(connection, attempt + 1);
+					return;
+				}
+
 				#if ($infrastructure.logging == "log4j")
-				logger.error("Received communications error indication. Clearing data transceiver");
-				logger.debug("Received communications error indication from a service implementation. Clearing data transceiver");
+				logger.debug("Reconnected to server after "+(attempt + 1)+" attempt(s)");
+				#elseif ($infrastructure.logging == "slf4j")
+				if (logger.isDebugEnabled()) {
+					logger.debug("Reconnected to server after {} attempt(s)", attempt + 1);
+				}
 				#end
-				clientDataTransceiver = null;				
+				connection.reconnectingFinished();
+				if (finished) {
+					connection.close("Client finished");
+				}
+			}
+		};
+
+		ReconnectScheduler.instance.schedule(new Runnable() {
+			@Override
+			public void run() {
+				ReconnectExecutor.instance.execute(reconnectAttempt);
+			}
+		}, delayMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * This method clears all connections and fails all calls that wait for a reply.
+	 * With a ReconnectBackoff the connections are reconnected in the background,
+	 * otherwise new connections are created for the next interactions.
+	 */
+	@Override
+	public void handleCommunicationsError() {
+		#if ($infrastructure.logging == "log4j")
+		logger.error("Received communications error indication. Clearing all connections");
+		#elseif ($infrastructure.logging == "slf4j")
+		logger.error("Received communications error indication. Clearing all connections");
+		#end
+		for (ClientConnection connection : connections) {
+			connection.close("Connection to the server was closed after a communications error");
+		}
+
+		if (reconnectBackoff != null) {
+			for (ClientConnection connection : connections) {
+				reconnect(connection);
 			}
 		}
-	}	
-	
+	}
+
 	/**
 	 * this method should be called when a client no longer wants to interact with a server.
 	 * It will release any resources that the client service implementation uses.
-	 * Synchronized because we must ensure we hold a valid instance of a socket data transceiver during the operation
 	 * @return true if all resources were successfully disposed, false if there was an exception during the release of the resources
 	 */
-	public synchronized boolean finished() {
-		if (clientDataTransceiver != null) {
-			return clientDataTransceiver.closeSocket();
+	public boolean finished() {
+		finished = true;
+
+		for (OutboundQueue outboundQueue : outboundQueues) {
+			outboundQueue.close();
+		}
+
+		boolean closed = true;
+		for (ClientConnection connection : connections) {
+			closed &= connection.close("Client finished");
 		}
-		return true;
-	}	
+		return closed;
+	}
+
+#if ($infrastructure.metrics)
+	/**
+	 * Sets the listener the calls and the traffic of this client are reported to.
+	 * The connections created before it is set report their traffic to the previous listener
+	 * @param metricsListener the listener, MetricsListener.none in order to stop reporting
+	 */
+	public void setMetricsListener(MetricsListener metricsListener) {
+		this.metricsListener = metricsListener;
+	}
+
+	/**
+	 * Returns the listener the calls and the traffic of this client are reported to
+	 * @return the listener
+	 */
+	MetricsListener getMetricsListener() {
+		return metricsListener;
+	}
+
+	/**
+	 * Reports the start of a call
+	 * @param serviceName the name of the service
+	 * @return the start time of the call, in nanoseconds
+	 */
+	protected long callStarted(String serviceName) {
+		metricsListener.callStarted(serviceName);
+		return System.nanoTime();
+	}
+
+	/**
+	 * Reports the completion of a call
+	 * @param serviceName the name of the service
+	 * @param start the start time of the call, returned by callStarted
+	 */
+	protected void callCompleted(String serviceName, long start) {
+		metricsListener.callCompleted(serviceName, System.nanoTime() - start);
+	}
+
+	/**
+	 * Reports the failure of a call
+	 * @param serviceName the name of the service
+	 * @param errorType the reason the call failed
+	 * @param start the start time of the call, returned by callStarted
+	 */
+	protected void callFailed(String serviceName, RemoteCommunicationsErrorType errorType, long start) {
+		metricsListener.callFailed(serviceName, errorType, System.nanoTime() - start);
+	}
+
+	/**
+	 * Reports the completion or failure of an asynchronous call when its future completes
+	 * @param serviceName the name of the service
+	 * @param start the start time of the call, returned by callStarted
+	 * @param future the future of the call
+	 * @return the same future
+	 */
+	protected <T> CompletableFuture<T> callCompletion(final String serviceName, final long start, CompletableFuture<T> future) {
+		future.whenComplete(new BiConsumer<T, Throwable>() {
+			@Override
+			public void accept(T reply, Throwable failure) {
+				Throwable cause = (failure instanceof CompletionException && failure.getCause() != null) ? failure.getCause() : failure;
+				if (cause == null) {
+					callCompleted(serviceName, start);
+				} else if (cause instanceof RemoteCommunicationsException) {
+					callFailed(serviceName, ((RemoteCommunicationsException) cause).getErrorType(), start);
+				} else if (cause instanceof CancellationException) {
+					callFailed(serviceName, RemoteCommunicationsErrorType.CANCELLED, start);
+				} else {
+					callFailed(serviceName, RemoteCommunicationsErrorType.REQUEST_FAILED, start);
+				}
+			}
+		});
+		return future;
+	}
+
+#end
 	/**
 	 * Implemented by concrete implementations.
+	 * @param errorHandler the error handler of the new SocketDataTransceiver
 	 * @return a new instance of a SocketDataTransceiver
-	 * @throws IOException 
+	 * @throws IOException
 	 */
-	protected abstract SocketDataTransceiver getDataTransceiverInstance() throws IOException ;
-	
+	protected abstract SocketDataTransceiver getDataTransceiverInstance(ErrorHandler errorHandler) throws IOException ;
+
+	/**
+	 * Replaces failed connections in the background, shared by all instances.
+	 * Created when it is first used, so that clients that never replace a connection do not create it
+	 */
+	private static final class ReconnectExecutor {
+		private static final ExecutorService instance = Executors.newCachedThreadPool(new NamedThreadFactory(ServiceProxy.class.getSimpleName()+"-reconnect"));
+	}
+
+	/**
+	 * Waits for the delays between reconnection attempts, shared by all instances.
+	 * Created when it is first used, so that clients without a ReconnectBackoff do not create it
+	 */
+	private static final class ReconnectScheduler {
+		private static final ScheduledExecutorService instance = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory(ServiceProxy.class.getSimpleName()+"-reconnect-scheduler"));
+	}
 }
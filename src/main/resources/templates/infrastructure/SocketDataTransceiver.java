@@ -1,12 +1,19 @@
 package $infrastructure.javaPackage;
 
-import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.locks.ReentrantLock;
 
 #if ($infrastructure.logging == "log4j")
 import org.apache.log4j.Logger;
+#elseif ($infrastructure.logging == "slf4j")
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 #end
 
 /**
@@ -22,21 +29,35 @@ import org.apache.log4j.Logger;
  * Send and read operations are atomic. Read operations are guaranteed
  * to be atomic as they are done by the reader thread sequentially. 
  * 
- * Parallel access to the server from multiple threads
- * (if needed) is achieved by having multiple SocketDataTransceiver
- * instances from a client to a server, managed by multiple
- * concrete instances of ServiceProxy objects.
+ * Packets sent by concurrent threads are written together, with 
+ * one flush (group flush), see the write method.
+ * 
+ * With a Heartbeat, heartbeat packets are sent while nothing else is sent,
+ * and the socket is closed when nothing is received for the idle timeout.
+ * 
+ * Multiple threads can send through the same SocketDataTransceiver
+ * instance. Requests and replies are matched by the correlation id 
+ * carried in the message envelope, so there is no need to wait for 
+ * a reply before the next request is sent.
  * 
  * @author Petros Pissias
  *
  */
-public class SocketDataTransceiver {
+public class SocketDataTransceiver implements DataTransceiver {
 
+	//size of the buffer used to coalesce the packets written with one flush
+	private static final int writeBufferSize = 64 * 1024;
+	
+	//maximum number of packets written with one flush
+	private static final int maxPacketsPerFlush = 256;
+	
 	//the socket for this data Transceiver
 	private final Socket socket;
 	
-	//Output interface for sending data through the Socket
-	private final DataOutputStream outputInterface; 	
+	//Output interface for sending data through the Socket. The socket stream is used directly
+	//(not a DataOutputStream, whose write methods are synchronized and would pin a virtual thread 
+	//blocked on a full TCP window to its carrier)
+	private final OutputStream outputInterface; 	
 	
 	//its operating thread
 	private final SocketDataTransceiverReaderThread socketReadThread;
@@ -44,10 +65,31 @@ public class SocketDataTransceiver {
 	#if ($infrastructure.logging == "log4j")
 	//logger
 	private final Logger logger = Logger.getLogger(getClass());
+	#elseif ($infrastructure.logging == "slf4j")
+	//logger
+	private final Logger logger = LoggerFactory.getLogger(getClass());
 	#end
 	
 	//locks for reading and writing atomically
 	private final ReentrantLock writeLock = new ReentrantLock();
+	
+	//packets waiting to be written by the thread holding the write lock
+	private final Queue<PendingPacket> pendingPackets = new ConcurrentLinkedQueue<PendingPacket>();
+	
+	//buffer used in order to write small packets with one socket write, guarded by the write lock
+	private final byte[] writeBuffer = new byte[writeBufferSize];
+	private int writeBufferCount = 0;
+	
+	//the time (System.nanoTime) packets were last written
+	private volatile long lastSentNanos = System.nanoTime();
+	
+	//the heartbeats and idle timeout of the connection, null if none
+	private Heartbeat heartbeat = null;
+#if ($infrastructure.metrics)
+	
+	//the listener the sent packets are reported to
+	private volatile MetricsListener metricsListener = MetricsListener.none;
+#end
 
 
 	/**
@@ -61,13 +103,15 @@ public class SocketDataTransceiver {
 		this.socket = socket;
 		
 		//create the data streams
-		outputInterface = new DataOutputStream(socket.getOutputStream());
+		outputInterface = socket.getOutputStream();
 		
 		//the thread is started via the initialize method
 		socketReadThread = new SocketDataTransceiverReaderThread(socket, errorHandler, dataHandler);
 		
 		#if ($infrastructure.logging == "log4j")
 		logger.info(getClass().getSimpleName()+" instance created");
+		#elseif ($infrastructure.logging == "slf4j")
+		logger.info("{} instance created", getClass().getSimpleName());
 		#end
 	}
 	
@@ -85,27 +129,47 @@ public class SocketDataTransceiver {
 
 		#if ($infrastructure.logging == "log4j")
 		logger.info("Connected socket to "+host+" port:"+port);
+		#elseif ($infrastructure.logging == "slf4j")
+		logger.info("Connected socket to {} port: {}", host, port);
 		#end
 		
 		//create the data streams
-		outputInterface = new DataOutputStream(socket.getOutputStream());
+		outputInterface = socket.getOutputStream();
 		
 		//the thread is started via the initialize method
 		socketReadThread = new SocketDataTransceiverReaderThread(socket, errorHandler, dataHandler);
 	
 		#if ($infrastructure.logging == "log4j")
 		logger.info(getClass().getSimpleName()+" instance created");
+		#elseif ($infrastructure.logging == "slf4j")
+		logger.info("{} instance created", getClass().getSimpleName());
 		#end
 	}
 	
 	/**
 	 * Starts the processing of this SocketDataTransceiver
 	 */
+	@Override
 	public void initialize() {
 		#if ($infrastructure.logging == "log4j")
 		logger.debug("starting socket reader thread");
+		#elseif ($infrastructure.logging == "slf4j")
+		logger.debug("starting socket reader thread");
 		#end
 		socketReadThread.start();
+		
+		if (heartbeat != null) {
+			heartbeat.monitor(new HeartbeatConnection());
+		}
+	}
+	
+	/**
+	 * Sets the heartbeats and idle timeout of the connection. Must be called before it is initialized
+	 * @param heartbeat the heartbeat settings
+	 */
+	@Override
+	public void setHeartbeat(Heartbeat heartbeat) {
+		this.heartbeat = heartbeat;
 	}
 
 	/**
@@ -117,37 +181,159 @@ public class SocketDataTransceiver {
 	 * @param data the payload data
 	 * @throws IOException in case of communication issues 
 	 */
+	@Override
 	public void send(byte[] data) throws IOException {
+		int payloadSize = data.length;
+		byte[] header = new byte[] {(byte)(payloadSize >>> 24), (byte)(payloadSize >>> 16), (byte)(payloadSize >>> 8), (byte)payloadSize};
+		
+		write(new PendingPacket(new byte[][] {header, data}));
+		#if ($infrastructure.metrics)
+		metricsListener.packetsSent(1, header.length + data.length);
+		#end
+	}
+	
+	/**
+	 * Sends a complete packet, that already starts with the 4 byte header.
+	 * 
+	 * The send operation is atomic
+	 *  
+	 * @param packet the packet data (header and payload)
+	 * @throws IOException in case of communication issues 
+	 */
+	@Override
+	public void sendPacket(byte[] packet) throws IOException {
+		write(new PendingPacket(new byte[][] {packet}));
+		#if ($infrastructure.metrics)
+		metricsListener.packetsSent(1, packet.length);
+		#end
+	}
+	
+	/**
+	 * Sends complete packets (i.e. the fragments of a message), that already start with the 4 byte header.
+	 * 
+	 * The send operation is atomic, no other packets are sent between them
+	 *  
+	 * @param packets the packets data (header and payload)
+	 * @throws IOException in case of communication issues 
+	 */
+	@Override
+	public void sendPackets(byte[][] packets) throws IOException {
+		write(new PendingPacket(packets));
+		#if ($infrastructure.metrics)
+		long bytes = 0;
+		for (byte[] packet : packets) {
+			bytes += packet.length;
+		}
+		metricsListener.packetsSent(packets.length, bytes);
+		#end
+	}
+	
+#if ($infrastructure.metrics)
+	/**
+	 * Sets the listener the packets sent and received by this SocketDataTransceiver are reported to
+	 * @param metricsListener the listener
+	 */
+	@Override
+	public void setMetricsListener(MetricsListener metricsListener) {
+		this.metricsListener = metricsListener;
+		socketReadThread.setMetricsListener(metricsListener);
+	}
+	
+#end
+	/**
+	 * Writes a packet to the socket. 
+	 * 
+	 * The packet is first queued. The thread that obtains the write lock writes all
+	 * queued packets (its own and the ones queued by other senders while it was waiting)
+	 * and flushes them together, so that concurrent senders share the socket writes.
+	 * A single sender writes and flushes its packet right away.
+	 * 
+	 * @param packet the packet
+	 * @throws IOException in case of communication issues 
+	 */
+	private void write(PendingPacket packet) throws IOException {
+		pendingPackets.add(packet);
+		
 		//lock
 		writeLock.lock();
 		#if ($infrastructure.logging == "log4j")
-		logger.debug("obtaining write lock");
+		logger.debug("obtained write lock");
+		#elseif ($infrastructure.logging == "slf4j")
+		logger.debug("obtained write lock");
 		#end
 		
 		try {
-			//write payload size	
-			int payloadSize = data.length;
-		
-			#if ($infrastructure.logging == "log4j")
-			logger.debug("sending data: writing header");
-			#end
-			outputInterface.writeInt(payloadSize);
+			//the packet may have already been written by another sender
+			while (!packet.written) {
+				writePendingPackets();
+			}
 			
-			//write payload
-			#if ($infrastructure.logging == "log4j")
-			logger.debug("sending data: writing payload");
-			#end
-			outputInterface.write(data);
-			
-			outputInterface.flush();	
-			#if ($infrastructure.logging == "log4j")
-			logger.debug("flushed");
-			#end
+			if (packet.failure != null) {
+				throw packet.failure;
+			}
 		} finally  {
+			writeLock.unlock();
+		}
+	}
+	
+	/**
+	 * Writes a batch of queued packets with one flush. 
+	 * Must be called while holding the write lock
+	 */
+	private void writePendingPackets() {
+		List<PendingPacket> batch = new ArrayList<PendingPacket>();
+		IOException failure = null;
+		try {
+			PendingPacket packet;
+			while (batch.size() < maxPacketsPerFlush && (packet = pendingPackets.poll()) != null) {
+				batch.add(packet);
+				for (byte[] part : packet.parts) {
+					bufferedWrite(part);
+				}
+			}
+			
 			#if ($infrastructure.logging == "log4j")
-			logger.debug("releasing write lock");		
+			logger.debug("flushing "+batch.size()+" packets");
+			#elseif ($infrastructure.logging == "slf4j")
+			if (logger.isDebugEnabled()) {
+				logger.debug("flushing {} packets", batch.size());
+			}
 			#end
-			writeLock.unlock();
+			flushWriteBuffer();
+			outputInterface.flush();
+			lastSentNanos = System.nanoTime();
+		} catch (IOException e) {
+			failure = e;
+			writeBufferCount = 0;
+		}
+		
+		//inform the senders of the batch
+		for (PendingPacket written : batch) {
+			written.failure = failure;
+			written.written = true;
+		}
+	}
+	
+	//writes data through the write buffer. Data that does not fit in the buffer is written directly
+	private void bufferedWrite(byte[] data) throws IOException {
+		if (data.length > writeBuffer.length - writeBufferCount) {
+			flushWriteBuffer();
+		}
+		
+		if (data.length >= writeBuffer.length) {
+			outputInterface.write(data);
+		} else {
+			System.arraycopy(data, 0, writeBuffer, writeBufferCount, data.length);
+			writeBufferCount += data.length;
+		}
+	}
+	
+	//writes the contents of the write buffer to the socket
+	private void flushWriteBuffer() throws IOException {
+		if (writeBufferCount > 0) {
+			int count = writeBufferCount;
+			writeBufferCount = 0;
+			outputInterface.write(writeBuffer, 0, count);
 		}
 	}
 	
@@ -160,19 +346,95 @@ public class SocketDataTransceiver {
 	 * @return true if the thread is the data transceiver thread
 	 */
 	public boolean isDataTransceiverThread(Thread thread) {
-		return (thread == socketReadThread);
+		return socketReadThread.isReaderThread(thread);
 	}
 
 	/**
 	 * Attempts to close the socket
 	 * @return true if succesful false if an exception is thrown while trying to close the socket
 	 */
+	@Override
 	public boolean closeSocket() {
 		try {
 			socket.close();
 			return true;
 		} catch (IOException e) {
 			return false;
+		} finally {
+			//a paused reader must find out that the socket is closed
+			socketReadThread.resume();
 		}
 	}	
+	
+	@Override
+	public void pauseReading() {
+		socketReadThread.pause();
+	}
+	
+	@Override
+	public void resumeReading() {
+		socketReadThread.resume();
+	}
+	
+	/**
+	 * The connection of this SocketDataTransceiver, as checked by its Heartbeat
+	 */
+	private class HeartbeatConnection implements Heartbeat.Connection {
+		@Override
+		public long getLastReceivedNanos() {
+			return socketReadThread.getLastReceivedNanos();
+		}
+		
+		@Override
+		public long getLastSentNanos() {
+			return lastSentNanos;
+		}
+		
+		@Override
+		public void sendHeartbeat() {
+			try {
+				write(new PendingPacket(new byte[][] {Heartbeat.getPacket()}));
+			} catch (IOException e) {
+				//the reader thread reports the error
+				closeSocket();
+			}
+		}
+		
+		@Override
+		public void idleTimeout(long timeoutMillis) {
+			#if ($infrastructure.logging == "log4j")
+			logger.error("Nothing received for "+timeoutMillis+" ms. Closing connection");
+			#elseif ($infrastructure.logging == "slf4j")
+			logger.error("Nothing received for {} ms. Closing connection", timeoutMillis);
+			#elseif ($infrastructure.logging == "System")
+			System.out.println("Error: Nothing received for "+timeoutMillis+" ms. Closing connection");
+			#end
+			//the reader thread fails and reports the error
+			closeSocket();
+		}
+		
+		@Override
+		public boolean isClosed() {
+			return socket.isClosed();
+		}
+	}
+	
+	/**
+	 * A packet (or the fragments of a message) waiting to be written. 
+	 * The written and failure fields are accessed while holding the write lock.
+	 */
+	private static class PendingPacket {
+		//the data, written one after the other
+		private final byte[][] parts;
+		
+		//true when the packet was handled by a batch 
+		private boolean written = false;
+		
+		//the exception thrown while writing the batch of the packet, if any
+		private IOException failure = null;
+		
+		private PendingPacket(byte[][] parts) {
+			this.parts = parts;
+		}
+	}
 }
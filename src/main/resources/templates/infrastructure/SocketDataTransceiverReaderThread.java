@@ -2,23 +2,47 @@ package $infrastructure.javaPackage;
 
 import java.io.DataInputStream;
 import java.io.IOException;
+import java.net.ProtocolException;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 #if ($infrastructure.logging == "log4j")
 import org.apache.log4j.Logger;
+#elseif ($infrastructure.logging == "slf4j")
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 #end
 /**
  * This thread reads data from a Socket either passing it to a DataHandler
  * or indicates a communication error to an ErrorHandler 
+ * 
+ * If the DataHandler implements ByteBufferDataHandler, the packets are read
+ * into buffers of the ByteBufferPool instead of new arrays.
+ * 
+ * The packet headers are checked, and fragmented messages are 
+ * reassembled, by a PacketAssembler. Compressed messages are decompressed
+ * (see FrameCodecs) before they are passed to the DataHandler. Heartbeat packets
+ * (see Heartbeat) are discarded.
+ * 
+#if ($infrastructure.virtualThreads)
+ * The reading is done by a virtual thread, created when the reader is started.
+#else
+ * The reading is done by a platform thread, created when the reader is started.
+#end
  * 
  * @author Petros Pissias
  *
  */
-public class SocketDataTransceiverReaderThread extends Thread{
+public class SocketDataTransceiverReaderThread implements Runnable {
 
 	#if ($infrastructure.logging == "log4j")
 	//logger
 	private final Logger logger = Logger.getLogger(getClass());
+	#elseif ($infrastructure.logging == "slf4j")
+	//logger
+	private final Logger logger = LoggerFactory.getLogger(getClass());
 	#end
 	
 	//the socket transceiver
@@ -32,6 +56,34 @@ public class SocketDataTransceiverReaderThread extends Thread{
 	
 	//reference to a data handler that receives decoded data
 	private final DataHandler dataHandler;
+	
+	//the same data handler, if it receives the data in pooled buffers. null otherwise
+	private final ByteBufferDataHandler bufferDataHandler;
+	
+	//the pool of the receive buffers
+	private final ByteBufferPool bufferPool = ByteBufferPool.getInstance();
+	
+	//reassembles the messages received in fragments
+	private final PacketAssembler packetAssembler = new PacketAssembler();
+
+	//the thread doing the reading
+	private final Thread thread;
+	
+	//true while the reading is paused, guarded by the pause lock
+	private final ReentrantLock pauseLock = new ReentrantLock();
+	private final Condition resumed = pauseLock.newCondition();
+	private boolean paused = false;
+	
+	//the time (System.nanoTime) a packet was last received
+	private volatile long lastReceivedNanos = System.nanoTime();
+#if ($infrastructure.metrics)
+	
+	//the listener the received packets are reported to
+	private volatile MetricsListener metricsListener = MetricsListener.none;
+#end
+	
+	//the reader run by the current thread, if any
+	private static final ThreadLocal<SocketDataTransceiverReaderThread> currentReader = new ThreadLocal<SocketDataTransceiverReaderThread>();
 
 	//thread number counter
 	private static int threadCount = 0; 
@@ -44,54 +96,235 @@ public class SocketDataTransceiverReaderThread extends Thread{
 	 * @throws IOException in case of communication problems with the provided socket
 	 */
 	public SocketDataTransceiverReaderThread(Socket mySocket, ErrorHandler errorHandler, DataHandler dataHandler) throws IOException {
-		super(SocketDataTransceiverReaderThread.class.getSimpleName()+"-"+getThreadCount()+" remote host:"+mySocket.getInetAddress()+" port:"+mySocket.getPort());
+		String threadName = SocketDataTransceiverReaderThread.class.getSimpleName()+"-"+getThreadCount()+" remote host:"+mySocket.getInetAddress()+" port:"+mySocket.getPort();
+		#if ($infrastructure.virtualThreads)
+		this.thread = Thread.ofVirtual().name(threadName).unstarted(this);
+		#else
+		this.thread = new Thread(this, threadName);
+		#end
 		this.mySocket = mySocket;
 		this.errorHandler = errorHandler;
 		this.dataHandler = dataHandler;
+		this.bufferDataHandler = (dataHandler instanceof ByteBufferDataHandler) ? (ByteBufferDataHandler)dataHandler : null;
 		this.inputInterface = new DataInputStream(mySocket.getInputStream());
 	}
+	
+#if ($infrastructure.metrics)
+	/**
+	 * Sets the listener the received packets are reported to
+	 * @param metricsListener the listener
+	 */
+	public void setMetricsListener(MetricsListener metricsListener) {
+		this.metricsListener = metricsListener;
+	}
+	
+#end
+	/**
+	 * Starts the reader thread
+	 */
+	public void start() {
+		thread.start();
+	}
+	
+	/**
+	 * Stops reading after the packet being handled, until resume is called
+	 */
+	public void pause() {
+		pauseLock.lock();
+		try {
+			paused = true;
+		} finally {
+			pauseLock.unlock();
+		}
+	}
+	
+	/**
+	 * Resumes reading, after pause
+	 */
+	public void resume() {
+		pauseLock.lock();
+		try {
+			paused = false;
+			lastReceivedNanos = System.nanoTime();
+			resumed.signalAll();
+		} finally {
+			pauseLock.unlock();
+		}
+	}
+	
+	/**
+	 * Returns the time a packet was last received, the current time while the reading is paused
+	 * @return the time, as returned by System.nanoTime
+	 */
+	public long getLastReceivedNanos() {
+		pauseLock.lock();
+		try {
+			return paused ? System.nanoTime() : lastReceivedNanos;
+		} finally {
+			pauseLock.unlock();
+		}
+	}
+	
+	/**
+	 * Checks if the provided thread is the thread of this reader
+	 * @param thread the thread to check against
+	 * @return true if the provided thread is the thread of this reader
+	 */
+	public boolean isReaderThread(Thread thread) {
+		return this.thread == thread;
+	}
+	
+	/**
+	 * Checks if the calling thread is the thread of a reader
+	 * @return true if the calling thread reads data from a socket 
+	 */
+	public static boolean isCurrentThreadReader() {
+		return currentReader.get() != null;
+	}
 
 	@Override
 	public void run() {
+		currentReader.set(this);
+		
 		//read data until there is a communications error
 		while (true) {
 			try {
+				awaitResumed();
+				
 				#if ($infrastructure.logging == "log4j")
 				logger.debug("Reading packet...");
+				#elseif ($infrastructure.logging == "slf4j")
+				logger.debug("Reading packet...");
 				#end
 				
-				//read payload size
-				int payloadSize = inputInterface.readInt();			
+				//read payload size, checked against the maximum packet size
+				int header = inputInterface.readInt();
+				lastReceivedNanos = System.nanoTime();
+				if (header == Heartbeat.header) {
+					continue;
+				}
+				int payloadSize = PacketAssembler.payloadSize(header);
 				#if ($infrastructure.logging == "log4j")
 				logger.debug("Incoming packet. Header decoded. Payload length:"+payloadSize);
+				#elseif ($infrastructure.logging == "slf4j")
+				if (logger.isDebugEnabled()) {
+					logger.debug("Incoming packet. Header decoded. Payload length: {}", payloadSize);
+				}
 				#end
 				
-				//read payload
-				byte[] payload = new byte[payloadSize];
-				inputInterface.readFully(payload);
-
-				#if ($infrastructure.logging == "log4j")
-				logger.debug("Payload read completed");
-				#end
-				
-				dataHandler.handleDataIndication(payload);
+				if (PacketAssembler.hasMoreFragments(header) || packetAssembler.isAssembling() || PacketAssembler.isCompressed(header)) {
+					//fragment of a message, or compressed message
+					byte[] fragment = new byte[payloadSize];
+					inputInterface.readFully(fragment);
+					#if ($infrastructure.metrics)
+					metricsListener.packetReceived(EnvelopeCodec.headerSize + payloadSize);
+					#end
+					
+					if (PacketAssembler.hasMoreFragments(header)) {
+						packetAssembler.addFragment(fragment);
+						continue;
+					}
+					
+					#if ($infrastructure.logging == "log4j")
+					logger.debug("Last fragment read completed");
+					#elseif ($infrastructure.logging == "slf4j")
+					logger.debug("Last fragment read completed");
+					#end
+					
+					if (!packetAssembler.isAssembling()) {
+						dataHandler.handleDataIndication(FrameCodecs.decode(fragment));
+					} else if (PacketAssembler.isCompressed(header)) {
+						//the codecs decompress from one array
+						dataHandler.handleDataIndication(FrameCodecs.decode(packetAssembler.complete(fragment).toByteArray()));
+					} else {
+						dataHandler.handleDataIndication(packetAssembler.complete(fragment));
+					}
+				} else if (bufferDataHandler != null) {
+					//read payload into a pooled buffer, given back after the dispatch
+					ByteBuffer payload = bufferPool.acquire(payloadSize);
+					try {
+						inputInterface.readFully(payload.array(), payload.arrayOffset(), payloadSize);
+						#if ($infrastructure.metrics)
+						metricsListener.packetReceived(EnvelopeCodec.headerSize + payloadSize);
+						#end
+						
+						#if ($infrastructure.logging == "log4j")
+						logger.debug("Payload read completed");
+						#elseif ($infrastructure.logging == "slf4j")
+						logger.debug("Payload read completed");
+						#end
+						
+						bufferDataHandler.handleDataIndication(payload);
+					} finally {
+						bufferPool.release(payload);
+					}
+				} else {
+					//read payload
+					byte[] payload = new byte[payloadSize];
+					inputInterface.readFully(payload);
+					#if ($infrastructure.metrics)
+					metricsListener.packetReceived(EnvelopeCodec.headerSize + payloadSize);
+					#end
+	
+					#if ($infrastructure.logging == "log4j")
+					logger.debug("Payload read completed");
+					#elseif ($infrastructure.logging == "slf4j")
+					logger.debug("Payload read completed");
+					#end
+					
+					dataHandler.handleDataIndication(payload);
+				}
 				#if ($infrastructure.logging == "log4j")
 				logger.debug("Packet read complete & dispatched");
+				#elseif ($infrastructure.logging == "slf4j")
+				logger.debug("Packet read complete & dispatched");
 				#end
 			} catch (IOException e) {
 				#if ($infrastructure.logging == "log4j")
 				logger.error("Communications error. Indicating communications problem to handler and terminating. Error info:"+e.getMessage());
+				#elseif ($infrastructure.logging == "slf4j")
+				logger.error("Communications error. Indicating communications problem to handler and terminating. Error info: {}", e.getMessage());
+				#elseif ($infrastructure.logging == "System")
+				if (e instanceof ProtocolException) {
+					System.out.println("Error: Protocol error. Closing connection. Error info:"+e.getMessage());
+				}
 				#end
+				closeSocket();
 				errorHandler.handleCommunicationsError();
 				
 				#if ($infrastructure.logging == "log4j")
 				logger.debug("Terminating...");
+				#elseif ($infrastructure.logging == "slf4j")
+				logger.debug("Terminating...");
 				#end
 				return;
 			}
 		}
 	} 
 	
+	//waits while the reading is paused
+	private void awaitResumed() throws IOException {
+		pauseLock.lock();
+		try {
+			while (paused) {
+				resumed.await();
+			}
+		} catch (InterruptedException e) {
+			throw new IOException("Interrupted while the reading was paused");
+		} finally {
+			pauseLock.unlock();
+		}
+	}
+	
+	//closes the socket, so that the connection is not left open after an error (i.e. a packet exceeding the limits)
+	private void closeSocket() {
+		try {
+			mySocket.close();
+		} catch (IOException e) {
+			//already closed
+		}
+	}
+	
 	//helper method to get a thread count for the name of the tread
 	private static synchronized int getThreadCount() {
 		if (threadCount == Integer.MAX_VALUE) {
@@ -0,0 +1,32 @@
+package $infrastructure.javaPackage;
+
+/**
+ * Receives the messages of a stream, one at a time and in the order they were sent.
+ *
+ * After the messages, exactly one of onCompleted or onError is called, and then
+ * no other method is called.
+ *
+ * @author Petros Pissias
+ *
+ * @param <MessageType> the type of the messages
+ */
+public interface StreamObserver<MessageType> {
+
+	/**
+	 * Receives the next message of the stream
+	 * @param message the message
+	 */
+	public abstract void onNext(MessageType message);
+
+	/**
+	 * Called when the stream ends with a failure, or when it is cancelled
+	 * @param error the failure. The error type is STREAM_FAILED if the other side failed the stream,
+	 * CANCELLED if it was cancelled or DISCONNECTED if the connection was lost
+	 */
+	public abstract void onError(RemoteCommunicationsException error);
+
+	/**
+	 * Called when the stream ends normally
+	 */
+	public abstract void onCompleted();
+}
@@ -0,0 +1,180 @@
+package $infrastructure.javaPackage;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Receives a stream of messages from the other side of a connection, and passes
+ * them to a StreamObserver with credit-based flow control (see StreamSender).
+ *
+ * The observer is called on an executor, one message at a time and in the order the messages
+ * were received. Credits are granted as the observer processes the messages: each time half of
+ * the window has been processed, the same number of credits is granted again. This way at most
+ * one window of messages waits for the observer, no matter how fast the other side sends them.
+ *
+ * @author Petros Pissias
+ *
+ * @param <MessageType> the type of the streamed messages
+ */
+public class StreamReceiver<MessageType> {
+
+	//the correlation id of the stream, carried by all stream messages
+	private final long streamId;
+
+	//runs the observer calls, one at a time and in order
+	private final Executor executor;
+
+	//sends the credit messages, null if no credits are granted
+	private final PacketSender creditSender;
+
+	//the MessageContainer message type of the credit messages
+	private final int creditMessageType;
+
+	//the number of processed messages after which credits are granted again
+	private final int creditBatch;
+
+	//the observer of the messages. Set by a task of the executor, before the first message is processed
+	private volatile StreamObserver<MessageType> observer = null;
+
+	//the number of messages processed since credits were last granted. Only used by the tasks of the executor
+	private int processedMessages = 0;
+
+	//true when the observer threw an exception. Only used by the tasks of the executor
+	private boolean observerStopped = false;
+
+	//true when the end of the stream was received, or the stream was cancelled
+	private final AtomicBoolean ended = new AtomicBoolean(false);
+
+	/**
+	 * Constructs a new stream receiver
+	 * @param streamId the correlation id of the stream
+	 * @param executor runs the observer calls. Must run its tasks one at a time and in order (i.e. an OrderedExecutor)
+	 * @param creditSender sends the credit messages, or null if the stream is not flow controlled
+	 * @param creditMessageType the MessageContainer message type of the credit messages
+	 * @param window the number of messages the other side can send before it waits for credits
+	 */
+	public StreamReceiver(long streamId, Executor executor, PacketSender creditSender, int creditMessageType, int window) {
+		this.streamId = streamId;
+		this.executor = executor;
+		this.creditSender = creditSender;
+		this.creditMessageType = creditMessageType;
+		this.creditBatch = Math.max(1, window / 2);
+	}
+
+	/**
+	 * Returns the correlation id of the stream
+	 * @return the stream id
+	 */
+	public long getStreamId() {
+		return streamId;
+	}
+
+	/**
+	 * Sets the observer of the messages. Must be called before the first message is processed,
+	 * either before any message is received or by a task passed to the execute method.
+	 * @param observer the observer, if null the messages are discarded
+	 */
+	public void setObserver(StreamObserver<MessageType> observer) {
+		this.observer = observer;
+	}
+
+	/**
+	 * Runs a task on the executor, in order with the processing of the received messages
+	 * @param task the task
+	 */
+	public void execute(Runnable task) {
+		executor.execute(task);
+	}
+
+	/**
+	 * Checks if the stream has ended, or was cancelled
+	 * @return true if no more messages are passed to the observer
+	 */
+	public boolean isEnded() {
+		return ended.get();
+	}
+
+	/**
+	 * Passes a received message to the observer. Called by the generated code
+	 * @param message the message
+	 */
+	public void messageReceived(final MessageType message) {
+		if (ended.get()) {
+			return;
+		}
+
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				if (observerStopped || observer == null) {
+					return;
+				}
+
+				try {
+					observer.onNext(message);
+				} catch (RuntimeException e) {
+					fail(e);
+					return;
+				}
+
+				processedMessages++;
+				if (creditSender != null && processedMessages >= creditBatch && !ended.get()) {
+					try {
+						creditSender.sendPackets(new byte[][] {EnvelopeCodec.encodeStreamControl(creditMessageType, streamId, processedMessages, null)});
+					} catch (IOException e) {
+						//the connection is lost, the stream is ended by the generated code
+					}
+					processedMessages = 0;
+				}
+			}
+		});
+	}
+
+	/**
+	 * Ends the stream, after the messages received before. Has no effect if the stream has already ended.
+	 * Called by the generated code when the end of the stream is received, the stream is cancelled or
+	 * the connection is lost
+	 * @param failure the failure passed to the onError method of the observer, or null if the stream completed normally
+	 */
+	public void end(final RemoteCommunicationsException failure) {
+		if (!ended.compareAndSet(false, true)) {
+			return;
+		}
+
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				if (observerStopped || observer == null) {
+					return;
+				}
+
+				try {
+					if (failure == null) {
+						observer.onCompleted();
+					} else {
+						observer.onError(failure);
+					}
+				} catch (RuntimeException e) {
+					//the stream has ended, nothing more to do
+				}
+			}
+		});
+	}
+
+	/**
+	 * Called when the observer throws an exception while processing a message. No more messages
+	 * are passed to the observer after that. Does nothing by default, the generated code
+	 * overrides it in order to end the stream on the other side
+	 * @param e the exception thrown by the observer
+	 */
+	protected void observerFailed(RuntimeException e) {
+	}
+
+	//stops passing messages to an observer that threw an exception
+	private void fail(RuntimeException e) {
+		observerStopped = true;
+		ended.set(true);
+		observerFailed(e);
+	}
+}
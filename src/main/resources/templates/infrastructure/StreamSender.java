@@ -0,0 +1,210 @@
+package $infrastructure.javaPackage;
+
+import java.io.IOException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.google.protobuf.MessageLite;
+
+/**
+ * Sends a stream of messages to the other side of a connection, with credit-based flow control.
+ *
+ * The receiving side grants credits, one for each message it can buffer. A message is only
+ * sent when there is a credit for it, otherwise the send method waits until more credits
+ * are granted. This way the sender never sends faster than the receiver consumes.
+ *
+ * The stream ends with the complete method, or with the fail method which reports a reason
+ * to the receiving side. The stream can also be cancelled, after which the send method throws
+ * a RemoteCommunicationsException with the CANCELLED error type.
+ *
+ * The send, complete and fail methods must not be called by more than one thread at a time,
+ * so that the messages are sent in order and before the end of the stream.
+ *
+ * @author Petros Pissias
+ *
+ * @param <StreamType> the type of the streamed messages
+ */
+public class StreamSender<StreamType extends MessageLite> {
+
+	//sends the packets of the stream
+	private final PacketSender packetSender;
+
+	//the correlation id of the stream, carried by all stream messages
+	private final long streamId;
+
+	//the MessageContainer message types of the stream messages and the end of stream message
+	private final int itemMessageType;
+	private final int endMessageType;
+
+	//the compression of the stream messages, null if they are not compressed
+	private final FrameCompression compression;
+
+	//guards the credits and the state of the stream. A lock is used so that
+	//a sender waiting for credits does not pin a virtual thread carrier
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition creditsGranted = lock.newCondition();
+
+	//the number of messages that can be sent
+	private long credits;
+
+	//true when the stream has ended, or was cancelled
+	private boolean ended = false;
+	private boolean cancelled = false;
+
+	/**
+	 * Constructs a new stream sender
+	 * @param packetSender sends the packets of the stream
+	 * @param streamId the correlation id of the stream
+	 * @param itemMessageType the MessageContainer message type of the stream messages
+	 * @param endMessageType the MessageContainer message type of the end of stream message
+	 * @param compression the compression of the stream messages, or null
+	 * @param initialCredits the number of messages that can be sent before credits are granted
+	 */
+	public StreamSender(PacketSender packetSender, long streamId, int itemMessageType, int endMessageType, FrameCompression compression, int initialCredits) {
+		this.packetSender = packetSender;
+		this.streamId = streamId;
+		this.itemMessageType = itemMessageType;
+		this.endMessageType = endMessageType;
+		this.compression = compression;
+		this.credits = initialCredits;
+	}
+
+	/**
+	 * Returns the correlation id of the stream
+	 * @return the stream id
+	 */
+	public long getStreamId() {
+		return streamId;
+	}
+
+	/**
+	 * Sends a message of the stream, waiting until a credit has been granted for it
+	 * @param message the message
+	 * @throws RemoteCommunicationsException if the stream was cancelled (CANCELLED), the message is larger than the maximum message size (MESSAGE_TOO_LARGE), or in case of communication problems (DISCONNECTED)
+	 * @throws IllegalStateException if the stream has already ended
+	 */
+	public void send(StreamType message) throws RemoteCommunicationsException {
+		//encode first, a message that cannot be sent does not use a credit
+		byte[][] packets;
+		try {
+			packets = (compression == null) ? EnvelopeCodec.encodePackets(itemMessageType, streamId, message) : EnvelopeCodec.encodePackets(itemMessageType, streamId, message, compression);
+		} catch (MessageTooLargeException e) {
+			throw new RemoteCommunicationsException(RemoteCommunicationsErrorType.MESSAGE_TOO_LARGE, e.getMessage());
+		}
+
+		lock.lock();
+		try {
+			while (credits == 0 && !ended) {
+				try {
+					creditsGranted.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new RemoteCommunicationsException(RemoteCommunicationsErrorType.DISCONNECTED, "Interrupted while waiting for stream credits");
+				}
+			}
+			if (cancelled) {
+				throw new RemoteCommunicationsException(RemoteCommunicationsErrorType.CANCELLED, "Stream was cancelled");
+			} else if (ended) {
+				throw new IllegalStateException("Stream has already ended");
+			}
+			credits--;
+		} finally {
+			lock.unlock();
+		}
+
+		try {
+			packetSender.sendPackets(packets);
+		} catch (IOException e) {
+			cancel();
+			throw new RemoteCommunicationsException(RemoteCommunicationsErrorType.DISCONNECTED, "Communications Error while trying to send stream message. Info:"+e.getMessage());
+		}
+	}
+
+	/**
+	 * Ends the stream normally. Has no effect if the stream has already ended
+	 */
+	public void complete() {
+		end(null);
+	}
+
+	/**
+	 * Ends the stream with a failure, reported to the receiving side. Has no effect if the stream has already ended
+	 * @param reason the reason of the failure
+	 */
+	public void fail(String reason) {
+		end((reason == null || reason.isEmpty()) ? "Stream failed" : reason);
+	}
+
+	/**
+	 * Checks if the stream was cancelled
+	 * @return true if the stream was cancelled
+	 */
+	public boolean isCancelled() {
+		lock.lock();
+		try {
+			return cancelled;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Adds credits granted by the receiving side. Called by the generated code
+	 * @param grantedCredits the number of credits
+	 */
+	public void addCredits(int grantedCredits) {
+		lock.lock();
+		try {
+			credits += grantedCredits;
+			creditsGranted.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Cancels the stream without sending the end of stream message. Called by the generated code
+	 * when the receiving side cancels the stream or the connection is lost
+	 */
+	public void cancel() {
+		lock.lock();
+		try {
+			if (ended) {
+				return;
+			}
+			ended = true;
+			cancelled = true;
+			creditsGranted.signalAll();
+		} finally {
+			lock.unlock();
+		}
+		ended();
+	}
+
+	/**
+	 * Called once, when the stream ends or is cancelled. Does nothing by default
+	 */
+	protected void ended() {
+	}
+
+	//ends the stream and sends the end of stream message
+	private void end(String streamError) {
+		lock.lock();
+		try {
+			if (ended) {
+				return;
+			}
+			ended = true;
+			creditsGranted.signalAll();
+		} finally {
+			lock.unlock();
+		}
+		ended();
+
+		try {
+			packetSender.sendPackets(new byte[][] {EnvelopeCodec.encodeStreamControl(endMessageType, streamId, 0, streamError)});
+		} catch (IOException e) {
+			//the connection is lost, the receiving side fails the stream
+		}
+	}
+}
@@ -2,25 +2,62 @@ package ${server.javaPackage}.$serverSubPackage;
 
 import java.io.IOException;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 #if ($infrastructure.logging == "log4j")
 import org.apache.log4j.Logger;
-#end
+#elseif ($infrastructure.logging == "slf4j")
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+	#end
 
 import com.google.protobuf.ByteString;
 import com.google.protobuf.InvalidProtocolBufferException;
 
 //infrastructure imports
+import ${infrastructure.javaPackage}.AdmissionController;
+import ${infrastructure.javaPackage}.BatchResult;
+import ${infrastructure.javaPackage}.ByteBufferDataHandler;
 import ${infrastructure.javaPackage}.DataHandler;
+import ${infrastructure.javaPackage}.DataTransceiver;
+import ${infrastructure.javaPackage}.EnvelopeCodec;
 import ${infrastructure.javaPackage}.ErrorHandler;
+import ${infrastructure.javaPackage}.FrameCompression;
+import ${infrastructure.javaPackage}.Heartbeat;
+import ${infrastructure.javaPackage}.MessageTooLargeException;
+#if ($infrastructure.metrics)
+import ${infrastructure.javaPackage}.MetricsListener;
+#end
+import ${infrastructure.javaPackage}.NamedThreadFactory;
+import ${infrastructure.javaPackage}.OrderedExecutor;
+import ${infrastructure.javaPackage}.OutboundQueue;
+import ${infrastructure.javaPackage}.OverflowPolicy;
+import ${infrastructure.javaPackage}.PacketSender;
+import ${infrastructure.javaPackage}.ReplyObserver;
 import ${infrastructure.javaPackage}.RemoteCommunicationsErrorType;
 import ${infrastructure.javaPackage}.RemoteCommunicationsException;
+import ${infrastructure.javaPackage}.ServerStream;
+import ${infrastructure.javaPackage}.StreamReceiver;
+import ${infrastructure.javaPackage}.NioDataTransceiver;
 import ${infrastructure.javaPackage}.SocketDataTransceiver;
 
 //message type imports
 #foreach( $importClass in $classImports )
 import ${importClass};
-#end
+	#end
 
 //generic message type import
 import ${server.javaPackage}.types.${server.name}.MessageContainer;
@@ -36,141 +73,880 @@ import ${server.javaPackage}.types.${server.name}.MessageContainer.MessageType;
  * @author Petros Pissias
  *
  */
-public class $className implements DataHandler, ErrorHandler#foreach ($callbackInterface in $callbackInterfaces), ${callbackInterface}#end {
+public class $className implements DataHandler, #if ($infrastructure.pooledBuffers)ByteBufferDataHandler, #{end}ErrorHandler#foreach ($callbackInterface in $callbackInterfaces), ${callbackInterface}#end {
 
 	#if ($infrastructure.logging == "log4j")
 	private final Logger logger = Logger.getLogger(getClass());
+	#elseif ($infrastructure.logging == "slf4j")
+	private final Logger logger = LoggerFactory.getLogger(getClass());
 	#end
 	
 	//the service handler
 	private final $serviceInterfaceClassName serviceHandler;
 	
-	private SocketDataTransceiver serverDataTransceiver;
+	//number of connections written to by each task of a parallel broadcast
+	private static final int broadcastGroupSize = 64;
+	
+	private DataTransceiver serverDataTransceiver;
+	
+	#if ($infrastructure.metrics)
+	//the listener the requests of this client are reported to
+	private volatile MetricsListener metricsListener = MetricsListener.none;
+	
+	#end
+	#if ($server.hasCallbackQueue())
+	//connection counter, used for the names of the callback queues
+	private static final AtomicInteger connectionCount = new AtomicInteger(0);
+	
+		#if ($server.hasNioTransport())
+	//writes the callback queues of all clients when they have callbacks, so that there is no writer thread per connection
+	private static final ExecutorService callbackWriter = Executors.newCachedThreadPool(new NamedThreadFactory("${className}-callbacks"));
+	
+	//the callbacks to this client, sent by the shared callback writer
+		#else
+	//the callbacks to this client, sent by the writer thread of the queue
+		#end
+	private final OutboundQueue callbackQueue;
+	#end
+	
+	#if ($server.hasHeartbeat())
+	//the heartbeats and idle timeout of the client connections
+	private static final Heartbeat heartbeat = new Heartbeat(${server.heartbeat.interval}, ${server.heartbeat.timeout});
+	
+	#end
+	//compression of the messages of the services
+	#foreach ($service in $server.services)
+		#if ($server.hasCompression($service))
+	private static final FrameCompression ${service.serviceName}Compression = new FrameCompression("${server.getCompression($service).codec}", ${server.getCompression($service).threshold});
+		#end
+	#end
+	
+	#if ($server.hasStreams())
+	//runs the requests of the stream services that do not have their own dispatch pool. They wait for
+	//stream credits, so they cannot run on the reader thread or delay the requests on the dispatch pool
+	private static final ExecutorService streamExecutor = Executors.newCachedThreadPool(new NamedThreadFactory("${className}-streams"));
+	
+	//the open streams to this client, cancelled when the connection is lost
+	private final ConcurrentMap<Long, ServerStream<?>> openStreams = new ConcurrentHashMap<Long, ServerStream<?>>();
+	#end
+	#foreach ($service in $server.services)
+		#if ($service.hasRequestStream())
+	
+	//the open ${service.serviceName} calls, receiving the requests from this client
+	private final ConcurrentMap<Long, StreamReceiver<${service.requestClassName}>> ${service.serviceName}RequestStreams = new ConcurrentHashMap<Long, StreamReceiver<${service.requestClassName}>>();
+		#end
+	#end
+	
+	#if ($server.hasDispatch())
+	//runs the requests of the services that do not have their own dispatch pool
+	private final Executor dispatchExecutor;
+	#end
+	#foreach ($service in $server.services)
+		#if ($service.hasDispatch() || $service.hasAdmission())
+	//runs the ${service.serviceName} requests
+	private final Executor ${service.serviceName}DispatchExecutor;
+		#end
+	#end
+	#if ($server.hasAdmission())
+	
+	//limits the requests run by the dispatch pool of the server
+	private final AdmissionController dispatchAdmission;
+	#end
+	#foreach ($service in $server.services)
+		#if ($service.hasAdmission())
 	
+	//limits the ${service.serviceName} requests
+	private final AdmissionController ${service.serviceName}Admission;
+		#end
+	#end
+	
+	#if ($server.hasNioTransport())
+	/**
+	 * Constructs a new client handler
+	 * @param dataTransceiver the data transceiver of the client connection
+	 */
+	public ${className}(NioDataTransceiver dataTransceiver, $serviceInterfaceClassName serviceHandler#if ($server.hasDispatch()), ExecutorService dispatchExecutor#end#foreach ($service in $server.services)#if ($service.hasDispatch()), ExecutorService ${service.serviceName}DispatchExecutor#end#end#if ($server.hasAdmission()), AdmissionController dispatchAdmission#end#foreach ($service in $server.services)#if ($service.hasAdmission()), AdmissionController ${service.serviceName}Admission#end#end) {
+	#else
 	/**
 	 * Constructs a new client handler
 	 * @param socket
 	 * @throws IOException
 	 */
-	public ${className}(Socket socket, $serviceInterfaceClassName serviceHandler) throws IOException {
+	public ${className}(Socket socket, $serviceInterfaceClassName serviceHandler#if ($server.hasDispatch()), ExecutorService dispatchExecutor#end#foreach ($service in $server.services)#if ($service.hasDispatch()), ExecutorService ${service.serviceName}DispatchExecutor#end#end#if ($server.hasAdmission()), AdmissionController dispatchAdmission#end#foreach ($service in $server.services)#if ($service.hasAdmission()), AdmissionController ${service.serviceName}Admission#end#end) throws IOException {
+	#end
 		this.serviceHandler = serviceHandler;
 		
+		#if ($server.hasAdmission())
+		this.dispatchAdmission = dispatchAdmission;
+		#end
+		#foreach ($service in $server.services)
+			#if ($service.hasAdmission())
+		this.${service.serviceName}Admission = ${service.serviceName}Admission;
+			#end
+		#end
+		#if ($server.hasDispatch())
+			#if ($server.hasAdmission())
+				#set ($pool = "dispatchAdmission")
+			#else
+				#set ($pool = "dispatchExecutor")
+			#end
+			#if ($server.dispatch.ordered)
+		//keep the order of the requests of this client
+		this.dispatchExecutor = new OrderedExecutor(${pool});
+			#else
+		this.dispatchExecutor = ${pool};
+			#end
+		#end
+		#foreach ($service in $server.services)
+			#if ($service.hasDispatch() || $service.hasAdmission())
+				#if ($service.hasAdmission())
+					#set ($pool = "${service.serviceName}Admission")
+				#else
+					#set ($pool = "${service.serviceName}DispatchExecutor")
+				#end
+				#if (($service.hasDispatch() && $service.dispatch.ordered) || (!$service.hasDispatch() && $server.dispatch.ordered))
+		//keep the order of the ${service.serviceName} requests of this client
+		this.${service.serviceName}DispatchExecutor = new OrderedExecutor(${pool});
+				#else
+		this.${service.serviceName}DispatchExecutor = ${pool};
+				#end
+			#end
+		#end
+		
+		#if ($server.hasNioTransport())
+		dataTransceiver.setHandlers(this, this);
+		serverDataTransceiver = dataTransceiver;
+		#else
 		serverDataTransceiver = new SocketDataTransceiver(socket, this, this);		
+		#end
+		#if ($server.hasHeartbeat())
+		
+		//send heartbeats to the client, and close the connection of a client that cannot be heard from anymore
+		serverDataTransceiver.setHeartbeat(heartbeat);
+		#end
+		
+		#if ($server.hasCallbackQueue())
+		#if ($server.hasNioTransport())
+		//the callbacks are sent by the shared callback writer, so that a slow client does not block the threads producing them
+		#else
+		//the callbacks are sent by a writer thread, so that a slow client does not block the threads producing them
+		#end
+		callbackQueue = new OutboundQueue(${className}.class.getSimpleName()+"-"+connectionCount.incrementAndGet()+"-callbacks", ${server.callbackQueue.size}, OverflowPolicy.${server.callbackQueue.policyConstant}, new PacketSender() {
+			@Override
+			public void sendPackets(byte[][] packets) throws IOException {
+				serverDataTransceiver.sendPackets(packets);
+			}
+		}, new ErrorHandler() {
+			@Override
+			public void handleCommunicationsError() {
+				disconnectSlowClient();
+			}
+		#if ($server.hasNioTransport())
+		}, callbackWriter);
+		#else
+		});
+		#end
+		#end
 	}
 	
 	public void initialize() {
 		serverDataTransceiver.initialize();		
 	}
+	#if ($infrastructure.metrics)
+	
+	/**
+	 * Sets the listener the requests and the traffic of this client are reported to. Must be called before it is initialized
+	 * @param metricsListener the listener
+	 */
+	public void setMetricsListener(MetricsListener metricsListener) {
+		this.metricsListener = metricsListener;
+		serverDataTransceiver.setMetricsListener(metricsListener);
+	}
+	
+	//reports the start of a request, returns its start time
+	private long callStarted(String serviceName) {
+		metricsListener.callStarted(serviceName);
+		return System.nanoTime();
+	}
+	
+	//reports the completion of a request
+	private void callCompleted(String serviceName, long start) {
+		metricsListener.callCompleted(serviceName, System.nanoTime() - start);
+	}
+	
+	//reports a request that failed with an exception of the service implementation (REQUEST_FAILED) or that expired (TIMEOUT)
+	private void callFailed(String serviceName, RemoteCommunicationsErrorType errorType, long start) {
+		metricsListener.callFailed(serviceName, errorType, System.nanoTime() - start);
+	}
+	#end
+	
+	//true if the deadline of a request passed since it was received, a deadline of 0 never passes
+	private static boolean expired(long receivedNanos, int deadline) {
+		return deadline > 0 && System.nanoTime() - receivedNanos >= TimeUnit.MILLISECONDS.toNanos(deadline);
+	}
 
+	#if ($infrastructure.pooledBuffers)
+	@Override
+	public void handleDataIndication(byte[] payload) {
+		handleDataIndication(ByteBuffer.wrap(payload));
+	}
+	
+	@Override
+	//handles incoming data. The payload is a pooled buffer, neither the buffer nor the 
+	//envelope decoded from it are used after this method returns
+	public void handleDataIndication(ByteBuffer payload) {
+		#set ($payloadData = "EnvelopeCodec.toByteArray(payload)")
+	#else
 	@Override
 	//handles incoming data from a client
 	public void handleDataIndication(byte[] payload) {
+		#set ($payloadData = "payload")
+	#end
 		//new data has arrived 
 		#if ($infrastructure.logging == "log4j")
 		logger.debug("handling data indication");
+		#elseif ($infrastructure.logging == "slf4j")
+		logger.debug("handling data indication");
 		#end
 		MessageContainer envelope = null;
 		try {
-			envelope = MessageContainer.parseFrom(payload);
+			//the message data of the envelope refers to the payload, it is not copied
+			envelope = MessageContainer.parser().parseFrom(EnvelopeCodec.newDecoder(payload));
 		} catch (InvalidProtocolBufferException e) {
 			#if ($infrastructure.logging == "log4j")
 			logger.error("Cannot decode data. Protocol error", e);
-			logger.error("Data that cannot be decoded:"+Arrays.toString(payload));
+			logger.error("Data that cannot be decoded:"+Arrays.toString($payloadData));
+			#elseif ($infrastructure.logging == "slf4j")
+			logger.error("Cannot decode data. Protocol error", e);
+			if (logger.isTraceEnabled()) {
+				logger.trace("Data that cannot be decoded: {}", Arrays.toString($payloadData));
+			}
 			#elseif ($infrastructure.logging == "System")
 			System.out.println("Error: Cannot decode data. Protocol error:"+e.getMessage());
-			System.out.println("Error: Data that cannot be decoded:"+Arrays.toString(payload));							
+			System.out.println("Error: Data that cannot be decoded:"+Arrays.toString($payloadData));							
 			#end
 		}
 		
-		
 		if (envelope != null) {
+			handleEnvelope(envelope);
+		}
+	}
+	
+	@Override
+	//handles a message reassembled from fragments
+	public void handleDataIndication(ByteString payload) {
+		#set ($payloadData = "payload.toByteArray()")
+		#if ($infrastructure.logging == "log4j")
+		logger.debug("handling data indication");
+		#elseif ($infrastructure.logging == "slf4j")
+		logger.debug("handling data indication");
+		#end
+		MessageContainer envelope = null;
+		try {
+			//the message data of the envelope refers to the fragments, it is not copied
+			EnvelopeCodec.SplitEnvelope splitPayload = EnvelopeCodec.split(payload);
+			envelope = MessageContainer.parser().parseFrom(splitPayload.getFields()).toBuilder().setMessageData(splitPayload.getMessageData()).build();
+		} catch (InvalidProtocolBufferException e) {
 			#if ($infrastructure.logging == "log4j")
-			logger.debug("decoded message type:"+envelope.getMessageType().name());
-			#end
-			switch (envelope.getMessageType()) {
-				#foreach ($service in $server.services)
-				case ${service.serviceName}Request : {
-					try {
-						final ${service.requestClassName} request = ${service.requestClassName}.parseFrom(envelope.getMessageData().toByteArray());
-						#if ($infrastructure.logging == "log4j")
-						logger.debug("message details:"+request.toString());
+			logger.error("Cannot decode data. Protocol error", e);
+			logger.error("Data that cannot be decoded:"+Arrays.toString($payloadData));
+			#elseif ($infrastructure.logging == "slf4j")
+			logger.error("Cannot decode data. Protocol error", e);
+			if (logger.isTraceEnabled()) {
+				logger.trace("Data that cannot be decoded: {}", Arrays.toString($payloadData));
+			}
+			#elseif ($infrastructure.logging == "System")
+			System.out.println("Error: Cannot decode data. Protocol error:"+e.getMessage());
+			System.out.println("Error: Data that cannot be decoded:"+Arrays.toString($payloadData));							
+			#end
+		}
+		
+		if (envelope != null) {
+			handleEnvelope(envelope);
+		}
+	}
+	
+	//handles a decoded envelope
+	private void handleEnvelope(MessageContainer envelope) {
+		#if ($infrastructure.logging == "log4j")
+		logger.debug("decoded message type:"+envelope.getMessageType().name());
+		#elseif ($infrastructure.logging == "slf4j")
+		if (logger.isDebugEnabled()) {
+			logger.debug("decoded message type: {}", envelope.getMessageType());
+		}
+		#end
+		switch (envelope.getMessageType()) {
+			#foreach ($service in $server.services)
+			case ${service.serviceName}Request : {
+				try {
+					final ${service.requestClassName} request = ${service.requestClassName}.parseFrom(envelope.getMessageData());
+					#if ($infrastructure.logging == "log4j")
+					logger.debug("message details:"+request.toString());
+					#elseif ($infrastructure.logging == "slf4j")
+					if (logger.isTraceEnabled()) {
+						logger.trace("message details: {}", request);
+					}
+					#end
+					#if ($service.hasRequestStream())
+					StreamReceiver<${service.requestClassName}> requests = ${service.serviceName}RequestStreams.get(envelope.getCorrelationId());
+					if (requests != null) {
+						requests.messageReceived(request);
+					}
+					#elseif ($service.hasStream())
+					//the stream is registered before any of its credit messages is read
+					final ServerStream<${service.streamClassName}> stream = new ServerStream<${service.streamClassName}>(serverDataTransceiver, envelope.getCorrelationId(), MessageType.${service.serviceName}StreamItem_VALUE, MessageType.${service.serviceName}StreamEnd_VALUE, #if ($server.hasCompression($service))${service.serviceName}Compression#{else}null#end, openStreams);
+					
+						#if ($service.hasDispatch())
+							#set ($streamExecutor = "${service.serviceName}DispatchExecutor")
+						#else
+							#set ($streamExecutor = "streamExecutor")
 						#end
-						
-						#if ($service.hasResponse()) ##has a response			
-							#if ($service.hasCallback()) ##has a callback
-						//handle message
-						${service.responseClassName} response = serviceHandler.${service.serviceName}(request, this);
-						
-							#else ##does not have a callback
-						//handle message
-						${service.responseClassName} response = serviceHandler.${service.serviceName}(request);						
+					
+					//run the request off the reader thread, which must keep reading the credit messages
+					${streamExecutor}.execute(new Runnable() {
+						@Override
+						public void run() {
+							handle${service.serviceNameUpper}Request(request, stream);
+						}
+					});
+					#elseif ($service.hasDispatch() || $server.hasDispatch())
+						#if ($service.hasDispatch() || $service.hasAdmission())
+							#set ($dispatchExecutor = "${service.serviceName}DispatchExecutor")
+						#else
+							#set ($dispatchExecutor = "dispatchExecutor")
+						#end
+					final long correlationId = envelope.getCorrelationId();
+						#if ($server.hasAdmission($service))
+							#if ($service.hasAdmission())
+								#set ($admission = "${service.serviceName}Admission")
+							#else
+								#set ($admission = "dispatchAdmission")
+							#end
+							#if ($service.hasResponse())
+					if (!${admission}.tryAdmit()) {
+						//over the limits, reject the request and stop reading from this client until there is room
+						rejectRequest("${service.serviceName}", MessageType.${service.serviceName}Response_VALUE, correlationId);
+						pauseReading(${admission});
+						break;
+					}
 							#end
-												
-						#if ($infrastructure.logging == "log4j")
-						logger.debug("got reply: "+response.toString());
 						#end
-						
-						//convert to generic message
-						MessageContainer outgoingMessage = 
-								MessageContainer.newBuilder().setMessageType(MessageType.${service.serviceName}Response).setMessageData(ByteString.copyFrom(response.toByteArray())).build();
-						
-						#if ($infrastructure.logging == "log4j")
-						logger.debug("encoded reply:"+outgoingMessage.toString());
+						#if ($service.hasDeadline())
+					final long receivedNanos = System.nanoTime();
+					final int deadline = envelope.getDeadline();
 						#end
-						
-						//send
-						#if ($infrastructure.logging == "log4j")
-						logger.info("sending registration reply");
-						#end						
-						try {
-							serverDataTransceiver.send(outgoingMessage.toByteArray());	
-						} catch (IOException e) {
-							//do nothing, just log, when the reader thread of the data transceiver will try to read data from the socket it will terminate
-							#if ($infrastructure.logging == "log4j")
-							logger.error("Communications Error while trying to send reply to client.",e);
-							#elseif ($infrastructure.logging == "System")
-							System.out.println("Error: Communications Error while trying to send reply to client."+e.getMessage());							
-							#end
+					
+					#if ($server.hasAdmission($service) && !$service.hasResponse())
+					Runnable dispatchedRequest = new Runnable() {
+						@Override
+						public void run() {
+							try {
+								handle${service.serviceNameUpper}Request(request, correlationId#if ($service.hasDeadline()), receivedNanos, deadline#end);
+							} finally {
+								${admission}.release();
+							}
 						}
-						
-						#else ##no response
-						#if ($service.hasCallback()) ##has a callback
-						serviceHandler.${service.serviceName}(request, this);
-						#else ##does not have a callback
-						serviceHandler.${service.serviceName}(request);
+					};
+					if (${admission}.tryAdmit()) {
+						//run the request on the dispatch pool, the reader thread continues with the next request
+						${dispatchExecutor}.execute(dispatchedRequest);
+					} else {
+						//over the limits. There is no reply to reject a oneway request with, so it runs when there is room
+						//and the reading from this client stops until then
+						runWhenAvailable(${admission}, ${dispatchExecutor}, dispatchedRequest);
+					}
+					#else
+					//run the request on the dispatch pool, the reader thread continues with the next request
+					${dispatchExecutor}.execute(new Runnable() {
+						@Override
+						public void run() {
+						#if ($server.hasAdmission($service))
+							try {
+								handle${service.serviceNameUpper}Request(request, correlationId#if ($service.hasDeadline()), receivedNanos, deadline#end);
+							} finally {
+								${admission}.release();
+							}
+						#else
+							handle${service.serviceNameUpper}Request(request, correlationId#if ($service.hasDeadline()), receivedNanos, deadline#end);
 						#end
-						
+						}
+					});
+					#end
+					#else
+					
+					handle${service.serviceNameUpper}Request(request, envelope.getCorrelationId()#if ($service.hasDeadline()), System.nanoTime(), envelope.getDeadline()#end);
+					#end
+				} catch (InvalidProtocolBufferException e) {
+					#if ($infrastructure.logging == "log4j")
+					logger.error("Cannot decode data. Protocol error", e);
+					logger.error("Data that cannot be decoded:"+Arrays.toString(envelope.getMessageData().toByteArray()));
+					#elseif ($infrastructure.logging == "slf4j")
+					logger.error("Cannot decode data. Protocol error", e);
+					if (logger.isTraceEnabled()) {
+						logger.trace("Data that cannot be decoded: {}", Arrays.toString(envelope.getMessageData().toByteArray()));
+					}
+					#elseif ($infrastructure.logging == "System")
+					System.out.println("Error: Cannot decode data. Protocol error:"+e.getMessage());
+					System.out.println("Error: Data that cannot be decoded:"+Arrays.toString(envelope.getMessageData().toByteArray()));												
+					#end
+				} 
+				
+				break;
+			}
+				#if ($service.hasBatch())
+			
+			case ${service.serviceName}BatchRequest : {
+				try {
+					//decode all the requests here, the message data is not used after this method returns
+					MessageContainer.Batch batch = MessageContainer.Batch.parseFrom(envelope.getMessageData());
+					final List<${service.requestClassName}> requests = new ArrayList<${service.requestClassName}>(batch.getItemsCount());
+					for (MessageContainer.BatchItem item : batch.getItemsList()) {
+						requests.add(${service.requestClassName}.parseFrom(item.getMessageData()));
+					}
+					#if ($infrastructure.logging == "log4j")
+					logger.debug("batch of "+requests.size()+" ${service.serviceName} requests");
+					#elseif ($infrastructure.logging == "slf4j")
+					if (logger.isDebugEnabled()) {
+						logger.debug("batch of {} ${service.serviceName} requests", requests.size());
+					}
+					#end
+					#if ($service.hasDispatch() || $server.hasDispatch())
+						#if ($service.hasDispatch() || $service.hasAdmission())
+							#set ($dispatchExecutor = "${service.serviceName}DispatchExecutor")
+						#else
+							#set ($dispatchExecutor = "dispatchExecutor")
 						#end
-						
-					} catch (InvalidProtocolBufferException e) {
-						#if ($infrastructure.logging == "log4j")
-						logger.error("Cannot decode data. Protocol error", e);
-						logger.error("Data that cannot be decoded:"+Arrays.toString(envelope.getMessageData().toByteArray()));
-						#elseif ($infrastructure.logging == "System")
-						System.out.println("Error: Cannot decode data. Protocol error:"+e.getMessage());
-						System.out.println("Error: Data that cannot be decoded:"+Arrays.toString(envelope.getMessageData().toByteArray()));												
+					final long correlationId = envelope.getCorrelationId();
+						#if ($server.hasAdmission($service))
+							#if ($service.hasAdmission())
+								#set ($admission = "${service.serviceName}Admission")
+							#else
+								#set ($admission = "dispatchAdmission")
+							#end
+					if (!${admission}.tryAdmit()) {
+						//over the limits, reject the batch and stop reading from this client until there is room
+						rejectRequest("${service.serviceName}Batch", MessageType.${service.serviceName}BatchResponse_VALUE, correlationId);
+						pauseReading(${admission});
+						break;
+					}
 						#end
-					} 
+					final long receivedNanos = System.nanoTime();
+					final int deadline = envelope.getDeadline();
 					
-					break;
-				}
-				#end
-				
-				default : { 
+					//run the batch on the dispatch pool, the reader thread continues with the next request
+					${dispatchExecutor}.execute(new Runnable() {
+						@Override
+						public void run() {
+						#if ($server.hasAdmission($service))
+							try {
+								handle${service.serviceNameUpper}Batch(requests, correlationId, receivedNanos, deadline);
+							} finally {
+								${admission}.release();
+							}
+						#else
+							handle${service.serviceNameUpper}Batch(requests, correlationId, receivedNanos, deadline);
+						#end
+						}
+					});
+					#else
+					
+					handle${service.serviceNameUpper}Batch(requests, envelope.getCorrelationId(), System.nanoTime(), envelope.getDeadline());
+					#end
+				} catch (InvalidProtocolBufferException e) {
 					#if ($infrastructure.logging == "log4j")
-					logger.error("Received message type:"+envelope.getMessageType().name()+" that cannot be processed. Protocol error");
+					logger.error("Cannot decode data. Protocol error", e);
+					logger.error("Data that cannot be decoded:"+Arrays.toString(envelope.getMessageData().toByteArray()));
+					#elseif ($infrastructure.logging == "slf4j")
+					logger.error("Cannot decode data. Protocol error", e);
+					if (logger.isTraceEnabled()) {
+						logger.trace("Data that cannot be decoded: {}", Arrays.toString(envelope.getMessageData().toByteArray()));
+					}
 					#elseif ($infrastructure.logging == "System")
-					System.out.println("Error: Received message type:"+envelope.getMessageType().name()+" that cannot be processed. Protocol error");			
+					System.out.println("Error: Cannot decode data. Protocol error:"+e.getMessage());
+					System.out.println("Error: Data that cannot be decoded:"+Arrays.toString(envelope.getMessageData().toByteArray()));
 					#end
-					break;
 				}
+				
+				break;
+			}
+				#end
+				#if ($service.hasStream())
+			
+			case ${service.serviceName}StreamCredit : {
+				ServerStream<?> stream = openStreams.get(envelope.getCorrelationId());
+				if (stream != null) {
+					stream.addCredits(envelope.getStreamCredits());
+				}
+				break;
+			}
+			
+			case ${service.serviceName}StreamCancel : {
+				ServerStream<?> stream = openStreams.get(envelope.getCorrelationId());
+				if (stream != null) {
+					stream.cancel();
+				}
+				break;
+			}
+				#end
+				#if ($service.hasRequestStream())
+			
+			case ${service.serviceName}Open : {
+				open${service.serviceNameUpper}Call(envelope.getCorrelationId(), envelope.getStreamCredits());
+				break;
+			}
+			
+			case ${service.serviceName}RequestEnd : {
+				StreamReceiver<${service.requestClassName}> requests = ${service.serviceName}RequestStreams.remove(envelope.getCorrelationId());
+				if (requests != null) {
+					requests.end(envelope.getStreamError().isEmpty() ? null : new RemoteCommunicationsException(RemoteCommunicationsErrorType.STREAM_FAILED, envelope.getStreamError()));
+				}
+				break;
+			}
+			
+			case ${service.serviceName}Cancel : {
+				StreamReceiver<${service.requestClassName}> requests = ${service.serviceName}RequestStreams.remove(envelope.getCorrelationId());
+				if (requests != null) {
+					requests.end(new RemoteCommunicationsException(RemoteCommunicationsErrorType.CANCELLED, "Call cancelled by the client"));
+				}
+					#if ($service.hasStream())
+				ServerStream<?> stream = openStreams.get(envelope.getCorrelationId());
+				if (stream != null) {
+					stream.cancel();
+				}
+					#end
+				break;
+			}
+				#end
+			#end
+			
+			default : { 
+				#if ($infrastructure.logging == "log4j")
+				logger.error("Received message type:"+envelope.getMessageType().name()+" that cannot be processed. Protocol error");
+				#elseif ($infrastructure.logging == "slf4j")
+				logger.error("Received message type: {} that cannot be processed. Protocol error", envelope.getMessageType());
+				#elseif ($infrastructure.logging == "System")
+				System.out.println("Error: Received message type:"+envelope.getMessageType().name()+" that cannot be processed. Protocol error");			
+				#end
+				break;
 			}
 		}
-		
+	}
 
+	#foreach ($service in $server.services)
+		#if ($service.hasRequestStream())
+			#if ($service.hasDispatch())
+				#set ($streamExecutor = "${service.serviceName}DispatchExecutor")
+			#else
+				#set ($streamExecutor = "streamExecutor")
+			#end
+	/**
+	 * Opens a ${service.serviceName} call. The service method, and then the observer of the requests
+	 * it returns, run off the reader thread, one at a time
+	 * @param streamId the correlation id of the call
+	 * @param streamCredits the initial credits of the stream of replies
+	 */
+	private void open${service.serviceNameUpper}Call(long streamId, int streamCredits) {
+			#if ($service.hasStream())
+		final ServerStream<${service.streamClassName}> stream = new ServerStream<${service.streamClassName}>(serverDataTransceiver, streamId, MessageType.${service.serviceName}StreamItem_VALUE, MessageType.${service.serviceName}StreamEnd_VALUE, #if ($server.hasCompression($service))${service.serviceName}Compression#{else}null#end, openStreams, ${service.serviceName}RequestStreams);
+		stream.addCredits(streamCredits);
+			#else
+		final ReplyObserver<${service.responseClassName}> replyObserver = new ReplyObserver<${service.responseClassName}>(serverDataTransceiver, streamId, MessageType.${service.serviceName}Response_VALUE, #if ($server.hasCompression($service))${service.serviceName}Compression#{else}null#end, ${service.serviceName}RequestStreams);
+			#end
+		
+		//the requests are passed to the observer in order, and credits are granted as they are processed
+		final StreamReceiver<${service.requestClassName}> requests = new StreamReceiver<${service.requestClassName}>(streamId, new OrderedExecutor(${streamExecutor}), serverDataTransceiver, MessageType.${service.serviceName}RequestCredit_VALUE, ${service.streamCredits}) {
+			@Override
+			protected void observerFailed(RuntimeException e) {
+				fail${service.serviceNameUpper}Call(#if ($service.hasStream())stream#{else}replyObserver#end, e);
+			}
+		};
+		${service.serviceName}RequestStreams.put(streamId, requests);
 		
+		//the service method runs before the first request is passed to the observer
+		requests.execute(new Runnable() {
+			@Override
+			public void run() {
+				#if ($infrastructure.metrics)
+				long start = callStarted("${service.serviceName}");
+				#end
+				try {
+					requests.setObserver(serviceHandler.${service.serviceName}(#if ($service.hasStream())stream#{else}replyObserver#end));
+					#if ($infrastructure.metrics)
+					callCompleted("${service.serviceName}", start);
+					#end
+				} catch (RuntimeException e) {
+					#if ($infrastructure.metrics)
+					callFailed("${service.serviceName}", RemoteCommunicationsErrorType.REQUEST_FAILED, start);
+					#end
+					fail${service.serviceNameUpper}Call(#if ($service.hasStream())stream#{else}replyObserver#end, e);
+				}
+			}
+		});
 	}
-
+	
+	//ends a ${service.serviceName} call after the service failed with an exception
+	private void fail${service.serviceNameUpper}Call(#if ($service.hasStream())ServerStream<${service.streamClassName}> stream#{else}ReplyObserver<${service.responseClassName}> replyObserver#end, RuntimeException e) {
+		#if ($infrastructure.logging == "log4j")
+		logger.error("Error while handling ${service.serviceName} call. Failing the call", e);
+		#elseif ($infrastructure.logging == "slf4j")
+		logger.error("Error while handling ${service.serviceName} call. Failing the call", e);
+		#elseif ($infrastructure.logging == "System")
+		System.out.println("Error: Error while handling ${service.serviceName} call. Failing the call:"+e.getMessage());
+		#end
+			#if ($service.hasStream())
+		stream.fail(e.getMessage());
+			#else
+		replyObserver.onError(new RemoteCommunicationsException(RemoteCommunicationsErrorType.STREAM_FAILED, e.getMessage()));
+			#end
+	}
+	
+		#elseif ($service.hasStream())
+	/**
+	 * Runs a ${service.serviceName} request, which sends the messages of the stream
+	 * @param request the decoded request
+	 * @param stream the stream to the client
+	 */
+	private void handle${service.serviceNameUpper}Request(${service.requestClassName} request, ServerStream<${service.streamClassName}> stream) {
+		#if ($infrastructure.metrics)
+		long start = callStarted("${service.serviceName}");
+		#end
+		try {
+			serviceHandler.${service.serviceName}(request, stream);
+			#if ($infrastructure.metrics)
+			callCompleted("${service.serviceName}", start);
+			#end
+		} catch (RuntimeException e) {
+			#if ($infrastructure.metrics)
+			callFailed("${service.serviceName}", RemoteCommunicationsErrorType.REQUEST_FAILED, start);
+			#end
+			#if ($infrastructure.logging == "log4j")
+			logger.error("Error while handling ${service.serviceName} request. Failing the stream", e);
+			#elseif ($infrastructure.logging == "slf4j")
+			logger.error("Error while handling ${service.serviceName} request. Failing the stream", e);
+			#elseif ($infrastructure.logging == "System")
+			System.out.println("Error: Error while handling ${service.serviceName} request. Failing the stream:"+e.getMessage());
+			#end
+			stream.fail(e.getMessage());
+		}
+	}
+	
+		#else
+			#if ($service.hasDeadline())
+	/**
+	 * Runs a ${service.serviceName} request, unless its deadline passed while it was waiting to run.
+				#if ($infrastructure.metrics)
+	 * The request is reported to the metrics listener.
+				#end
+	 * @param request the decoded request
+	 * @param correlationId the correlation id of the request, copied to the reply
+	 * @param receivedNanos the time the request was received, System.nanoTime()
+	 * @param deadline the time in milliseconds the client waits for the reply, 0 if not set
+	 */
+	private void handle${service.serviceNameUpper}Request(${service.requestClassName} request, long correlationId, long receivedNanos, int deadline) {
+		if (expired(receivedNanos, deadline)) {
+			//the client no longer waits for the reply, do not spend time on it
+			#if ($infrastructure.logging == "log4j")
+			logger.debug("Dropping expired ${service.serviceName} request");
+			#elseif ($infrastructure.logging == "slf4j")
+			logger.debug("Dropping expired ${service.serviceName} request");
+			#end
+				#if ($infrastructure.metrics)
+			callFailed("${service.serviceName}", RemoteCommunicationsErrorType.TIMEOUT, callStarted("${service.serviceName}"));
+				#end
+			return;
+		}
+		
+				#if ($infrastructure.metrics)
+		long start = callStarted("${service.serviceName}");
+		try {
+			run${service.serviceNameUpper}Request(request, correlationId);
+			callCompleted("${service.serviceName}", start);
+		} catch (RuntimeException e) {
+			callFailed("${service.serviceName}", RemoteCommunicationsErrorType.REQUEST_FAILED, start);
+			throw e;
+		}
+				#else
+		run${service.serviceNameUpper}Request(request, correlationId);
+				#end
+	}
+	
+			#elseif ($infrastructure.metrics)
+	/**
+	 * Runs a ${service.serviceName} request, reporting it to the metrics listener
+	 * @param request the decoded request
+	 * @param correlationId the correlation id of the request, copied to the reply
+	 */
+	private void handle${service.serviceNameUpper}Request(${service.requestClassName} request, long correlationId) {
+		long start = callStarted("${service.serviceName}");
+		try {
+			run${service.serviceNameUpper}Request(request, correlationId);
+			callCompleted("${service.serviceName}", start);
+		} catch (RuntimeException e) {
+			callFailed("${service.serviceName}", RemoteCommunicationsErrorType.REQUEST_FAILED, start);
+			throw e;
+		}
+	}
+	
+			#end
+	/**
+	 * Runs a ${service.serviceName} request and sends back the reply, if any
+	 * @param request the decoded request
+	 * @param correlationId the correlation id of the request, copied to the reply
+	 */
+	private void #if ($infrastructure.metrics || $service.hasDeadline())run#{else}handle#end${service.serviceNameUpper}Request(${service.requestClassName} request, long correlationId) {
+		#if ($service.hasResponse()) ##has a response			
+			#if ($service.hasCallback()) ##has a callback
+		//handle message
+		${service.responseClassName} response = serviceHandler.${service.serviceName}(request, this);
+		
+			#else ##does not have a callback
+		//handle message
+		${service.responseClassName} response = serviceHandler.${service.serviceName}(request);						
+			#end
+								
+		#if ($infrastructure.logging == "log4j")
+		logger.debug("got reply: "+response.toString());
+		#elseif ($infrastructure.logging == "slf4j")
+		if (logger.isTraceEnabled()) {
+			logger.trace("got reply: {}", response);
+		}
+		#end
+		
+		try {
+			//encode the reply in a MessageContainer envelope, directly into the packet(s)
+			byte[][] packets = EnvelopeCodec.encodePackets(MessageType.${service.serviceName}Response_VALUE, correlationId, response#if ($server.hasCompression($service)), ${service.serviceName}Compression#end);
+			
+			//send
+		#if ($infrastructure.logging == "log4j")
+			logger.info("sending ${service.serviceName} reply");
+		#elseif ($infrastructure.logging == "slf4j")
+			logger.debug("sending ${service.serviceName} reply");
+		#end						
+			serverDataTransceiver.sendPackets(packets);	
+		} catch (MessageTooLargeException e) {
+			//the client would reject the reply, it fails with a TIMEOUT instead of losing its connection
+			#if ($infrastructure.logging == "log4j")
+			logger.error("Cannot send ${service.serviceName} reply to client.", e);
+			#elseif ($infrastructure.logging == "slf4j")
+			logger.error("Cannot send ${service.serviceName} reply to client.", e);
+			#elseif ($infrastructure.logging == "System")
+			System.out.println("Error: Cannot send ${service.serviceName} reply to client."+e.getMessage());
+			#end
+		} catch (IOException e) {
+			//do nothing, just log, when the reader thread of the data transceiver will try to read data from the socket it will terminate
+			#if ($infrastructure.logging == "log4j")
+			logger.error("Communications Error while trying to send reply to client.",e);
+			#elseif ($infrastructure.logging == "slf4j")
+			logger.error("Communications Error while trying to send reply to client.", e);
+			#elseif ($infrastructure.logging == "System")
+			System.out.println("Error: Communications Error while trying to send reply to client."+e.getMessage());							
+			#end
+		}
+		#else ##no response
+			#if ($service.hasCallback()) ##has a callback
+		serviceHandler.${service.serviceName}(request, this);
+			#else ##does not have a callback
+		serviceHandler.${service.serviceName}(request);
+			#end
+		#end
+	}
+	
+		#if ($service.hasBatch())
+	/**
+	 * Runs the requests of a ${service.serviceName} batch and sends back all the results in one reply
+	 * @param requests the decoded requests
+	 * @param correlationId the correlation id of the batch, copied to the reply
+	 * @param receivedNanos the time the batch was received, System.nanoTime()
+	 * @param deadline the time in milliseconds the client waits for the reply, 0 if not set
+	 */
+	private void handle${service.serviceNameUpper}Batch(List<${service.requestClassName}> requests, long correlationId, long receivedNanos, int deadline) {
+		if (expired(receivedNanos, deadline)) {
+			//the client no longer waits for the reply, do not spend time on it
+			#if ($infrastructure.logging == "log4j")
+			logger.debug("Dropping expired ${service.serviceName} batch");
+			#elseif ($infrastructure.logging == "slf4j")
+			logger.debug("Dropping expired ${service.serviceName} batch");
+			#end
+			#if ($infrastructure.metrics)
+			callFailed("${service.serviceName}Batch", RemoteCommunicationsErrorType.TIMEOUT, callStarted("${service.serviceName}Batch"));
+			#end
+			return;
+		}
+		
+		MessageContainer.Batch.Builder batch = MessageContainer.Batch.newBuilder();
+		#if ($infrastructure.metrics)
+		long start = callStarted("${service.serviceName}Batch");
+		#end
+		try {
+			//handle messages
+			List<BatchResult<${service.responseClassName}>> results = serviceHandler.${service.serviceName}Batch(requests);
+			if (results.size() != requests.size()) {
+				throw new IllegalStateException("The ${service.serviceName} batch handler returned "+results.size()+" results for "+requests.size()+" requests");
+			}
+			for (BatchResult<${service.responseClassName}> result : results) {
+				if (result.isSuccess()) {
+					batch.addItems(MessageContainer.BatchItem.newBuilder().setMessageData(result.getReply().toByteString()));
+				} else {
+					batch.addItems(MessageContainer.BatchItem.newBuilder().setError(result.getError()));
+				}
+			}
+			#if ($infrastructure.metrics)
+			callCompleted("${service.serviceName}Batch", start);
+			#end
+		} catch (RuntimeException | RemoteCommunicationsException e) {
+			#if ($infrastructure.metrics)
+			callFailed("${service.serviceName}Batch", RemoteCommunicationsErrorType.REQUEST_FAILED, start);
+			#end
+			//the whole batch failed, every request fails with the same reason
+			#if ($infrastructure.logging == "log4j")
+			logger.error("Error while handling ${service.serviceName} batch. Failing all its requests", e);
+			#elseif ($infrastructure.logging == "slf4j")
+			logger.error("Error while handling ${service.serviceName} batch. Failing all its requests", e);
+			#elseif ($infrastructure.logging == "System")
+			System.out.println("Error: Error while handling ${service.serviceName} batch. Failing all its requests:"+e.getMessage());
+			#end
+			String reason = (e.getMessage() == null) ? e.toString() : e.getMessage();
+			batch.clear();
+			for (int i = 0; i < requests.size(); i++) {
+				batch.addItems(MessageContainer.BatchItem.newBuilder().setError(reason));
+			}
+		}
+		
+		try {
+			//encode all the results in one MessageContainer envelope
+			byte[][] packets = EnvelopeCodec.encodePackets(MessageType.${service.serviceName}BatchResponse_VALUE, correlationId, batch.build()#if ($server.hasCompression($service)), ${service.serviceName}Compression#end);
+			
+			//send
+		#if ($infrastructure.logging == "log4j")
+			logger.info("sending ${service.serviceName} batch reply");
+		#elseif ($infrastructure.logging == "slf4j")
+			logger.debug("sending ${service.serviceName} batch reply");
+		#end
+			serverDataTransceiver.sendPackets(packets);
+		} catch (MessageTooLargeException e) {
+			//the client would reject the reply, it fails with a TIMEOUT instead of losing its connection
+			#if ($infrastructure.logging == "log4j")
+			logger.error("Cannot send ${service.serviceName} batch reply to client.", e);
+			#elseif ($infrastructure.logging == "slf4j")
+			logger.error("Cannot send ${service.serviceName} batch reply to client.", e);
+			#elseif ($infrastructure.logging == "System")
+			System.out.println("Error: Cannot send ${service.serviceName} batch reply to client."+e.getMessage());
+			#end
+		} catch (IOException e) {
+			//do nothing, just log, when the reader thread of the data transceiver will try to read data from the socket it will terminate
+			#if ($infrastructure.logging == "log4j")
+			logger.error("Communications Error while trying to send reply to client.",e);
+			#elseif ($infrastructure.logging == "slf4j")
+			logger.error("Communications Error while trying to send reply to client.", e);
+			#elseif ($infrastructure.logging == "System")
+			System.out.println("Error: Communications Error while trying to send reply to client."+e.getMessage());
+			#end
+		}
+	}
+	
+		#end
+		#end
+	#end
 	@Override
 	public void handleCommunicationsError() {
 		//received communications error trying to read data from the client.
@@ -178,8 +954,126 @@ public class $className implements DataHandler, ErrorHandler#foreach ($callbackI
 		//TODO if the application wants to be notified for these events, then we should get an error handler on the constructor and report the error there
 		#if ($infrastructure.logging == "log4j")
 		logger.info("Received communications error.");
+		#elseif ($infrastructure.logging == "slf4j")
+		logger.info("Received communications error.");
+		#end
+		#if ($server.hasCallbackQueue())
+		
+		//stop the writer thread of the callbacks
+		callbackQueue.close();
+		#end
+		#if ($server.hasStreams())
+		
+		//cancel the open streams, their senders stop waiting for credits
+		for (ServerStream<?> stream : openStreams.values()) {
+			stream.cancel();
+		}
+		#end
+		#foreach ($service in $server.services)
+			#if ($service.hasRequestStream())
+		
+		//end the open ${service.serviceName} calls, their observers receive the failure
+		for (Long streamId : ${service.serviceName}RequestStreams.keySet()) {
+			StreamReceiver<${service.requestClassName}> requests = ${service.serviceName}RequestStreams.remove(streamId);
+			if (requests != null) {
+				requests.end(new RemoteCommunicationsException(RemoteCommunicationsErrorType.DISCONNECTED, "Connection to the client was lost"));
+			}
+		}
+			#end
+		#end
+	}
+	
+	#if ($server.hasAdmissions())
+	//rejects a request over the admission limits, the client fails the call with the OVERLOADED error type
+	private void rejectRequest(String serviceName, int replyType, long correlationId) {
+		#if ($infrastructure.logging == "log4j")
+		logger.debug("Server overloaded. Rejecting "+serviceName+" request");
+		#elseif ($infrastructure.logging == "slf4j")
+		logger.debug("Server overloaded. Rejecting {} request", serviceName);
 		#end
+		#if ($infrastructure.metrics)
+		callFailed(serviceName, RemoteCommunicationsErrorType.OVERLOADED, callStarted(serviceName));
+		#end
+		try {
+			serverDataTransceiver.sendPacket(EnvelopeCodec.encodeOverloaded(replyType, correlationId));
+		} catch (IOException e) {
+			//do nothing, just log, when the reader thread of the data transceiver will try to read data from the socket it will terminate
+			#if ($infrastructure.logging == "log4j")
+			logger.error("Communications Error while trying to send reply to client.",e);
+			#elseif ($infrastructure.logging == "slf4j")
+			logger.error("Communications Error while trying to send reply to client.", e);
+			#elseif ($infrastructure.logging == "System")
+			System.out.println("Error: Communications Error while trying to send reply to client."+e.getMessage());
+			#end
+		}
+	}
+	
+	//stops reading the requests of this client until the admission controller has room for them, so that TCP flow control slows the client down
+	private void pauseReading(AdmissionController admission) {
+		serverDataTransceiver.pauseReading();
+		admission.whenAvailable(new Runnable() {
+			@Override
+			public void run() {
+				serverDataTransceiver.resumeReading();
+			}
+		});
+	}
+	
+	//stops reading the requests of this client until the admission controller has room for a oneway request that
+	//was not admitted, which then runs. It is admitted even if another request took the room first, so the limits
+	//are exceeded by at most one request per paused client
+	private void runWhenAvailable(final AdmissionController admission, final Executor executor, final Runnable request) {
+		serverDataTransceiver.pauseReading();
+		admission.whenAvailable(new Runnable() {
+			@Override
+			public void run() {
+				admission.admit();
+				executor.execute(request);
+				serverDataTransceiver.resumeReading();
+			}
+		});
+	}
+	
+	#end
+	#if ($server.hasCallbackQueue())
+	//closes the connection of a client whose callback queue is full
+	private void disconnectSlowClient() {
+		#if ($infrastructure.logging == "log4j")
+		logger.warn("Callback queue is full. Disconnecting slow client");
+		#elseif ($infrastructure.logging == "slf4j")
+		logger.warn("Callback queue is full. Disconnecting slow client");
+		#elseif ($infrastructure.logging == "System")
+		System.out.println("Error: Callback queue is full. Disconnecting slow client");
+		#end
+		serverDataTransceiver.closeSocket();
+		callbackQueue.close();
+	}
+	
+	/**
+	 * Returns the number of callback messages waiting to be sent to this client
+	 * @return the number of queued callback messages
+	 */
+	public int getQueuedCallbackCount() {
+		return callbackQueue.size();
+	}
+	
+	/**
+	 * Returns the number of callback messages to this client that were discarded, because the 
+	 * callback queue was full or because they could not be sent
+	 * @return the number of dropped callback messages
+	 */
+	public long getDroppedCallbackCount() {
+		return callbackQueue.getDroppedCount();
+	}
+	
+	/**
+	 * Returns the number of callback messages sent to this client
+	 * @return the number of sent callback messages
+	 */
+	public long getSentCallbackCount() {
+		return callbackQueue.getSentCount();
 	}
+	#end
 	
 	#foreach ($service in $server.services)
 		#if ($service.hasCallback())
@@ -187,31 +1081,137 @@ public class $className implements DataHandler, ErrorHandler#foreach ($callbackI
 	//sends a callback message to a client
 	public void ${service.serviceName}Callback(${service.callbackClassName} callbackMessage) throws RemoteCommunicationsException {
 		
-		//convert to generic message
-		MessageContainer outgoingMessage = 
-				MessageContainer.newBuilder().setMessageType(MessageType.${service.serviceName}Callback).setMessageData(ByteString.copyFrom(callbackMessage.toByteArray())).build();
-		#if ($infrastructure.logging == "log4j")
-		logger.debug("encoded callback reply:"+outgoingMessage.toString());
-		#end
+		//encode the callback in a MessageContainer envelope, directly into the packet(s)
+		byte[][] packets;
+		try {
+			packets = EnvelopeCodec.encodePackets(MessageType.${service.serviceName}Callback_VALUE, 0, callbackMessage#if ($server.hasCompression($service)), ${service.serviceName}Compression#end);
+		} catch (MessageTooLargeException e) {
+			throw new RemoteCommunicationsException(RemoteCommunicationsErrorType.MESSAGE_TOO_LARGE, e.getMessage());
+		}
 		
+		#if ($server.hasCallbackQueue())
+		//queue, according to the overflow policy of the callback queue
+		callbackQueue.add(packets);
+		#else
 		//send
 		try {
 			#if ($infrastructure.logging == "log4j")
 			logger.info("sending callback message");
+			#elseif ($infrastructure.logging == "slf4j")
+			logger.debug("sending callback message");
 			#end
-			serverDataTransceiver.send(outgoingMessage.toByteArray());							
+			serverDataTransceiver.sendPackets(packets);							
 		} catch (IOException e) {
 			//do nothing, just log, when the reader thread will try to read data from the socket it will terminate
 			#if ($infrastructure.logging == "log4j")
 			logger.error("Communications Error while trying to send reply to client.",e);
+			#elseif ($infrastructure.logging == "slf4j")
+			logger.error("Communications Error while trying to send reply to client.", e);
 			#end
 			
 			//rethrow for caller
 			throw(new RemoteCommunicationsException(RemoteCommunicationsErrorType.DISCONNECTED, "Communications Error while trying to send reply to client. Info:"+e.getMessage()));
 		}
+		#end
+	}
+	
+	//sends the same callback message to many clients (see ${server.name}${service.serviceNameUpper}ServerCallback.broadcast)
+	static List<${server.name}${service.serviceNameUpper}ServerCallback> broadcast${service.serviceNameUpper}Callback(Collection<? extends ${server.name}${service.serviceNameUpper}ServerCallback> callbacks, ${service.callbackClassName} callbackMessage, Executor executor) {
+		//encode the callback once, the packets are not modified by the data transceivers
+		byte[][] packets = EnvelopeCodec.encodePackets(MessageType.${service.serviceName}Callback_VALUE, 0, callbackMessage#if ($server.hasCompression($service)), ${service.serviceName}Compression#end);
+		
+		return broadcast(callbacks, packets, executor);
 	}
 		#end
 	#end
+	
+	#if (!$callbackInterfaces.isEmpty())
+	//sends the same packets to the clients of the provided callback objects, returns the callback objects of the clients they could not be sent to
+	private static <T> List<T> broadcast(Collection<? extends T> callbacks, final byte[][] packets, Executor executor) {
+		final List<T> targets = new ArrayList<T>(callbacks);
+		for (T callback : targets) {
+			if (!(callback instanceof ${className})) {
+				throw new IllegalArgumentException("Cannot broadcast to "+callback+". Only the callback objects provided to the service implementation can be used");
+			}
+		}
+		
+		final List<T> failed = Collections.synchronizedList(new ArrayList<T>());
+		if (executor == null || targets.size() <= broadcastGroupSize) {
+			sendToGroup(targets, 0, targets.size(), packets, failed);
+		} else {
+			//each task writes to a group of connections
+			int groupCount = (targets.size() + broadcastGroupSize - 1) / broadcastGroupSize;
+			final CountDownLatch groupsSent = new CountDownLatch(groupCount);
+			for (int group = 0; group < groupCount; group++) {
+				final int from = group * broadcastGroupSize;
+				final int to = Math.min(from + broadcastGroupSize, targets.size());
+				Runnable groupTask = new Runnable() {
+					@Override
+					public void run() {
+						try {
+							sendToGroup(targets, from, to, packets, failed);
+						} finally {
+							groupsSent.countDown();
+						}
+					}
+				};
+				try {
+					executor.execute(groupTask);
+				} catch (RejectedExecutionException e) {
+					//the executor is saturated or shut down, send from the calling thread
+					groupTask.run();
+				}
+			}
+			
+			//wait until the packets are sent to all groups
+			boolean interrupted = false;
+			while (groupsSent.getCount() > 0) {
+				try {
+					groupsSent.await();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		
+		if (!failed.isEmpty()) {
+			#if ($infrastructure.logging == "log4j")
+			Logger.getLogger(${className}.class).warn("Could not send broadcast message to "+failed.size()+" of "+targets.size()+" clients");
+			#elseif ($infrastructure.logging == "slf4j")
+			LoggerFactory.getLogger(${className}.class).warn("Could not send broadcast message to {} of {} clients", failed.size(), targets.size());
+			#elseif ($infrastructure.logging == "System")
+			System.out.println("Error: Could not send broadcast message to "+failed.size()+" of "+targets.size()+" clients");
+			#end
+		}
+		return failed;
+	}
+	
+	//sends the packets to the clients of the callback objects between from (inclusive) and to (exclusive)
+	private static <T> void sendToGroup(List<T> targets, int from, int to, byte[][] packets, List<T> failed) {
+		for (int i = from; i < to; i++) {
+			T callback = targets.get(i);
+			#if ($server.hasCallbackQueue())
+			try {
+				if (!((${className})callback).callbackQueue.add(packets)) {
+					failed.add(callback);
+				}
+			} catch (RemoteCommunicationsException e) {
+				failed.add(callback);
+			}
+			#else
+			try {
+				((${className})callback).serverDataTransceiver.sendPackets(packets);
+			} catch (IOException e) {
+				//the reader thread of the connection will detect the error and terminate
+				failed.add(callback);
+			}
+			#end
+		}
+	}
+	#end
 
 
 
@@ -1,14 +1,45 @@
 package ${server.javaPackage}.$serverSubPackage;
 
 import java.io.IOException;
+#if (!$server.hasNioTransport())
 import java.net.ServerSocket;
 import java.net.Socket;
+#end
+#if ($server.hasDispatches())
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+#end
+
+#if ($server.hasAdmission() || $server.hasAdmissions())
+import ${infrastructure.javaPackage}.AdmissionController;
+#end
+#if ($server.hasNioTransport())
+import ${infrastructure.javaPackage}.ConnectionListener;
+#end
+#if ($infrastructure.metrics)
+import ${infrastructure.javaPackage}.MetricsListener;
+#end
+#if ($server.hasDispatches())
+import ${infrastructure.javaPackage}.NamedThreadFactory;
+#end
+#if ($server.hasNioTransport())
+import ${infrastructure.javaPackage}.NioDataTransceiver;
+import ${infrastructure.javaPackage}.NioServerTransport;
+#end
 
 #if ($infrastructure.logging == "log4j")
 import org.apache.log4j.Logger;
+#elseif ($infrastructure.logging == "slf4j")
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 #end
 
 /**
+#if ($infrastructure.virtualThreads)
+ * The server accepts connections on its own (platform) thread, which keeps the application
+ * running. The connections and the dispatched requests are served by virtual threads.
+ * 
+#end
  * @author Petros Pissias
  *
  */
@@ -16,29 +47,130 @@ public class ${className} extends Thread {
 	
 	#if ($infrastructure.logging == "log4j")
 	private final Logger logger = Logger.getLogger(getClass());
+	#elseif ($infrastructure.logging == "slf4j")
+	private final Logger logger = LoggerFactory.getLogger(getClass());
 	#end
 	
 	private final $serviceInterfaceClassName serviceHandler;
 			
 	private final int port;	
-	private final int defaultport = $server.port; 
+	private static final int defaultport = $server.port; 
+	
+	#if ($infrastructure.metrics)
+	//the listener the requests and the traffic of the clients are reported to
+	private volatile MetricsListener metricsListener = MetricsListener.none;
+	
+	#end
+	#if ($server.hasDispatch())
+	//the pool running the requests of the services that do not have their own pool
+	private final ExecutorService dispatchExecutor;
+	#end
+	#foreach ($service in $server.services)
+		#if ($service.hasDispatch())
+	//the pool running the ${service.serviceName} requests
+	private final ExecutorService ${service.serviceName}DispatchExecutor;
+		#end
+	#end
+	#if ($server.hasAdmission())
+	
+	//limits the requests run by the dispatch pool, shared by all the clients
+	private final AdmissionController dispatchAdmission;
+	#end
+	#foreach ($service in $server.services)
+		#if ($service.hasAdmission())
+	
+	//limits the ${service.serviceName} requests, shared by all the clients
+	private final AdmissionController ${service.serviceName}Admission;
+		#end
+	#end
 			
 	public ${className}($serviceInterfaceClassName serviceHandler) {
-		port = defaultport;
-		this.serviceHandler = serviceHandler;				
+		this(serviceHandler, defaultport);
 	}
 	
 	public ${className}($serviceInterfaceClassName serviceHandler, int port) {
 		this.port = port;
 		this.serviceHandler = serviceHandler;				
+		
+		#if ($server.hasDispatch())
+		dispatchExecutor = Executors.newFixedThreadPool(${server.dispatch.threads}, new NamedThreadFactory("${server.name}-dispatch"));
+		#end
+		#foreach ($service in $server.services)
+			#if ($service.hasDispatch())
+		${service.serviceName}DispatchExecutor = Executors.newFixedThreadPool(${service.dispatch.threads}, new NamedThreadFactory("${server.name}-${service.serviceName}-dispatch"));
+			#end
+		#end
+		#if ($server.hasAdmission())
+		dispatchAdmission = new AdmissionController(dispatchExecutor, ${server.maxConcurrent}, ${server.admission.maxQueued});
+		#end
+		#foreach ($service in $server.services)
+			#if ($service.hasAdmission())
+		${service.serviceName}Admission = new AdmissionController(#if ($service.hasDispatch())${service.serviceName}DispatchExecutor#{else}dispatchExecutor#end, ${server.getMaxConcurrent($service)}, ${service.admission.maxQueued});
+			#end
+		#end
 	}
 	
+	#if ($infrastructure.metrics)
+	/**
+	 * Sets the listener the requests and the traffic of the clients are reported to.
+	 * The clients connected before it is set report to the previous listener
+	 * @param metricsListener the listener, MetricsListener.none in order to stop reporting
+	 */
+	public void setMetricsListener(MetricsListener metricsListener) {
+		this.metricsListener = metricsListener;
+	}
+	
+	#end
+	#if ($server.hasNioTransport())
+	public void run() {
+		
+		try {
+			NioServerTransport transport = new NioServerTransport("${server.name}", port, ${server.transport.eventLoops}, new ConnectionListener() {
+				@Override
+				public void connectionAccepted(NioDataTransceiver dataTransceiver) {
+					//handle client 
+					$clientHandlerClassName handler = new ${clientHandlerClassName}(dataTransceiver,serviceHandler#if ($server.hasDispatch()), dispatchExecutor#end#foreach ($service in $server.services)#if ($service.hasDispatch()), ${service.serviceName}DispatchExecutor#end#end#if ($server.hasAdmission()), dispatchAdmission#end#foreach ($service in $server.services)#if ($service.hasAdmission()), ${service.serviceName}Admission#end#end);
+					
+					#if ($infrastructure.metrics)
+					handler.setMetricsListener(metricsListener);
+					#end
+					handler.initialize();
+					#if ($infrastructure.logging == "log4j")
+					logger.info("created client handler");
+					#elseif ($infrastructure.logging == "slf4j")
+					logger.info("created client handler");
+					#end
+				}
+			});
+			#if ($infrastructure.logging == "log4j")
+			logger.error("Listening for connections on port:"+port);
+			#elseif ($infrastructure.logging == "slf4j")
+			logger.info("Listening for connections on port: {}", port);
+			#elseif ($infrastructure.logging == "System")
+			System.out.println("Listening for connections on port:"+port);		
+			#end
+			
+			transport.acceptConnections();
+		} catch (IOException ioex) {
+			#if ($infrastructure.logging == "log4j")
+			logger.error("Cannot accept connection on port:"+port);
+			#elseif ($infrastructure.logging == "slf4j")
+			logger.error("Cannot accept connection on port: {}", port);
+			#elseif ($infrastructure.logging == "System")
+			System.out.println("Error: Cannot accept connection on port:"+port);		
+			#end
+			return;
+		} 
+	}
+	#else
 	public void run() {
 		
 		try {
 			ServerSocket serverSocket = new ServerSocket(port);
 			#if ($infrastructure.logging == "log4j")
 			logger.error("Listening for connections on port:"+port);
+			#elseif ($infrastructure.logging == "slf4j")
+			logger.info("Listening for connections on port: {}", port);
 			#elseif ($infrastructure.logging == "System")
 			System.out.println("Listening for connections on port:"+port);		
 			#end
@@ -46,25 +178,36 @@ public class ${className} extends Thread {
 			while (true) {
 				#if ($infrastructure.logging == "log4j")
 				logger.info("Waiting for connection...");
+				#elseif ($infrastructure.logging == "slf4j")
+				logger.info("Waiting for connection...");
 				#end
 				final Socket incomingConnection = serverSocket.accept();
 				incomingConnection.setTcpNoDelay(true);
 				
 				#if ($infrastructure.logging == "log4j")
 				logger.info("incoming connection arrived");
+				#elseif ($infrastructure.logging == "slf4j")
+				logger.info("incoming connection arrived");
 				#end
 				
 				try {
 					//handle client 
-					$clientHandlerClassName handler = new ${clientHandlerClassName}(incomingConnection,serviceHandler);
+					$clientHandlerClassName handler = new ${clientHandlerClassName}(incomingConnection,serviceHandler#if ($server.hasDispatch()), dispatchExecutor#end#foreach ($service in $server.services)#if ($service.hasDispatch()), ${service.serviceName}DispatchExecutor#end#end#if ($server.hasAdmission()), dispatchAdmission#end#foreach ($service in $server.services)#if ($service.hasAdmission()), ${service.serviceName}Admission#end#end);
 					
+					#if ($infrastructure.metrics)
+					handler.setMetricsListener(metricsListener);
+					#end
 					handler.initialize();
 					#if ($infrastructure.logging == "log4j")
 					logger.info("created client handler");
+					#elseif ($infrastructure.logging == "slf4j")
+					logger.info("created client handler");
 					#end
 				} catch (IOException ioex) {
 					#if ($infrastructure.logging == "log4j")
 					logger.error("Problem with client connection originating from:"+incomingConnection.getInetAddress());
+					#elseif ($infrastructure.logging == "slf4j")
+					logger.error("Problem with client connection originating from: {}", incomingConnection.getInetAddress());
 					#elseif ($infrastructure.logging == "System")
 					System.out.println("Error: Problem with client connection originating from:"+incomingConnection.getInetAddress());
 					#end
@@ -73,10 +216,13 @@ public class ${className} extends Thread {
 		} catch (IOException ioex) {
 			#if ($infrastructure.logging == "log4j")
 			logger.error("Cannot accept connection on port:"+port);
+			#elseif ($infrastructure.logging == "slf4j")
+			logger.error("Cannot accept connection on port: {}", port);
 			#elseif ($infrastructure.logging == "System")
 			System.out.println("Error: Cannot accept connection on port:"+port);		
 			#end
 			return;
 		} 
 	}
+	#end
 }
@@ -1,5 +1,9 @@
 package ${server.javaPackage}.$serverSubPackage;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Executor;
+
 import ${infrastructure.javaPackage}.RemoteCommunicationsException;
 import ${service.callbackType};
 
@@ -13,4 +17,53 @@ import ${service.callbackType};
 public interface $className {
 
 	public void ${service.serviceName}Callback($callbackClassName cb) throws RemoteCommunicationsException;
+	#if ($server.hasCallbackQueue())
+	
+	/**
+	 * Returns the number of callback messages waiting to be sent to the client
+	 * @return the number of queued callback messages
+	 */
+	public int getQueuedCallbackCount();
+	
+	/**
+	 * Returns the number of callback messages to the client that were discarded, because the 
+	 * callback queue was full or because they could not be sent
+	 * @return the number of dropped callback messages
+	 */
+	public long getDroppedCallbackCount();
+	
+	/**
+	 * Returns the number of callback messages sent to the client
+	 * @return the number of sent callback messages
+	 */
+	public long getSentCallbackCount();
+	#end
+	
+	/**
+	 * Sends the same callback message to many clients. The message is encoded only once
+#if ($server.hasCallbackQueue())
+	 * and the same packets are added to the callback queue of each client, from the calling thread.
+#else
+	 * and the same packets are written to the connection of each client, from the calling thread.
+#end
+	 * @param callbacks the callback objects of the clients, as provided to the service implementation
+	 * @param cb the callback message
+	 * @return the callback objects of the clients the message could not be sent to
+	 */
+	public static List<$className> broadcast(Collection<? extends $className> callbacks, $callbackClassName cb) {
+		return ${server.name}ClientHandler.broadcast${service.serviceNameUpper}Callback(callbacks, cb, null);
+	}
+	
+	/**
+	 * Sends the same callback message to many clients. The message is encoded only once
+	 * and the same packets are written to the connections of the clients in parallel, by groups of 
+	 * connections run by the provided executor. This method returns when the message is sent to all clients.
+	 * @param callbacks the callback objects of the clients, as provided to the service implementation
+	 * @param cb the callback message
+	 * @param executor the executor writing to the connections
+	 * @return the callback objects of the clients the message could not be sent to
+	 */
+	public static List<$className> broadcast(Collection<? extends $className> callbacks, $callbackClassName cb, Executor executor) {
+		return ${server.name}ClientHandler.broadcast${service.serviceNameUpper}Callback(callbacks, cb, executor);
+	}
 }
@@ -1,5 +1,12 @@
 package ${server.javaPackage}.$serverSubPackage;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import ${infrastructure.javaPackage}.BatchResult;
+import ${infrastructure.javaPackage}.ServerStream;
+import ${infrastructure.javaPackage}.StreamObserver;
+
 #foreach( $importClass in $classImports )
 import ${importClass};
 #end
@@ -8,18 +15,60 @@ import ${importClass};
 /**
  * Service interface on the server-side.
  * 
+ * The methods of stream services send the messages of the stream with the provided 
+ * ServerStream, and end it with its complete or fail method. They do not run on the 
+ * thread that reads the requests of the client.
+ * 
+ * The methods of services with a stream of requests return the StreamObserver that receives
+ * the requests of the call, one at a time and off the thread that reads from the connection.
+ * The reply is sent with the provided StreamObserver (onNext followed by onCompleted), or the
+ * stream of replies with the provided ServerStream. Ending the reply ends the call.
+ * 
+ * Services with batches also have a batch method that handles all the requests of a batch
+ * sent by a client. By default it calls the service method for each request, it can be
+ * overridden in order to handle the whole batch at once.
+ * 
  * @author Petros Pissias
  *
  */
 public interface $className {
 
 	#foreach( $service in $server.services )
-		#if ($service.hasResponse() && $service.hasCallback()) 
+		#if ($service.hasRequestStream() && $service.hasStream())
+	public StreamObserver<${service.requestClassName}> ${service.serviceName}(ServerStream<${service.streamClassName}> stream);		
+		
+		#elseif ($service.hasRequestStream())
+	public StreamObserver<${service.requestClassName}> ${service.serviceName}(StreamObserver<${service.responseClassName}> replyObserver);		
+		
+		#elseif ($service.hasStream())
+	public void ${service.serviceName}(${service.requestClassName} request, ServerStream<${service.streamClassName}> stream);		
+		
+		#elseif ($service.hasResponse() && $service.hasCallback()) 
 	public ${service.responseClassName} ${service.serviceName}(${service.requestClassName} request, ${server.name}${service.serviceNameUpper}ServerCallback callback);	
 		
 		#elseif ($service.hasResponse() && !$service.hasCallback())
 	public ${service.responseClassName} ${service.serviceName}(${service.requestClassName} request);		
 		
+			#if ($service.hasBatch())
+	/**
+	 * Handles the requests of a ${service.serviceName} batch, one after the other. A request that 
+	 * fails with an exception fails only its own result
+	 * @param requests the requests of the batch
+	 * @return one result per request, in the order of the requests
+	 */
+	public default List<BatchResult<${service.responseClassName}>> ${service.serviceName}Batch(List<${service.requestClassName}> requests) {
+		List<BatchResult<${service.responseClassName}>> results = new ArrayList<BatchResult<${service.responseClassName}>>(requests.size());
+		for (${service.requestClassName} request : requests) {
+			try {
+				results.add(BatchResult.success(${service.serviceName}(request)));
+			} catch (RuntimeException e) {
+				results.add(BatchResult.<${service.responseClassName}>failure(e.getMessage()));
+			}
+		}
+		return results;
+	}
+		
+			#end
 		#elseif (!$service.hasResponse() && !$service.hasCallback())
 	public void ${service.serviceName}(${service.requestClassName} request);		
 	